@@ -0,0 +1,287 @@
+package com.example.mallmate40;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Append-only file of binary records, shared by the classes that persist their state as a
+ * sequence of changes: {@link TrackingJournal}, {@link LocalDataStore} and {@link OutboundQueue}.
+ * The file starts with a value identifying its format, followed by the records of the owner.
+ *
+ * <p>Replaying stops at a record cut short by the process dying or a record that cannot be read,
+ * and the file is truncated after the last complete record. Records appended afterwards then
+ * follow a complete record and are read in step on the next replay, instead of being read from
+ * the middle of the broken one.</p>
+ *
+ * <p>Not thread safe, a log is only used from one thread.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class AppendLog {
+
+    /** Tag used for logging purposes */
+    private static final String TAG = "AppendLog";
+
+    /**
+     * Reads records of the log.
+     */
+    public interface RecordReader {
+        /**
+         * Reads one record. Nothing should be applied until the whole record has been read.
+         *
+         * @param in the stream positioned at the start of the record
+         * @return true to continue, false if the record is not understood and replay should stop
+         * @throws IOException if the record is cut short or corrupt
+         */
+        boolean readRecord(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Writes records to the log.
+     */
+    public interface RecordWriter {
+        /**
+         * Writes one or more records.
+         *
+         * @param out the stream to write to
+         * @throws IOException if writing fails
+         */
+        void writeRecords(DataOutputStream out) throws IOException;
+    }
+
+    /** The log file */
+    private final File file;
+
+    /** Value written at the start of the file to identify its format */
+    private final int magic;
+
+    /** Underlying file stream, used for syncing to storage */
+    private FileOutputStream fileStream;
+
+    /** Buffered stream records are appended to, or null if the log is not open */
+    private DataOutputStream out;
+
+    /**
+     * Creates a log stored in a file. Nothing is read or written until asked.
+     *
+     * @param file the log file
+     * @param magic value identifying the format of the file
+     */
+    public AppendLog(File file, int magic) {
+        this.file = file;
+        this.magic = magic;
+    }
+
+    /**
+     * Reads every complete record of the file in order. If replay stops before the end of the
+     * file, the file is truncated after the last record read.
+     *
+     * @param reader reads the records
+     * @return number of records read, or -1 if the file does not exist or is not in this format
+     */
+    public int replay(RecordReader reader) {
+        if (!file.exists()) {
+            return -1;
+        }
+        int records = 0;
+        long validLength;
+        try (CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+             DataInputStream in = new DataInputStream(counter)) {
+            try {
+                if (in.readInt() != magic) {
+                    Log.e(TAG, "Unknown format of " + file.getName());
+                    return -1;
+                }
+            } catch (EOFException e) {
+                Log.e(TAG, "Missing header in " + file.getName());
+                return -1;
+            }
+            validLength = counter.count;
+            try {
+                while (reader.readRecord(in)) {
+                    records++;
+                    validLength = counter.count;
+                }
+                Log.e(TAG, "Unknown record in " + file.getName() + ", stopping replay");
+            } catch (EOFException e) {
+                // End of the file, possibly in the middle of the last record
+            } catch (IOException e) {
+                Log.e(TAG, "Corrupt record in " + file.getName() + ", stopping replay: " + e.getMessage());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + file.getName() + ": " + e.getMessage());
+            return -1;
+        }
+
+        if (validLength < file.length()) {
+            Log.e(TAG, "Dropping " + (file.length() - validLength) + " bytes after the last complete record of "
+                    + file.getName());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.getChannel().truncate(validLength);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to truncate " + file.getName() + ": " + e.getMessage());
+                return -1;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Opens the file for appending records after those already in it.
+     * Must only be called once {@link #replay(RecordReader)} has read the file successfully.
+     *
+     * @throws IOException if the file cannot be opened
+     */
+    public void openForAppend() throws IOException {
+        close();
+        fileStream = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileStream));
+    }
+
+    /**
+     * Replaces the file with the given records, atomically and synced to storage, and opens
+     * it for appending.
+     *
+     * @param writer writes the records of the new file, after the format value
+     * @throws IOException if the file cannot be written
+     */
+    public void rewrite(RecordWriter writer) throws IOException {
+        close();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream tempStream = new FileOutputStream(tempFile)) {
+            DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(tempStream));
+            tempOut.writeInt(magic);
+            writer.writeRecords(tempOut);
+            tempOut.flush();
+            tempStream.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Failed to replace " + file.getName());
+        }
+        openForAppend();
+    }
+
+    /**
+     * Appends records and hands them to the operating system.
+     *
+     * @param writer writes the records
+     * @throws IOException if the log is not open or writing fails
+     */
+    public void append(RecordWriter writer) throws IOException {
+        if (out == null) {
+            throw new IOException(file.getName() + " is not open");
+        }
+        writer.writeRecords(out);
+        out.flush();
+    }
+
+    /**
+     * Forces the appended records to storage.
+     *
+     * @throws IOException if the log is not open or syncing fails
+     */
+    public void sync() throws IOException {
+        if (out == null) {
+            throw new IOException(file.getName() + " is not open");
+        }
+        out.flush();
+        fileStream.getFD().sync();
+    }
+
+    /**
+     * Returns the size of the file, including every record appended so far.
+     *
+     * @return length in bytes, or 0 if the file does not exist
+     */
+    public long length() {
+        return file.length();
+    }
+
+    /**
+     * Returns whether records can be appended.
+     *
+     * @return true if the log is open
+     */
+    public boolean isOpen() {
+        return out != null;
+    }
+
+    /**
+     * Closes the file, keeping it on disk.
+     */
+    public void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close " + file.getName() + ": " + e.getMessage());
+            }
+        }
+        out = null;
+        fileStream = null;
+    }
+
+    /**
+     * Closes and deletes the file.
+     *
+     * @return true if the file no longer exists
+     */
+    public boolean delete() {
+        close();
+        return !file.exists() || file.delete();
+    }
+
+    /**
+     * Input stream counting the bytes read through it, used to find the end of the last complete record.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        /** Number of bytes read so far */
+        private long count = 0;
+
+        /**
+         * Creates a counting stream.
+         *
+         * @param in the stream to read from
+         */
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) count++;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
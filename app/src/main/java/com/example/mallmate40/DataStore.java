@@ -0,0 +1,110 @@
+package com.example.mallmate40;
+
+import java.util.Map;
+
+/**
+ * Storage abstraction for the app data tree, laid out like the Firebase database: top level
+ * branches such as "paths" and "points_of_interest" hold children keyed by name.
+ *
+ * <p>Values are plain Java objects: {@link String}, {@link Long}, {@link Double}, {@link Boolean}
+ * and {@code Map<String, Object>} for nested children. Lists are never returned, children with
+ * numeric keys are returned as maps keyed by the number. Writes may be issued from any thread,
+ * listeners are called on the main thread.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public interface DataStore {
+
+    /**
+     * Receives the children of a branch and their changes.
+     */
+    interface ChildListener {
+        /**
+         * Called when a child is added or changed, and once for every existing child when listening starts.
+         *
+         * @param key the key of the child
+         * @param value the full value of the child
+         */
+        void onChildChanged(String key, Object value);
+
+        /**
+         * Called when a child is removed.
+         *
+         * @param key the key of the child
+         */
+        void onChildRemoved(String key);
+
+        /**
+         * Called once after the children present when listening started have been delivered.
+         */
+        void onInitialDataLoaded();
+
+        /**
+         * Called when the branch cannot be read.
+         *
+         * @param error error message describing what went wrong
+         */
+        void onError(String error);
+    }
+
+    /**
+     * Receives the outcome of a write.
+     */
+    interface WriteCallback {
+        /**
+         * Called on the main thread when the write is stored or has failed.
+         *
+         * @param error error message, or null if the write succeeded
+         * @param permanent true if the write was rejected and sending it again cannot succeed,
+         *                  such as a write denied by the database rules
+         */
+        void onComplete(String error, boolean permanent);
+    }
+
+    /**
+     * Receives changes of the connection to the remote database.
+     */
+    interface ConnectionListener {
+        /**
+         * Called on the main thread with the current connection state and whenever it changes.
+         *
+         * @param connected true if the remote database is reachable
+         */
+        void onConnectionChanged(boolean connected);
+    }
+
+    /**
+     * Starts listening to the children of a branch.
+     *
+     * @param branch path of the branch, such as "paths" or "paths/abc"
+     * @param listener receives the children and their changes
+     */
+    void listen(String branch, ChildListener listener);
+
+    /**
+     * Stops listening to the children of a branch. The listener may still receive events that
+     * were already on their way when it was removed.
+     *
+     * @param branch path of the branch the listener was added to
+     * @param listener the listener to remove
+     */
+    void removeListener(String branch, ChildListener listener);
+
+    /**
+     * Writes several values at once. Keys are slash separated paths from the root, such as
+     * "paths/abc/chunks/00001", and a null value removes the path.
+     *
+     * @param updates values keyed by their path
+     * @param callback receives the outcome, or null if not needed
+     */
+    void updateChildren(Map<String, Object> updates, WriteCallback callback);
+
+    /**
+     * Registers a listener for the connection state. The listener is called with the current state first.
+     *
+     * @param listener the listener to add
+     */
+    void addConnectionListener(ConnectionListener listener);
+}
@@ -0,0 +1,257 @@
+package com.example.mallmate40;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A recorded path kept in its compact {@link PathCodec} form, a few bytes per point instead of a
+ * {@link Point} object each. Chunks uploaded with their point count and bounding box are not
+ * decoded when they are read, so a reader can tell whether a path is near an area without
+ * decoding it, and only decodes the points of the paths that can matter. Chunks written before
+ * the bounding box was stored are scanned once, the first time their box is needed.
+ *
+ * <p>A path may be read on a background thread while it is held by the main thread.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public final class EncodedPath {
+
+    /** Tag used for logging purposes */
+    private static final String TAG = "EncodedPath";
+
+    /** Chunks of the path in order */
+    private final List<Chunk> chunks;
+
+    /** Point count and bounding box of the whole path, found on first use */
+    private volatile Bounds bounds;
+
+    /**
+     * Number of points and bounding box of a chunk or a path.
+     */
+    private static final class Bounds {
+
+        /** Number of points */
+        final int pointCount;
+
+        /** Southern edge of the bounding box */
+        final double minLat;
+
+        /** Western edge of the bounding box */
+        final double minLng;
+
+        /** Northern edge of the bounding box */
+        final double maxLat;
+
+        /** Eastern edge of the bounding box */
+        final double maxLng;
+
+        /**
+         * Creates the bounds.
+         *
+         * @param pointCount number of points
+         * @param minLat southern edge
+         * @param minLng western edge
+         * @param maxLat northern edge
+         * @param maxLng eastern edge
+         */
+        Bounds(int pointCount, double minLat, double minLng, double maxLat, double maxLng) {
+            this.pointCount = pointCount;
+            this.minLat = minLat;
+            this.minLng = minLng;
+            this.maxLat = maxLat;
+            this.maxLng = maxLng;
+        }
+    }
+
+    /**
+     * One encoded block of a path together with its bounding box.
+     */
+    public static final class Chunk {
+
+        /** The encoded points */
+        private final byte[] data;
+
+        /** Point count and bounding box, null until the data has been scanned */
+        private volatile Bounds bounds;
+
+        /** Flag indicating whether the data was found to be corrupt */
+        private volatile boolean corrupt = false;
+
+        /**
+         * Reads a chunk stored without its bounding box. The data is scanned for the box the
+         * first time it is needed.
+         *
+         * @param data bytes produced by {@link PathCodec#encode}
+         */
+        public Chunk(byte[] data) {
+            this.data = data;
+        }
+
+        /**
+         * Reads a chunk stored with its point count and bounding box. The data is not decoded
+         * until its points are needed.
+         *
+         * @param data bytes produced by {@link PathCodec#encode}
+         * @param pointCount number of points in the data
+         * @param minLat southern edge of the bounding box
+         * @param minLng western edge of the bounding box
+         * @param maxLat northern edge of the bounding box
+         * @param maxLng eastern edge of the bounding box
+         */
+        public Chunk(byte[] data, int pointCount, double minLat, double minLng, double maxLat, double maxLng) {
+            this.data = data;
+            this.bounds = new Bounds(pointCount, minLat, minLng, maxLat, maxLng);
+        }
+
+        /**
+         * Returns the point count and bounding box, scanning the data if they were not stored.
+         * A corrupt chunk has no points.
+         *
+         * @return the bounds of the chunk
+         */
+        private Bounds getBounds() {
+            Bounds known = bounds;
+            if (known != null) {
+                return known;
+            }
+            // South, west, north and east edges, grown by every point
+            final double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            int count = 0;
+            try {
+                count = PathCodec.decode(data, (lat, lng, alt) -> {
+                    box[0] = Math.min(box[0], lat);
+                    box[1] = Math.min(box[1], lng);
+                    box[2] = Math.max(box[2], lat);
+                    box[3] = Math.max(box[3], lng);
+                });
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Corrupt path chunk: " + e.getMessage());
+                corrupt = true;
+            }
+            known = corrupt ? new Bounds(0, box[0], box[1], box[2], box[3])
+                    : new Bounds(count, box[0], box[1], box[2], box[3]);
+            bounds = known;
+            return known;
+        }
+
+        /**
+         * Decodes the points of the chunk. A corrupt chunk delivers no points.
+         *
+         * @param consumer receives the points
+         */
+        private void decode(PathCodec.PointConsumer consumer) {
+            if (corrupt) return;
+            try {
+                PathCodec.decode(data, consumer);
+            } catch (IllegalArgumentException e) {
+                // Points before the corruption may have been delivered, the rest are skipped
+                Log.e(TAG, "Corrupt path chunk: " + e.getMessage());
+                corrupt = true;
+            }
+        }
+    }
+
+    /**
+     * Creates a path from its chunks. Nothing is decoded.
+     *
+     * @param chunks the chunks in path order
+     */
+    public EncodedPath(List<Chunk> chunks) {
+        this.chunks = Collections.unmodifiableList(new ArrayList<>(chunks));
+    }
+
+    /**
+     * Creates a single-chunk path from decoded points, used for paths stored in older formats.
+     *
+     * @param points the points in order
+     * @return the encoded path
+     */
+    public static EncodedPath fromPoints(List<Point> points) {
+        List<Chunk> chunks = new ArrayList<>(1);
+        if (!points.isEmpty()) {
+            chunks.add(new Chunk(PathCodec.encode(points)));
+        }
+        return new EncodedPath(chunks);
+    }
+
+    /**
+     * Returns the point count and bounding box of the whole path, joining those of its chunks.
+     *
+     * @return the bounds of the path
+     */
+    private Bounds getBounds() {
+        Bounds known = bounds;
+        if (known != null) {
+            return known;
+        }
+        int count = 0;
+        double south = Double.POSITIVE_INFINITY;
+        double west = Double.POSITIVE_INFINITY;
+        double north = Double.NEGATIVE_INFINITY;
+        double east = Double.NEGATIVE_INFINITY;
+        for (Chunk chunk : chunks) {
+            Bounds chunkBounds = chunk.getBounds();
+            if (chunkBounds.pointCount == 0) continue;
+            count += chunkBounds.pointCount;
+            south = Math.min(south, chunkBounds.minLat);
+            west = Math.min(west, chunkBounds.minLng);
+            north = Math.max(north, chunkBounds.maxLat);
+            east = Math.max(east, chunkBounds.maxLng);
+        }
+        known = new Bounds(count, south, west, north, east);
+        bounds = known;
+        return known;
+    }
+
+    /**
+     * Returns the number of points in the path.
+     *
+     * @return the point count
+     */
+    public int getPointCount() {
+        return getBounds().pointCount;
+    }
+
+    /**
+     * Checks whether the bounding box of the path overlaps an area.
+     *
+     * @param south southern edge of the area
+     * @param west western edge of the area
+     * @param north northern edge of the area
+     * @param east eastern edge of the area
+     * @return true if the path may have points in the area
+     */
+    public boolean intersects(double south, double west, double north, double east) {
+        Bounds box = getBounds();
+        return box.pointCount > 0 && box.minLat <= north && box.maxLat >= south
+                && box.minLng <= east && box.maxLng >= west;
+    }
+
+    /**
+     * Decodes every point of the path in order without building a list. Corrupt chunks are skipped.
+     *
+     * @param consumer receives the points
+     */
+    public void forEachPoint(PathCodec.PointConsumer consumer) {
+        for (Chunk chunk : chunks) {
+            chunk.decode(consumer);
+        }
+    }
+
+    /**
+     * Decodes the points of the path.
+     *
+     * @return ordered list of points
+     */
+    public List<Point> getPoints() {
+        List<Point> points = new ArrayList<>(getPointCount());
+        forEachPoint((lat, lng, alt) -> points.add(new Point(lat, lng, alt)));
+        return points;
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.mallmate40;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseException;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link DataStore} backed by the Firebase Realtime Database. Values read from Firebase are
+ * converted to the plain value types of the data store, so readers never see Firebase classes.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class FirebaseDataStore implements DataStore {
+
+    /** Tag used for logging purposes */
+    private static final String TAG = "FirebaseDataStore";
+
+    /** The Firebase database */
+    private final FirebaseDatabase database;
+
+    /** Firebase listener attached for every listener, used to detach it again */
+    private final Map<ChildListener, ChildEventListener> attached = new HashMap<>();
+
+    /** Handler for running work on the main thread */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Creates a data store on the default Firebase database.
+     */
+    public FirebaseDataStore() {
+        this.database = FirebaseDatabase.getInstance();
+    }
+
+    /**
+     * Starts listening to the children of a branch.
+     *
+     * @param branch path of the branch, such as "paths" or "paths/abc"
+     * @param listener receives the children and their changes
+     */
+    @Override
+    public void listen(String branch, ChildListener listener) {
+        ChildEventListener childEventListener = database.getReference(branch).addChildEventListener(new ChildEventListener() {
+            @Override
+            public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+                listener.onChildChanged(snapshot.getKey(), toPlainValue(snapshot.getValue()));
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+                listener.onChildChanged(snapshot.getKey(), toPlainValue(snapshot.getValue()));
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot snapshot) {
+                listener.onChildRemoved(snapshot.getKey());
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+                // Order of children is not exposed
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                listener.onError(error.getMessage());
+            }
+        });
+        attached.put(listener, childEventListener);
+
+        // Fires once after the initial child events, served from the same listen
+        database.getReference(branch).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                listener.onInitialDataLoaded();
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                listener.onError(error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Stops listening to the children of a branch.
+     *
+     * @param branch path of the branch the listener was added to
+     * @param listener the listener to remove
+     */
+    @Override
+    public void removeListener(String branch, ChildListener listener) {
+        ChildEventListener childEventListener = attached.remove(listener);
+        if (childEventListener != null) {
+            database.getReference(branch).removeEventListener(childEventListener);
+        }
+    }
+
+    /**
+     * Writes several values in a single atomic update of the database root.
+     *
+     * @param updates values keyed by their path
+     * @param callback receives the outcome, or null if not needed
+     */
+    @Override
+    public void updateChildren(Map<String, Object> updates, WriteCallback callback) {
+        try {
+            database.getReference().updateChildren(updates, (error, reference) -> {
+                if (error == null) {
+                    if (callback != null) callback.onComplete(null, false);
+                    return;
+                }
+                Log.e(TAG, "Failed to write " + updates.size() + " values, code " + error.getCode()
+                        + ": " + error.getMessage());
+                if (callback != null) callback.onComplete(error.getMessage(), isPermanent(error.getCode()));
+            });
+        } catch (DatabaseException e) {
+            // Keys or values Firebase cannot store are refused before anything is sent
+            Log.e(TAG, "Rejected write of " + updates.size() + " values: " + e.getMessage());
+            if (callback != null) mainHandler.post(() -> callback.onComplete(e.getMessage(), true));
+        }
+    }
+
+    /**
+     * Checks whether a write failure is permanent. Writes denied by the security rules, which
+     * also reject values failing their validation, fail the same way every time they are sent.
+     * Network, availability and token errors may clear up and are worth retrying.
+     *
+     * @param code the {@link DatabaseError} code
+     * @return true if sending the write again cannot succeed
+     */
+    private static boolean isPermanent(int code) {
+        return code == DatabaseError.PERMISSION_DENIED || code == DatabaseError.USER_CODE_EXCEPTION;
+    }
+
+    /**
+     * Registers a listener for the Firebase connection state.
+     *
+     * @param listener the listener to add
+     */
+    @Override
+    public void addConnectionListener(ConnectionListener listener) {
+        database.getReference(".info/connected").addValueEventListener(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                Boolean connected = snapshot.getValue(Boolean.class);
+                listener.onConnectionChanged(connected != null && connected);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                Log.e(TAG, "Connection state error: " + error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Converts a value read from Firebase to the plain value types of the data store.
+     * Firebase returns children with sequential numeric keys as lists, which become maps keyed
+     * by the index, skipping missing entries.
+     *
+     * @param value the value read from Firebase
+     * @return the converted value
+     */
+    @SuppressWarnings("unchecked")
+    static Object toPlainValue(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> result = new TreeMap<>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                result.put(entry.getKey(), toPlainValue(entry.getValue()));
+            }
+            return result;
+        }
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            Map<String, Object> result = new TreeMap<>();
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) != null) {
+                    result.put(String.valueOf(i), toPlainValue(list.get(i)));
+                }
+            }
+            return result;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.mallmate40;
+
+import java.util.Arrays;
+
+/**
+ * The floors of a building, found by clustering the altitudes of recorded points. Altitudes
+ * are sorted and split wherever consecutive values are further apart than a floor gap, and
+ * clusters holding too few points to be a real floor are treated as noise. Every altitude is
+ * then assigned to the floor with the closest mean altitude.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public final class FloorModel {
+
+    /** Smallest gap in meters between the altitudes of two different floors */
+    public static final double MIN_FLOOR_GAP_METERS = 2.5;
+
+    /** Largest altitude difference in meters between two points considered on the same floor */
+    public static final double SAME_FLOOR_TOLERANCE_METERS = 2.0;
+
+    /** Floor returned for an unknown altitude */
+    public static final int UNKNOWN_FLOOR = -1;
+
+    /** Smallest number of points a floor must hold */
+    private static final int MIN_FLOOR_POINTS = 5;
+
+    /** Smallest share of all points a floor must hold */
+    private static final double MIN_FLOOR_SHARE = 0.01;
+
+    /** A building with a single floor, used when altitudes are not known */
+    public static final FloorModel SINGLE_FLOOR = new FloorModel(new double[]{0.0});
+
+    /** Mean altitude of every floor, lowest first */
+    private final double[] levels;
+
+    /**
+     * Creates a floor model from known floor altitudes.
+     *
+     * @param levels mean altitude of every floor, lowest first
+     */
+    private FloorModel(double[] levels) {
+        this.levels = levels;
+    }
+
+    /**
+     * Finds the floors of a building from the altitudes of its recorded points.
+     *
+     * @param altitudes altitudes in meters, in any order; unknown altitudes may be NaN
+     * @param count number of altitudes to use from the start of the array
+     * @return the floor model, with a single floor if there are no altitudes
+     */
+    public static FloorModel fromAltitudes(double[] altitudes, int count) {
+        double[] sorted = new double[count];
+        int known = 0;
+        for (int i = 0; i < count; i++) {
+            if (!Double.isNaN(altitudes[i])) {
+                sorted[known++] = altitudes[i];
+            }
+        }
+        if (known == 0) {
+            return SINGLE_FLOOR;
+        }
+        Arrays.sort(sorted, 0, known);
+
+        int minPoints = Math.max(MIN_FLOOR_POINTS, (int) (known * MIN_FLOOR_SHARE));
+        double[] levels = new double[8];
+        int floorCount = 0;
+        int clusterStart = 0;
+        double sum = 0;
+        for (int i = 0; i < known; i++) {
+            sum += sorted[i];
+            boolean lastOfCluster = i == known - 1 || sorted[i + 1] - sorted[i] > MIN_FLOOR_GAP_METERS;
+            if (!lastOfCluster) continue;
+
+            int size = i - clusterStart + 1;
+            // Small clusters are stray readings, their points join the nearest real floor
+            if (size >= minPoints) {
+                if (floorCount == levels.length) {
+                    levels = Arrays.copyOf(levels, floorCount * 2);
+                }
+                levels[floorCount++] = sum / size;
+            }
+            clusterStart = i + 1;
+            sum = 0;
+        }
+        if (floorCount == 0) {
+            return SINGLE_FLOOR;
+        }
+        return new FloorModel(Arrays.copyOf(levels, floorCount));
+    }
+
+    /**
+     * Returns the number of floors.
+     *
+     * @return the floor count
+     */
+    public int getFloorCount() {
+        return levels.length;
+    }
+
+    /**
+     * Returns the mean altitude of a floor.
+     *
+     * @param floor index of the floor, 0 for the lowest
+     * @return altitude in meters
+     */
+    public double getLevel(int floor) {
+        return levels[floor];
+    }
+
+    /**
+     * Returns the floor an altitude belongs to.
+     *
+     * @param altitude altitude in meters, or NaN if unknown
+     * @return index of the floor with the closest mean altitude, or {@link #UNKNOWN_FLOOR} for NaN
+     */
+    public int floorOf(double altitude) {
+        if (Double.isNaN(altitude)) {
+            return UNKNOWN_FLOOR;
+        }
+        int floor = 0;
+        while (floor + 1 < levels.length
+                && Math.abs(levels[floor + 1] - altitude) < Math.abs(levels[floor] - altitude)) {
+            floor++;
+        }
+        return floor;
+    }
+}
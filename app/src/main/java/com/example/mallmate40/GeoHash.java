@@ -0,0 +1,167 @@
+package com.example.mallmate40;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohash encoding of positions into base-32 tile names. Every extra character splits a tile
+ * into 32 smaller ones, so positions that share a prefix are close to each other. Tiles of
+ * {@link #TILE_PRECISION} characters, about 1.2 km by 0.6 km, partition the path index.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public final class GeoHash {
+
+    /** Number of characters of the tiles used by the path index */
+    public static final int TILE_PRECISION = 6;
+
+    /** Characters of the geohash alphabet, indexed by their 5-bit value */
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    /**
+     * Not instantiable.
+     */
+    private GeoHash() {
+    }
+
+    /**
+     * Encodes a position.
+     *
+     * @param lat latitude in degrees
+     * @param lng longitude in degrees
+     * @param precision number of characters
+     * @return the geohash of the tile containing the position
+     */
+    public static String encode(double lat, double lng, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        char[] hash = new char[precision];
+        boolean evenBit = true;
+        int bit = 0;
+        int value = 0;
+        int length = 0;
+        while (length < precision) {
+            // Bits alternate between longitude and latitude, starting with longitude
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (lng >= mid) {
+                    value = (value << 1) | 1;
+                    minLng = mid;
+                } else {
+                    value <<= 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    value = (value << 1) | 1;
+                    minLat = mid;
+                } else {
+                    value <<= 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                hash[length++] = BASE32[value];
+                bit = 0;
+                value = 0;
+            }
+        }
+        return new String(hash);
+    }
+
+    /**
+     * Returns the area covered by a geohash.
+     *
+     * @param hash the geohash
+     * @return the southern, western, northern and eastern edges in degrees
+     * @throws IllegalArgumentException if the hash holds a character outside the alphabet
+     */
+    public static double[] bounds(String hash) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        boolean evenBit = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int value = indexOf(hash.charAt(i));
+            for (int bit = 4; bit >= 0; bit--) {
+                boolean set = ((value >> bit) & 1) == 1;
+                if (evenBit) {
+                    double mid = (minLng + maxLng) / 2;
+                    if (set) {
+                        minLng = mid;
+                    } else {
+                        maxLng = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (set) {
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                evenBit = !evenBit;
+            }
+        }
+        return new double[]{minLat, minLng, maxLat, maxLng};
+    }
+
+    /**
+     * Returns the 5-bit value of a geohash character.
+     *
+     * @param c the character
+     * @return its index in the alphabet
+     * @throws IllegalArgumentException if the character is outside the alphabet
+     */
+    private static int indexOf(char c) {
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == c) return i;
+        }
+        throw new IllegalArgumentException("Invalid geohash character: " + c);
+    }
+
+    /**
+     * Returns the path index tile of a position.
+     *
+     * @param lat latitude in degrees
+     * @param lng longitude in degrees
+     * @return geohash of {@link #TILE_PRECISION} characters
+     */
+    public static String tileOf(double lat, double lng) {
+        return encode(lat, lng, TILE_PRECISION);
+    }
+
+    /**
+     * Returns the tile of a position and its eight neighbours, so a position near the edge of
+     * its tile still sees everything around it.
+     *
+     * @param lat latitude in degrees
+     * @param lng longitude in degrees
+     * @param precision number of characters
+     * @return the geohashes of the tiles, the tile of the position first
+     */
+    public static Set<String> tilesAround(double lat, double lng, int precision) {
+        // Size of a tile: longitude gets the extra bit when the bit count is odd
+        int bits = precision * 5;
+        double tileLat = 180.0 / (1L << (bits / 2));
+        double tileLng = 360.0 / (1L << ((bits + 1) / 2));
+
+        Set<String> tiles = new LinkedHashSet<>();
+        tiles.add(encode(lat, lng, precision));
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            for (int dLng = -1; dLng <= 1; dLng++) {
+                double neighbourLat = lat + dLat * tileLat;
+                if (neighbourLat < -90 || neighbourLat > 90) continue;
+                double neighbourLng = lng + dLng * tileLng;
+                // Wrap around the antimeridian
+                if (neighbourLng >= 180) neighbourLng -= 360;
+                if (neighbourLng < -180) neighbourLng += 360;
+                tiles.add(encode(neighbourLat, neighbourLng, precision));
+            }
+        }
+        return tiles;
+    }
+}
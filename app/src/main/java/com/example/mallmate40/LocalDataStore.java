@@ -0,0 +1,576 @@
+package com.example.mallmate40;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link DataStore} kept entirely on the device, used as the local copy of the database and as a
+ * stand-in for Firebase when there is no network. The data tree is held in memory and every
+ * write is appended to an {@link AppendLog}, which is replayed when the store is created and
+ * compacted into a single record once it grows long. While the store runs, the log is also
+ * compacted whenever it has grown to twice its size after the last compaction, so children
+ * rewritten whole over and over, such as mirrored paths, cost disk in proportion to the tree.
+ *
+ * <p>The tree is only touched on the main thread, the log is written on a background thread.
+ * Values passed to listeners are the live tree and must not be modified.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class LocalDataStore implements DataStore {
+
+    /** Tag used for logging purposes */
+    private static final String TAG = "LocalDataStore";
+
+    /** Value written at the start of the log file to identify its format */
+    private static final int MAGIC = 0x4D4D4C31; // "MML1"
+
+    /** Number of replayed records after which the log is compacted */
+    private static final int COMPACT_AFTER_RECORDS = 500;
+
+    /** Size in bytes below which the log is never compacted while the store runs */
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+    /** Longest string value in bytes, longer lengths can only come from a corrupt log */
+    private static final int MAX_STRING_BYTES = 8 * 1024 * 1024;
+
+    /** Value type tags of the log encoding */
+    private static final byte TYPE_NULL = 0, TYPE_STRING = 1, TYPE_LONG = 2, TYPE_DOUBLE = 3,
+            TYPE_BOOLEAN = 4, TYPE_MAP = 5;
+
+    /** The log of every write, only accessed on the background thread */
+    private final AppendLog log;
+
+    /** Root of the data tree, keyed by branch */
+    private final Map<String, Object> root = new TreeMap<>();
+
+    /** Listeners of every branch, keyed by the path of the branch in path order */
+    private final TreeMap<String, List<ChildListener>> listeners = new TreeMap<>();
+
+    /** Work waiting for the log to be replayed */
+    private final List<Runnable> pendingUntilLoaded = new ArrayList<>();
+
+    /** Background thread for log access */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /** Handler for running work on the main thread */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Flag indicating whether the log has been replayed into the tree */
+    private boolean loaded = false;
+
+    /** Size of the log after it was last replayed or compacted, only accessed on the background thread */
+    private long compactedLength = 0;
+
+    /** Flag indicating whether a compaction is on its way, only accessed on the background thread */
+    private boolean compactionRequested = false;
+
+    /**
+     * Creates the store and replays its log file in the background.
+     *
+     * @param file the log file, created if it does not exist
+     */
+    public LocalDataStore(File file) {
+        this.log = new AppendLog(file, MAGIC);
+        executor.execute(() -> {
+            Map<String, Object> replayed = replay();
+            mainHandler.post(() -> onLoaded(replayed));
+        });
+    }
+
+    /**
+     * Starts listening to the children of a branch. The existing children are delivered once
+     * the log has been replayed.
+     *
+     * @param branch path of the branch, such as "paths" or "paths/abc"
+     * @param listener receives the children and their changes
+     */
+    @Override
+    public void listen(String branch, ChildListener listener) {
+        mainHandler.post(() -> whenLoaded(() -> {
+            List<ChildListener> branchListeners = listeners.get(branch);
+            if (branchListeners == null) {
+                branchListeners = new ArrayList<>();
+                listeners.put(branch, branchListeners);
+            }
+            branchListeners.add(listener);
+            Object children = getNode(root, branch);
+            if (children instanceof Map) {
+                for (Map.Entry<String, Object> entry : asMap(children).entrySet()) {
+                    listener.onChildChanged(entry.getKey(), entry.getValue());
+                }
+            }
+            listener.onInitialDataLoaded();
+        }));
+    }
+
+    /**
+     * Stops listening to the children of a branch, after any listens requested before.
+     *
+     * @param branch path of the branch the listener was added to
+     * @param listener the listener to remove
+     */
+    @Override
+    public void removeListener(String branch, ChildListener listener) {
+        mainHandler.post(() -> whenLoaded(() -> {
+            List<ChildListener> branchListeners = listeners.get(branch);
+            if (branchListeners == null) return;
+            branchListeners.remove(listener);
+            if (branchListeners.isEmpty()) {
+                listeners.remove(branch);
+            }
+        }));
+    }
+
+    /**
+     * Applies several values to the tree, notifies the listeners and appends them to the log.
+     *
+     * @param updates values keyed by their path
+     * @param callback receives the outcome once the values are logged, or null if not needed
+     */
+    @Override
+    public void updateChildren(Map<String, Object> updates, WriteCallback callback) {
+        // Copy now, the caller may reuse its map
+        final Map<String, Object> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+            copy.put(entry.getKey(), deepCopy(entry.getValue()));
+        }
+        mainHandler.post(() -> whenLoaded(() -> {
+            apply(copy);
+            executor.execute(() -> {
+                String error = append(copy);
+                if (callback != null) {
+                    mainHandler.post(() -> callback.onComplete(error, false));
+                }
+            });
+        }));
+    }
+
+    /**
+     * Reports the store as connected, the device storage is always reachable.
+     *
+     * @param listener the listener to add
+     */
+    @Override
+    public void addConnectionListener(ConnectionListener listener) {
+        mainHandler.post(() -> listener.onConnectionChanged(true));
+    }
+
+    /**
+     * Installs the replayed tree and runs the work that waited for it.
+     *
+     * @param replayed the tree read from the log
+     */
+    private void onLoaded(Map<String, Object> replayed) {
+        root.putAll(replayed);
+        loaded = true;
+        List<Runnable> pending = new ArrayList<>(pendingUntilLoaded);
+        pendingUntilLoaded.clear();
+        for (Runnable work : pending) {
+            work.run();
+        }
+    }
+
+    /**
+     * Runs work once the log has been replayed, preserving the order of requests.
+     *
+     * @param work the work to run on the main thread
+     */
+    private void whenLoaded(Runnable work) {
+        if (loaded) {
+            work.run();
+        } else {
+            pendingUntilLoaded.add(work);
+        }
+    }
+
+    /**
+     * Applies updates to the tree and notifies the listeners of every changed child.
+     *
+     * @param updates values keyed by their path
+     */
+    private void apply(Map<String, Object> updates) {
+        // Children affected by the update, keyed by branch
+        Map<String, Set<String>> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+            String path = entry.getKey();
+
+            // A branch above the written path sees one child change
+            for (int slash = path.indexOf('/'); slash != -1; slash = path.indexOf('/', slash + 1)) {
+                String branch = path.substring(0, slash);
+                if (!listeners.containsKey(branch)) continue;
+                int end = path.indexOf('/', slash + 1);
+                changedKeys(changed, branch).add(path.substring(slash + 1, end == -1 ? path.length() : end));
+            }
+
+            // A branch at or below the written path is replaced, every old and new child may change
+            List<String> replaced = new ArrayList<>();
+            if (listeners.containsKey(path)) replaced.add(path);
+            replaced.addAll(listeners.subMap(path + "/", path + "/\uffff").keySet());
+            for (String branch : replaced) {
+                addChildKeys(changedKeys(changed, branch), getNode(root, branch));
+            }
+            setValue(root, path.split("/"), 0, entry.getValue());
+            for (String branch : replaced) {
+                addChildKeys(changedKeys(changed, branch), getNode(root, branch));
+            }
+        }
+
+        for (Map.Entry<String, Set<String>> entry : changed.entrySet()) {
+            List<ChildListener> branchListeners = listeners.get(entry.getKey());
+            Object children = getNode(root, entry.getKey());
+            for (String key : entry.getValue()) {
+                Object value = children instanceof Map ? asMap(children).get(key) : null;
+                for (ChildListener listener : branchListeners) {
+                    if (value == null) {
+                        listener.onChildRemoved(key);
+                    } else {
+                        listener.onChildChanged(key, value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the set collecting the changed children of a branch, creating it on first use.
+     *
+     * @param changed changed children keyed by branch
+     * @param branch path of the branch
+     * @return the set of changed child keys
+     */
+    private static Set<String> changedKeys(Map<String, Set<String>> changed, String branch) {
+        Set<String> keys = changed.get(branch);
+        if (keys == null) {
+            keys = new LinkedHashSet<>();
+            changed.put(branch, keys);
+        }
+        return keys;
+    }
+
+    /**
+     * Adds the child keys of a node to a set.
+     *
+     * @param keys the set to add to
+     * @param node the node, which has no children unless it is a map
+     */
+    private static void addChildKeys(Set<String> keys, Object node) {
+        if (node instanceof Map) {
+            keys.addAll(asMap(node).keySet());
+        }
+    }
+
+    /**
+     * Returns the value at a path of a tree.
+     *
+     * @param tree root of the tree
+     * @param path slash separated path
+     * @return the value, or null if there is none
+     */
+    static Object getNode(Map<String, Object> tree, String path) {
+        Object node = tree;
+        for (String segment : path.split("/")) {
+            if (!(node instanceof Map)) return null;
+            node = asMap(node).get(segment);
+        }
+        return node;
+    }
+
+    /**
+     * Sets or removes a value in a tree, creating missing parents and dropping parents left empty.
+     *
+     * @param node the map at the current depth
+     * @param segments the path segments
+     * @param depth index of the segment below the current map
+     * @param value the value to set, or null to remove
+     */
+    static void setValue(Map<String, Object> node, String[] segments, int depth, Object value) {
+        String key = segments[depth];
+        if (depth == segments.length - 1) {
+            if (value == null || (value instanceof Map && asMap(value).isEmpty())) {
+                node.remove(key);
+            } else {
+                node.put(key, value);
+            }
+            return;
+        }
+        Object child = node.get(key);
+        if (!(child instanceof Map)) {
+            if (value == null) return;
+            child = new TreeMap<String, Object>();
+            node.put(key, child);
+        }
+        Map<String, Object> childMap = asMap(child);
+        setValue(childMap, segments, depth + 1, value);
+        if (childMap.isEmpty()) {
+            node.remove(key);
+        }
+    }
+
+    /**
+     * Reads the log file and rebuilds the tree, compacting the file if it holds many records.
+     * Runs on the background thread and opens the file for appending.
+     *
+     * @return the rebuilt tree
+     */
+    private Map<String, Object> replay() {
+        Map<String, Object> tree = new TreeMap<>();
+        int records = replay(log, tree);
+        Log.d(TAG, "Replayed " + records + " records with " + tree.size() + " branches");
+
+        if (records < 0 || records > COMPACT_AFTER_RECORDS) {
+            compact(tree);
+        }
+        if (!log.isOpen()) {
+            try {
+                log.openForAppend();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open local data log: " + e.getMessage());
+            }
+        }
+        compactedLength = log.length();
+        return tree;
+    }
+
+    /**
+     * Requests a compaction once the log has doubled since it was last compacted. The tree is
+     * copied on the main thread after every update applied so far, and written in the
+     * background after the appends of those updates, so the compacted log holds all of them.
+     * Runs on the background thread.
+     */
+    private void compactIfGrown() {
+        long length = log.length();
+        if (compactionRequested || length < Math.max(MIN_COMPACT_BYTES, 2 * compactedLength)) {
+            return;
+        }
+        compactionRequested = true;
+        mainHandler.post(() -> {
+            Map<String, Object> snapshot = asMap(deepCopy(root));
+            executor.execute(() -> {
+                compact(snapshot);
+                compactedLength = log.length();
+                compactionRequested = false;
+                Log.d(TAG, "Compacted local data log from " + length + " to " + compactedLength + " bytes");
+            });
+        });
+    }
+
+    /**
+     * Rewrites the log file as a single record holding the whole tree, replacing it atomically.
+     *
+     * @param tree the tree to write
+     */
+    private void compact(Map<String, Object> tree) {
+        try {
+            log.rewrite(out -> {
+                if (!tree.isEmpty()) {
+                    writeRecord(out, tree);
+                }
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compact local data log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends an update to the log. Runs on the background thread.
+     *
+     * @param updates values keyed by their path
+     * @return error message, or null if the update was written
+     */
+    private String append(Map<String, Object> updates) {
+        try {
+            log.append(out -> writeRecord(out, updates));
+            compactIfGrown();
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append to local data log: " + e.getMessage());
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Applies every complete record of a log to a tree. A record cut short is truncated away.
+     *
+     * @param log the log to replay
+     * @param tree the tree the records are applied to
+     * @return number of records applied, or -1 if the file does not exist or is not a log
+     */
+    static int replay(AppendLog log, Map<String, Object> tree) {
+        return log.replay(in -> {
+            Map<String, Object> updates = readRecord(in);
+            for (Map.Entry<String, Object> entry : updates.entrySet()) {
+                setValue(tree, entry.getKey().split("/"), 0, entry.getValue());
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Writes one log record.
+     *
+     * @param stream the stream to write to
+     * @param updates values keyed by their path
+     * @throws IOException if writing fails
+     */
+    static void writeRecord(DataOutputStream stream, Map<String, Object> updates) throws IOException {
+        stream.writeInt(updates.size());
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+            stream.writeUTF(entry.getKey());
+            writeValue(stream, entry.getValue());
+        }
+    }
+
+    /**
+     * Reads one log record written by {@link #writeRecord(DataOutputStream, Map)}.
+     *
+     * @param stream the stream to read from
+     * @return values keyed by their path, in written order
+     * @throws IOException if reading fails or the stream ends within the record
+     */
+    static Map<String, Object> readRecord(DataInputStream stream) throws IOException {
+        int count = stream.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid record size " + count);
+        }
+        Map<String, Object> updates = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            updates.put(stream.readUTF(), readValue(stream));
+        }
+        return updates;
+    }
+
+    /**
+     * Writes a value with its type tag.
+     *
+     * @param stream the stream to write to
+     * @param value the value to write
+     * @throws IOException if writing fails
+     */
+    private static void writeValue(DataOutputStream stream, Object value) throws IOException {
+        if (value == null) {
+            stream.writeByte(TYPE_NULL);
+        } else if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes("UTF-8");
+            if (bytes.length > MAX_STRING_BYTES) {
+                throw new IOException("String of " + bytes.length + " bytes is too long");
+            }
+            stream.writeByte(TYPE_STRING);
+            stream.writeInt(bytes.length);
+            stream.write(bytes);
+        } else if (value instanceof Long || value instanceof Integer) {
+            stream.writeByte(TYPE_LONG);
+            stream.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            stream.writeByte(TYPE_DOUBLE);
+            stream.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            stream.writeByte(TYPE_BOOLEAN);
+            stream.writeBoolean((Boolean) value);
+        } else if (value instanceof Map) {
+            Map<String, Object> map = asMap(value);
+            stream.writeByte(TYPE_MAP);
+            stream.writeInt(map.size());
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                stream.writeUTF(entry.getKey());
+                writeValue(stream, entry.getValue());
+            }
+        } else {
+            throw new IOException("Unsupported value type " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #writeValue(DataOutputStream, Object)}.
+     *
+     * @param stream the stream to read from
+     * @return the value
+     * @throws IOException if reading fails or the data is corrupt
+     */
+    private static Object readValue(DataInputStream stream) throws IOException {
+        byte type = stream.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                int length = stream.readInt();
+                if (length < 0 || length > MAX_STRING_BYTES) {
+                    throw new IOException("Invalid string length " + length);
+                }
+                byte[] bytes = new byte[length];
+                stream.readFully(bytes);
+                return new String(bytes, "UTF-8");
+            case TYPE_LONG:
+                return stream.readLong();
+            case TYPE_DOUBLE:
+                return stream.readDouble();
+            case TYPE_BOOLEAN:
+                return stream.readBoolean();
+            case TYPE_MAP:
+                int count = stream.readInt();
+                if (count < 0) {
+                    throw new IOException("Invalid map size " + count);
+                }
+                Map<String, Object> map = new TreeMap<>();
+                for (int i = 0; i < count; i++) {
+                    map.put(stream.readUTF(), readValue(stream));
+                }
+                return map;
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Copies a value so later changes by the caller do not reach the tree.
+     * Integers are widened to longs, like Firebase returns them.
+     *
+     * @param value the value to copy
+     * @return the copy
+     */
+    static Object deepCopy(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> copy = new TreeMap<>();
+            for (Map.Entry<String, Object> entry : asMap(value).entrySet()) {
+                if (entry.getValue() != null) {
+                    copy.put(entry.getKey(), deepCopy(entry.getValue()));
+                }
+            }
+            return copy;
+        }
+        if (value instanceof Integer) {
+            return ((Integer) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        return value;
+    }
+
+    /**
+     * Casts a tree value to a map.
+     *
+     * @param value a value known to be a map
+     * @return the value as a map
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.mallmate40;
+
+/**
+ * Flat east-north frame in meters anchored at a point of the venue. Inside a building the
+ * curvature of the Earth is negligible, so positions projected once into the frame can be
+ * compared with plain, squared Euclidean distances instead of trigonometry per pair.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public final class LocalFrame {
+
+    /** Latitude of the frame origin */
+    private final double originLat;
+
+    /** Longitude of the frame origin */
+    private final double originLng;
+
+    /** Meters per degree of longitude at the origin */
+    private final double metersPerDegreeLng;
+
+    /**
+     * Creates a frame anchored at the given position.
+     *
+     * @param originLat latitude of the origin
+     * @param originLng longitude of the origin
+     */
+    public LocalFrame(double originLat, double originLng) {
+        this.originLat = originLat;
+        this.originLng = originLng;
+        this.metersPerDegreeLng = GeoMath.metersPerDegreeLongitude(originLat);
+    }
+
+    /**
+     * Returns the distance east of the origin.
+     *
+     * @param lng longitude in degrees
+     * @return meters east of the origin, negative to the west
+     */
+    public double toEast(double lng) {
+        return (lng - originLng) * metersPerDegreeLng;
+    }
+
+    /**
+     * Returns the distance north of the origin.
+     *
+     * @param lat latitude in degrees
+     * @return meters north of the origin, negative to the south
+     */
+    public double toNorth(double lat) {
+        return (lat - originLat) * GeoMath.METERS_PER_DEGREE;
+    }
+
+    /**
+     * Converts a distance east of the origin back to a longitude.
+     *
+     * @param east meters east of the origin
+     * @return longitude in degrees
+     */
+    public double toLongitude(double east) {
+        return originLng + east / metersPerDegreeLng;
+    }
+
+    /**
+     * Converts a distance north of the origin back to a latitude.
+     *
+     * @param north meters north of the origin
+     * @return latitude in degrees
+     */
+    public double toLatitude(double north) {
+        return originLat + north / GeoMath.METERS_PER_DEGREE;
+    }
+
+    /**
+     * Returns the squared distance between two projected positions.
+     *
+     * @param east1 east coordinate of first position
+     * @param north1 north coordinate of first position
+     * @param east2 east coordinate of second position
+     * @param north2 north coordinate of second position
+     * @return squared distance in square meters
+     */
+    public static double distanceSquared(double east1, double north1, double east2, double north2) {
+        double dEast = east2 - east1;
+        double dNorth = north2 - north1;
+        return dEast * dEast + dNorth * dNorth;
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.mallmate40;
+
+/**
+ * Lightweight Kalman filter that smooths raw location fixes before they enter a {@link Path}.
+ * Horizontal movement is modelled with a constant-velocity filter per axis in a local metric
+ * frame, and altitude with a random-walk filter. Every fix is weighted by its reported accuracy,
+ * so a noisy indoor fix moves the estimate less than a precise one. Fixes without an altitude,
+ * common for Wi-Fi fixes indoors, only update the horizontal position.
+ *
+ * <p>The filter keeps its state in primitive fields and does not allocate per fix.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class LocationFilter {
+
+    /** Standard deviation of walking acceleration in m/s^2, the horizontal process noise */
+    private static final double ACCELERATION_NOISE = 1.0;
+
+    /** Standard deviation of altitude change per second in meters, the vertical process noise */
+    private static final double ALTITUDE_NOISE = 0.5;
+
+    /** Accuracy in meters assumed when a fix does not report one */
+    private static final double DEFAULT_ACCURACY_METERS = 10.0;
+
+    /** Gap in seconds between fixes after which the filter starts over */
+    private static final double MAX_GAP_SECONDS = 30.0;
+
+    /** Flag indicating whether the filter has received its first fix */
+    private boolean initialized = false;
+
+    /** Local frame the filter runs in, anchored at the first fix */
+    private LocalFrame frame;
+
+    /** Time of the last fix in nanoseconds */
+    private long lastTimeNanos;
+
+    /** East axis filter state: position, velocity and covariance */
+    private double east, eastVelocity, eastP00, eastP01, eastP11;
+
+    /** North axis filter state: position, velocity and covariance */
+    private double north, northVelocity, northP00, northP01, northP11;
+
+    /** Altitude filter state: value, or NaN until a fix with an altitude arrives, and variance */
+    private double altitude, altitudeVariance;
+
+    /**
+     * Feeds a new fix into the filter.
+     *
+     * @param lat latitude of the fix
+     * @param lng longitude of the fix
+     * @param alt altitude of the fix, or NaN if the fix has none
+     * @param accuracyMeters reported horizontal accuracy in meters, or 0 if unknown
+     * @param verticalAccuracyMeters reported vertical accuracy in meters, or 0 if unknown
+     * @param timeNanos time of the fix in nanoseconds on a monotonic clock
+     */
+    public void update(double lat, double lng, double alt, double accuracyMeters,
+                       double verticalAccuracyMeters, long timeNanos) {
+        double horizontalVariance = variance(accuracyMeters);
+        double verticalVariance = variance(verticalAccuracyMeters);
+        double dt = (timeNanos - lastTimeNanos) / 1e9;
+
+        if (!initialized || dt <= 0 || dt > MAX_GAP_SECONDS) {
+            start(lat, lng, alt, horizontalVariance, verticalVariance, timeNanos);
+            return;
+        }
+        lastTimeNanos = timeNanos;
+
+        double measuredEast = frame.toEast(lng);
+        double measuredNorth = frame.toNorth(lat);
+
+        // East axis: predict with constant velocity, then correct with the measurement
+        double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+        double dt2 = dt * dt;
+        east += eastVelocity * dt;
+        double p00 = eastP00 + dt * (2 * eastP01 + dt * eastP11) + q * dt2 * dt2 / 4;
+        double p01 = eastP01 + dt * eastP11 + q * dt2 * dt / 2;
+        double p11 = eastP11 + q * dt2;
+        double s = p00 + horizontalVariance;
+        double k0 = p00 / s;
+        double k1 = p01 / s;
+        double innovation = measuredEast - east;
+        east += k0 * innovation;
+        eastVelocity += k1 * innovation;
+        eastP00 = (1 - k0) * p00;
+        eastP01 = (1 - k0) * p01;
+        eastP11 = p11 - k1 * p01;
+
+        // North axis, same model
+        north += northVelocity * dt;
+        p00 = northP00 + dt * (2 * northP01 + dt * northP11) + q * dt2 * dt2 / 4;
+        p01 = northP01 + dt * northP11 + q * dt2 * dt / 2;
+        p11 = northP11 + q * dt2;
+        s = p00 + horizontalVariance;
+        k0 = p00 / s;
+        k1 = p01 / s;
+        innovation = measuredNorth - north;
+        north += k0 * innovation;
+        northVelocity += k1 * innovation;
+        northP00 = (1 - k0) * p00;
+        northP01 = (1 - k0) * p01;
+        northP11 = p11 - k1 * p01;
+
+        // Altitude: random walk, uncertain for as long as fixes carry no altitude
+        double predictedVariance = altitudeVariance + ALTITUDE_NOISE * ALTITUDE_NOISE * dt;
+        if (Double.isNaN(alt)) {
+            altitudeVariance = predictedVariance;
+            return;
+        }
+        if (Double.isNaN(altitude)) {
+            altitude = alt;
+            altitudeVariance = verticalVariance;
+            return;
+        }
+        double gain = predictedVariance / (predictedVariance + verticalVariance);
+        altitude += gain * (alt - altitude);
+        altitudeVariance = (1 - gain) * predictedVariance;
+    }
+
+    /**
+     * Returns the filtered latitude.
+     *
+     * @return latitude in degrees
+     */
+    public double getLatitude() {
+        return frame.toLatitude(north);
+    }
+
+    /**
+     * Returns the filtered longitude.
+     *
+     * @return longitude in degrees
+     */
+    public double getLongitude() {
+        return frame.toLongitude(east);
+    }
+
+    /**
+     * Returns the filtered altitude.
+     *
+     * @return altitude in meters, or NaN if no fix had an altitude yet
+     */
+    public double getAltitude() {
+        return altitude;
+    }
+
+    /**
+     * Returns the estimated horizontal speed.
+     *
+     * @return speed in meters per second
+     */
+    public double getSpeed() {
+        return Math.sqrt(eastVelocity * eastVelocity + northVelocity * northVelocity);
+    }
+
+    /**
+     * Returns the estimated horizontal accuracy of the filtered position.
+     *
+     * @return one standard deviation in meters
+     */
+    public double getAccuracy() {
+        return Math.sqrt((eastP00 + northP00) / 2);
+    }
+
+    /**
+     * Forgets all state. The next fix starts the filter over.
+     */
+    public void reset() {
+        initialized = false;
+    }
+
+    /**
+     * Starts the filter at a fix with zero velocity.
+     *
+     * @param lat latitude of the fix
+     * @param lng longitude of the fix
+     * @param alt altitude of the fix, or NaN if the fix has none
+     * @param horizontalVariance variance of the horizontal position
+     * @param verticalVariance variance of the altitude
+     * @param timeNanos time of the fix in nanoseconds
+     */
+    private void start(double lat, double lng, double alt, double horizontalVariance,
+                       double verticalVariance, long timeNanos) {
+        initialized = true;
+        frame = new LocalFrame(lat, lng);
+        lastTimeNanos = timeNanos;
+
+        east = 0;
+        north = 0;
+        eastVelocity = 0;
+        northVelocity = 0;
+        eastP00 = horizontalVariance;
+        northP00 = horizontalVariance;
+        eastP01 = 0;
+        northP01 = 0;
+        // Walking speed is unknown at the start, allow a couple of m/s either way
+        eastP11 = 4;
+        northP11 = 4;
+
+        altitude = alt;
+        altitudeVariance = verticalVariance;
+    }
+
+    /**
+     * Converts a reported accuracy to a measurement variance.
+     *
+     * @param accuracyMeters reported accuracy in meters, or 0 if unknown
+     * @return variance in square meters
+     */
+    private static double variance(double accuracyMeters) {
+        double accuracy = accuracyMeters > 0 ? accuracyMeters : DEFAULT_ACCURACY_METERS;
+        return accuracy * accuracy;
+    }
+}
@@ -21,6 +21,7 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -28,7 +29,10 @@ import java.util.List;
  * location permissions for the application. The class provides user dialogs and callbacks for permission results.
  *
  * <p>The class supports Android 10 and above including background location permissions,
- * and handles all different cases of permission denial and repeated requests.</p>
+ * and handles all different cases of permission denial and repeated requests. On Android 10
+ * and above the optional activity recognition permission is requested together with location,
+ * so {@link LocationService} can use the step detector to resume fast sampling when the user
+ * starts walking.</p>
  *
  * @author Shon Aronov
  * @version 1.0
@@ -73,12 +77,22 @@ public class LocationPermissionManager {
     /** The callback for permission results */
     private PermissionCallback callback;
 
+    /** Activity recognition permission, optional, used for step detection (required only on Android 10 and above) */
+    private static final String ACTIVITY_RECOGNITION_PERMISSION =
+            Manifest.permission.ACTIVITY_RECOGNITION;
+
+    /** Flag indicating whether activity recognition was already requested by this manager */
+    private boolean activityRecognitionRequested = false;
+
     /** Launcher for multiple permission requests (modern approach) */
     private ActivityResultLauncher<String[]> permissionLauncher;
 
     /** Launcher for background location permission request */
     private ActivityResultLauncher<String> backgroundPermissionLauncher;
 
+    /** Launcher for the activity recognition permission request when location is already granted */
+    private ActivityResultLauncher<String> activityRecognitionLauncher;
+
     /**
      * Constructor for the location permission manager.
      *
@@ -115,11 +129,7 @@ public class LocationPermissionManager {
 
                     if (allGranted) {
                         // If we got all basic permissions, request background permissions if needed
-                        if (needsBackgroundPermission()) {
-                            requestBackgroundLocationPermission();
-                        } else {
-                            callback.onPermissionsGranted();
-                        }
+                        continueWithBackgroundPermission();
                     } else {
                         handlePermissionDenial();
                     }
@@ -133,6 +143,11 @@ public class LocationPermissionManager {
                     // because the app can function without it
                     callback.onPermissionsGranted();
                 });
+
+        // Listener for activity recognition permission, tracking works without it
+        activityRecognitionLauncher = activity.registerForActivityResult(
+                new ActivityResultContracts.RequestPermission(),
+                granted -> continueWithBackgroundPermission());
     }
 
     /**
@@ -144,6 +159,43 @@ public class LocationPermissionManager {
         return (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q);
     }
 
+    /**
+     * Checks if activity recognition permission is needed for the step detector.
+     *
+     * @return true if the device runs on Android 10 (API 29) or above
+     */
+    private boolean needsActivityRecognitionPermission() {
+        return (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q);
+    }
+
+    /**
+     * Returns the permissions to request when basic location permissions are missing,
+     * including activity recognition if it is needed and not granted yet.
+     *
+     * @return the permissions to request
+     */
+    private String[] getPermissionsToRequest() {
+        if (!needsActivityRecognitionPermission() || hasActivityRecognitionPermission()) {
+            return REQUIRED_PERMISSIONS;
+        }
+        activityRecognitionRequested = true;
+        List<String> permissions = new ArrayList<>(Arrays.asList(REQUIRED_PERMISSIONS));
+        permissions.add(ACTIVITY_RECOGNITION_PERMISSION);
+        return permissions.toArray(new String[0]);
+    }
+
+    /**
+     * Continues once basic location permissions are granted - requests background location
+     * permission if needed, otherwise reports the permissions as granted.
+     */
+    private void continueWithBackgroundPermission() {
+        if (needsBackgroundPermission() && !hasBackgroundLocationPermission()) {
+            requestBackgroundLocationPermission();
+        } else {
+            callback.onPermissionsGranted();
+        }
+    }
+
     /**
      * Starts the location permission request process.
      * The method first checks the status of location services and existing permissions,
@@ -158,16 +210,18 @@ public class LocationPermissionManager {
 
         // Check if we already have all basic permissions
         if (hasBasicLocationPermissions()) {
-            // If we have basic permissions, check if we need background permission
-            if (needsBackgroundPermission() && !hasBackgroundLocationPermission()) {
-                requestBackgroundLocationPermission();
+            // Location was granted earlier, ask once for step detection before continuing
+            if (needsActivityRecognitionPermission() && !hasActivityRecognitionPermission()
+                    && !activityRecognitionRequested) {
+                activityRecognitionRequested = true;
+                activityRecognitionLauncher.launch(ACTIVITY_RECOGNITION_PERMISSION);
             } else {
-                // We have all required permissions
-                callback.onPermissionsGranted();
+                // If we have basic permissions, check if we need background permission
+                continueWithBackgroundPermission();
             }
         } else {
-            // Request basic permissions
-            permissionLauncher.launch(REQUIRED_PERMISSIONS);
+            // Request basic permissions, together with activity recognition
+            permissionLauncher.launch(getPermissionsToRequest());
         }
     }
 
@@ -238,7 +292,7 @@ public class LocationPermissionManager {
                         "the app needs access to location permissions. Please grant the permissions.")
                 .setPositiveButton("Grant", (dialog, which) -> {
                     // Request permissions again
-                    permissionLauncher.launch(REQUIRED_PERMISSIONS);
+                    permissionLauncher.launch(getPermissionsToRequest());
                 })
                 .setNegativeButton("Cancel", (dialog, which) -> {
                     callback.onPermissionsDenied();
@@ -340,4 +394,18 @@ public class LocationPermissionManager {
         // On older versions, background permission is included in regular permission
         return hasBasicLocationPermissions();
     }
+
+    /**
+     * Checks if activity recognition permission, used by the step detector, is granted.
+     * On Android versions below 10 it is granted at install time.
+     *
+     * @return true if activity recognition is allowed
+     */
+    public boolean hasActivityRecognitionPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return ContextCompat.checkSelfPermission(activity, ACTIVITY_RECOGNITION_PERMISSION) ==
+                    PackageManager.PERMISSION_GRANTED;
+        }
+        return true;
+    }
 }
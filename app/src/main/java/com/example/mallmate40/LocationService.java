@@ -5,13 +5,20 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
 import android.location.Location;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
@@ -28,6 +35,13 @@ import com.google.android.gms.location.Priority;
  * Collects location points and saves them as paths when tracking is stopped.
  * Uses Google's Fused Location Provider for accurate location tracking.
  *
+ * <p>Location fixes are processed on a dedicated worker thread, so filtering, journaling and
+ * uploading never compete with map rendering on the main thread. The filter, the simplification
+ * stage and the journal are only touched on that thread; public methods called from the main
+ * thread post their work to it. Readers on other threads see the recorded points through
+ * {@link Path#getPoints()}, or subscribe to coalesced {@link TrackingState} updates with
+ * {@link #addTrackingStateListener(TrackingStatePublisher.Listener)}.</p>
+ *
  * @author Shon Aronov
  * @version 1.0
  * @since 1.0
@@ -49,17 +63,99 @@ public class LocationService extends Service {
     /** Callback that handles location update results */
     private LocationCallback locationCallback;
 
-    /** Configuration for location update requests */
-    private LocationRequest locationRequest;
+    /** Worker thread on which location fixes and step events are processed */
+    private HandlerThread ingestThread;
+
+    /** Handler posting work to the worker thread */
+    private Handler ingestHandler;
+
+    /** Flag indicating whether the worker accepts fixes, only accessed on the worker thread */
+    private boolean ingesting = false;
+
+    /** Chooses the location request settings based on whether the user is moving */
+    private final SamplingScheduler samplingScheduler = new SamplingScheduler();
+
+    /** Sensor manager used for step detection, or null if unavailable */
+    private SensorManager sensorManager;
+
+    /** Step detector sensor that wakes sampling up when the user starts walking, or null if unavailable */
+    private Sensor stepDetector;
+
+    /** Listener forwarding detected steps to the sampling scheduler */
+    private final SensorEventListener stepListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            if (ingesting && samplingScheduler.onStep()) {
+                requestLocationUpdates();
+            }
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+            // Not needed
+        }
+    };
+
+    /** Uploads pending points of the recording path once they are due, even while no fixes are kept */
+    private final Runnable chunkTimer = new Runnable() {
+        @Override
+        public void run() {
+            if (recordingPath == null) {
+                return;
+            }
+            flushIfNeeded(recordingPath);
+            ingestHandler.postDelayed(this, recordingPath.getMillisUntilFlushDue());
+        }
+    };
 
     /** Binder for client connections to this service */
     private final IBinder binder = new LocalBinder();
 
-    /** Current path being tracked */
-    private Path currentPath;
+    /** Current path being tracked, written on the worker thread and read on the main thread */
+    private volatile Path currentPath;
+
+    /**
+     * Path the worker is recording into, only accessed on the worker thread. Set when location
+     * updates begin and cleared when the session is finished, so fixes still queued after a stop
+     * never reach the path of the next session.
+     */
+    private Path recordingPath;
 
     /** Flag indicating whether location tracking is currently active */
-    private boolean isTracking = false;
+    private volatile boolean isTracking = false;
+
+    /** On-disk journal of the session in progress, replayed after the process is restarted */
+    private TrackingJournal journal;
+
+    /** Data store the recorded paths are saved to */
+    private DataStore dataStore;
+
+    /** Identifier of this installation, part of the key of every recorded path */
+    private String deviceId;
+
+    /** Filter that smooths raw location fixes before they reach the simplification stage */
+    private final LocationFilter locationFilter = new LocationFilter();
+
+    /** Simplification stage that drops redundant fixes before they reach the current path */
+    private TrackSimplifier simplifier;
+
+    /** Pushes tracking state updates to listeners on the main thread */
+    private final TrackingStatePublisher statePublisher = new TrackingStatePublisher();
+
+    /** Length of the current path in meters, only accessed on the worker thread */
+    private double distanceMeters;
+
+    /** Latitude of the last recorded point, or NaN if none, only accessed on the worker thread */
+    private double lastRecordedX;
+
+    /** Longitude of the last recorded point, only accessed on the worker thread */
+    private double lastRecordedY;
+
+    /** Estimated accuracy of the latest filtered location in meters, only accessed on the worker thread */
+    private double lastAccuracy;
+
+    /** Time in milliseconds, on the elapsed realtime clock, when tracking started */
+    private long trackingStartMillis;
 
     /**
      * Binder class for connecting clients to the service.
@@ -79,6 +175,8 @@ public class LocationService extends Service {
     /**
      * Initializes the service - creates a new Path object, sets up location service,
      * and creates notification channel for Android 8.0+.
+     * If the journal holds a session interrupted by the process being killed, the session
+     * is replayed and tracking resumes where it stopped.
      */
     @Override
     public void onCreate() {
@@ -86,16 +184,23 @@ public class LocationService extends Service {
         Log.d(TAG, "LocationService created");
 
         // Create new Path object for storing route points
-        currentPath = new Path();
+        dataStore = OfflineFirstDataStore.getInstance(this);
+        deviceId = PathId.getDeviceId(this);
+        currentPath = new Path(PathId.generate(deviceId), dataStore);
+
+        // Start the worker thread that processes location fixes
+        ingestThread = new HandlerThread("LocationIngest");
+        ingestThread.start();
+        ingestHandler = new Handler(ingestThread.getLooper());
 
         // Initialize location service
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
 
-        // Set up location request
-        locationRequest = new LocationRequest.Builder(1000) // Update every second
-                .setPriority(Priority.PRIORITY_HIGH_ACCURACY)
-                .setMinUpdateIntervalMillis(500)
-                .build();
+        // Set up step detection for adaptive sampling
+        sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
+        if (sensorManager != null) {
+            stepDetector = sensorManager.getDefaultSensor(Sensor.TYPE_STEP_DETECTOR);
+        }
 
         // Create notification channel for Android 8.0+
         createNotificationChannel();
@@ -104,25 +209,102 @@ public class LocationService extends Service {
         locationCallback = new LocationCallback() {
             @Override
             public void onLocationResult(LocationResult locationResult) {
-                if (locationResult == null || !isTracking) {
+                if (locationResult == null || !ingesting) {
                     return;
                 }
 
-                // Get the last location
-                Location location = locationResult.getLastLocation();
-                if (location != null) {
-                    // Save the new location
-                    currentPath.addPoint(
-                            location.getLatitude(),
-                            location.getLongitude(),
-                            location.getAltitude()
-                    );
-
-                    Log.d(TAG, "New location: " + location.getLatitude() + ", " +
-                            location.getLongitude() + ", " + location.getAltitude());
+                // Fixes may arrive in batches, process all of them in order
+                for (Location location : locationResult.getLocations()) {
+                    onNewLocation(location);
                 }
             }
         };
+
+        // Resume a session interrupted by the process being killed, reading the journal off the main thread.
+        // Posted first, so a session started from the UI only begins once the recovery is done.
+        journal = new TrackingJournal(getFilesDir());
+        ingestHandler.post(() -> {
+            boolean stale = journal.isStale();
+            Path recoveredPath = journal.recover(dataStore);
+            if (recoveredPath != null && (stale || !resumeTracking(recoveredPath))) {
+                // Too old to continue or no permissions, keep what was collected
+                recoveredPath.updateDatabase();
+                journal.finish();
+            }
+        });
+    }
+
+    /**
+     * Processes a single raw location fix on the worker thread - smooths it, passes it through the simplification
+     * stage and adapts the sampling rate to the estimated speed.
+     *
+     * @param location the raw location fix
+     */
+    private void onNewLocation(Location location) {
+        // Smooth the raw fix, weighted by its reported accuracy. Fixes without an altitude,
+        // common indoors, report 0, which must not be taken as a measurement.
+        double altitude = location.hasAltitude() ? location.getAltitude() : Double.NaN;
+        float verticalAccuracy = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && location.hasVerticalAccuracy()) {
+            verticalAccuracy = location.getVerticalAccuracyMeters();
+        }
+        locationFilter.update(
+                location.getLatitude(),
+                location.getLongitude(),
+                altitude,
+                location.hasAccuracy() ? location.getAccuracy() : 0,
+                verticalAccuracy,
+                location.getElapsedRealtimeNanos()
+        );
+
+        // Pass the filtered location through the simplification stage, the altitude stays unknown if the fix had none
+        simplifier.addPoint(
+                locationFilter.getLatitude(),
+                locationFilter.getLongitude(),
+                Double.isNaN(altitude) ? Double.NaN : locationFilter.getAltitude()
+        );
+
+        // Slow down or speed up sampling when the user stops or starts walking
+        if (samplingScheduler.onFix(locationFilter.getSpeed(), location.getElapsedRealtimeNanos() / 1000000)) {
+            requestLocationUpdates();
+        }
+
+        lastAccuracy = locationFilter.getAccuracy();
+        publishState();
+
+        Log.d(TAG, "New location: " + location.getLatitude() + ", " +
+                location.getLongitude() + ", " + altitude);
+    }
+
+    /**
+     * Saves a location kept by the simplification stage on the worker thread - adds it to the current path,
+     * appends it to the journal and uploads a chunk once enough points have been collected.
+     *
+     * @param x the x-coordinate (latitude) of the location
+     * @param y the y-coordinate (longitude) of the location
+     * @param z the z-coordinate (altitude) of the location
+     */
+    private void recordPoint(double x, double y, double z) {
+        Path path = recordingPath;
+        if (path == null) {
+            return;
+        }
+        path.addPoint(x, y, z);
+        addDistance(x, y);
+        journal.appendPoint(x, y, z);
+        flushIfNeeded(path);
+    }
+
+    /**
+     * Uploads the pending points of a path as a chunk if they are due and journals the upload.
+     * Runs on the worker thread.
+     *
+     * @param path the path being recorded
+     */
+    private void flushIfNeeded(Path path) {
+        if (path.flushIfNeeded()) {
+            journal.appendChunk(path.getFlushedCount());
+        }
     }
 
     /**
@@ -156,18 +338,21 @@ public class LocationService extends Service {
     }
 
     /**
-     * Cleans up the service when destroyed - stops location updates.
+     * Cleans up the service when destroyed - stops location updates and the worker thread.
+     * The journal is kept, so an unfinished session resumes when the service is created again.
      */
     @Override
     public void onDestroy() {
         super.onDestroy();
         stopLocationUpdates();
+        ingestThread.quitSafely();
         Log.d(TAG, "LocationService destroyed");
     }
 
     /**
      * Starts location tracking - checks permissions, resets current path,
-     * and begins receiving location updates.
+     * and begins receiving location updates. The new session begins on the worker thread after
+     * any session recovered from the journal, and a recovered session that resumed is kept.
      *
      * @return true if tracking started successfully, false if no permissions or already active
      */
@@ -183,49 +368,202 @@ public class LocationService extends Service {
             return false;
         }
 
-        // Reset current path
-        currentPath = new Path();
+        isTracking = true;
+        ingestHandler.post(this::beginNewSession);
+        return true;
+    }
 
-        // Start location tracking
-        fusedLocationClient.requestLocationUpdates(
-                locationRequest,
-                locationCallback,
-                Looper.getMainLooper()
-        );
+    /**
+     * Begins tracking a new path, unless a session recovered from the journal is already
+     * recording. Runs on the worker thread.
+     */
+    private void beginNewSession() {
+        if (recordingPath != null) {
+            // Start was requested before the recovered session resumed, keep recording into it
+            Log.d(TAG, "Keeping resumed path " + recordingPath.getPathId());
+            return;
+        }
+        Path path = new Path(PathId.generate(deviceId), dataStore);
+        currentPath = path;
+        journal.start(path);
+        beginLocationUpdates(path);
+    }
 
+    /**
+     * Continues tracking a recovered path after the service was restarted. Runs on the worker thread.
+     *
+     * @param recoveredPath the path replayed from the journal
+     * @return true if tracking resumed, false if location permissions are missing
+     */
+    private boolean resumeTracking(Path recoveredPath) {
+        if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_FINE_LOCATION) !=
+                PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "Location permissions not granted, cannot resume tracking");
+            return false;
+        }
+        currentPath = recoveredPath;
         isTracking = true;
+        journal.resume();
+        Log.d(TAG, "Resuming path " + recoveredPath.getPathId() + " with " + recoveredPath.size() + " points");
+        beginLocationUpdates(recoveredPath);
+        return true;
+    }
+
+    /**
+     * Requests location updates for a path and starts accepting fixes. Runs on the worker thread.
+     *
+     * @param path the path the fixes are recorded into
+     */
+    private void beginLocationUpdates(Path path) {
+        recordingPath = path;
+        locationFilter.reset();
+        simplifier = new TrackSimplifier(this::recordPoint);
+        samplingScheduler.reset();
+
+        // A resumed path already has a length
+        distanceMeters = 0;
+        lastRecordedX = Double.NaN;
+        lastAccuracy = 0;
+        Path.PointsView points = path.getPoints();
+        for (int i = 0; i < points.size(); i++) {
+            addDistance(points.getX(i), points.getY(i));
+        }
+        trackingStartMillis = SystemClock.elapsedRealtime();
+
+        // Pending points are uploaded on time even when the simplification stage keeps no new fixes
+        ingestHandler.removeCallbacks(chunkTimer);
+        ingestHandler.postDelayed(chunkTimer, path.getMillisUntilFlushDue());
+
+        // Start location tracking
+        requestLocationUpdates();
+        if (stepDetector != null && hasActivityRecognitionPermission()) {
+            sensorManager.registerListener(stepListener, stepDetector, SensorManager.SENSOR_DELAY_NORMAL,
+                    ingestHandler);
+        }
+
+        ingesting = true;
+        publishState();
         Log.d(TAG, "Location tracking started");
 
         // Update notification
         updateNotification("Location tracking active");
+    }
 
-        return true;
+    /**
+     * Requests location updates with the settings of the current sampling mode, delivered on the
+     * worker thread. Replaces any previous request made with the same callback.
+     */
+    private void requestLocationUpdates() {
+        SamplingScheduler.Mode mode = samplingScheduler.getMode();
+        LocationRequest locationRequest = new LocationRequest.Builder(mode.intervalMillis)
+                .setPriority(mode.highAccuracy
+                        ? Priority.PRIORITY_HIGH_ACCURACY
+                        : Priority.PRIORITY_BALANCED_POWER_ACCURACY)
+                .setMinUpdateIntervalMillis(mode.minIntervalMillis)
+                .setMaxUpdateDelayMillis(mode.maxUpdateDelayMillis)
+                .build();
+        try {
+            fusedLocationClient.requestLocationUpdates(
+                    locationRequest,
+                    locationCallback,
+                    ingestThread.getLooper()
+            );
+            Log.d(TAG, "Sampling mode: " + mode);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Location permission error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns whether the step detector may be used. The permission is only required on Android 10 and above.
+     *
+     * @return true if activity recognition is allowed
+     */
+    private boolean hasActivityRecognitionPermission() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.Q
+                || ActivityCompat.checkSelfPermission(this, android.Manifest.permission.ACTIVITY_RECOGNITION)
+                == PackageManager.PERMISSION_GRANTED;
     }
 
     /**
-     * Stops location tracking - stops location updates and saves current path to database.
+     * Stops location tracking - stops location updates and saves the rest of the current path to database.
+     * Most of the path has already been uploaded in chunks while tracking.
+     * The final save runs on the worker thread after the fixes already received.
      */
     public void stopTracking() {
         if (!isTracking) {
             return;
         }
+        isTracking = false;
+        ingestHandler.post(this::finishTracking);
+    }
 
+    /**
+     * Stops accepting fixes and saves the rest of the recorded path. Runs on the worker thread.
+     */
+    private void finishTracking() {
+        Path path = recordingPath;
+        if (path == null) {
+            return;
+        }
         // Stop location updates
+        ingesting = false;
+        ingestHandler.removeCallbacks(chunkTimer);
         fusedLocationClient.removeLocationUpdates(locationCallback);
+        if (sensorManager != null) {
+            sensorManager.unregisterListener(stepListener);
+        }
+
+        // Release the last location held back by the simplification stage
+        simplifier.flush();
+        Log.d(TAG, "Simplifier kept " + simplifier.getKeptCount() + " locations and dropped "
+                + simplifier.getDroppedCount());
 
         // Save path to database
-        if (currentPath != null && !currentPath.getPoints().isEmpty()) {
-            currentPath.updateDatabase();
-            Log.d(TAG, "Path saved to database with " + currentPath.getPoints().size() + " points");
+        if (!path.isEmpty()) {
+            path.updateDatabase();
+            Log.d(TAG, "Path saved to database with " + path.size() + " points");
         }
-
-        isTracking = false;
+        journal.finish();
+        publishState();
+        recordingPath = null;
         Log.d(TAG, "Location tracking stopped");
 
         // Update notification
         updateNotification("Location tracking stopped");
     }
 
+    /**
+     * Adds the distance from the last recorded point to a new one to the path length.
+     * Runs on the worker thread.
+     *
+     * @param x latitude of the new point
+     * @param y longitude of the new point
+     */
+    private void addDistance(double x, double y) {
+        if (!Double.isNaN(lastRecordedX)) {
+            // Recorded points are only a few meters apart, a flat projection is accurate enough
+            distanceMeters += GeoMath.approximateDistanceMeters(lastRecordedX, lastRecordedY, x, y);
+        }
+        lastRecordedX = x;
+        lastRecordedY = y;
+    }
+
+    /**
+     * Publishes the current tracking state to the listeners. Runs on the worker thread.
+     */
+    private void publishState() {
+        Path path = recordingPath != null ? recordingPath : currentPath;
+        statePublisher.publish(new TrackingState(
+                ingesting,
+                path.size(),
+                distanceMeters,
+                trackingStartMillis,
+                SystemClock.elapsedRealtime() - trackingStartMillis,
+                lastAccuracy
+        ));
+    }
+
     /**
      * Creates notification channel for Android 8.0 and above.
      * Required for foreground services on newer Android versions.
@@ -291,6 +629,9 @@ public class LocationService extends Service {
      */
     private void stopLocationUpdates() {
         fusedLocationClient.removeLocationUpdates(locationCallback);
+        if (sensorManager != null) {
+            sensorManager.unregisterListener(stepListener);
+        }
         isTracking = false;
     }
 
@@ -303,6 +644,26 @@ public class LocationService extends Service {
         return isTracking;
     }
 
+    /**
+     * Registers a listener for tracking state updates. The listener immediately receives the
+     * current state and is then called at most once per frame while the state changes.
+     * Must be called on the main thread.
+     *
+     * @param listener the listener to add
+     */
+    public void addTrackingStateListener(TrackingStatePublisher.Listener listener) {
+        statePublisher.addListener(listener);
+    }
+
+    /**
+     * Unregisters a tracking state listener. Must be called on the main thread.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeTrackingStateListener(TrackingStatePublisher.Listener listener) {
+        statePublisher.removeListener(listener);
+    }
+
     /**
      * Returns the current path being tracked.
      *
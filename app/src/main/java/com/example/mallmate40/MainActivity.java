@@ -17,7 +17,8 @@ import android.widget.EditText;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
-import java.util.List;
+import java.util.Locale;
+
 
 /**
  * MainActivity is the main learning screen of the app. It allows the user to start and stop location tracking, save points of interest, and navigate to the map screen. It manages permissions, UI state, and interaction with the LocationService.
@@ -49,28 +50,21 @@ public class MainActivity extends AppCompatActivity implements LocationPermissio
             isLocationServiceBound = true;
 
             Log.d(TAG, "Location service connected");
+            locationService.addTrackingStateListener(trackingStateListener);
             updateUIState();
         }
 
         @Override
         public void onServiceDisconnected(ComponentName name) {
+            locationService.removeTrackingStateListener(trackingStateListener);
             locationService = null;
             isLocationServiceBound = false;
             Log.d(TAG, "Location service disconnected");
         }
     };
 
-    private final Runnable pointCountUpdater = new Runnable() {
-        @Override
-        public void run() {
-            updatePointsCount();
-
-            // עדכון כל שנייה כל עוד השירות פעיל ומחובר
-            if (isLocationServiceBound && locationService != null && locationService.isTracking()) {
-                statusTextView.postDelayed(this, 1000);
-            }
-        }
-    };
+    // עדכוני מצב המעקב מהשירות, לכל היותר פעם בפריים
+    private final TrackingStatePublisher.Listener trackingStateListener = this::updatePointsCount;
 
     /**
      * Called when the activity is created. Initializes UI, permissions, and services.
@@ -81,7 +75,7 @@ public class MainActivity extends AppCompatActivity implements LocationPermissio
         setContentView(R.layout.activity_main);
 
 
-        poiManager = new PointOfInterestManager();
+        poiManager = new PointOfInterestManager(this);
 
 
         // אתחול רכיבי ממשק משתמש
@@ -148,10 +142,14 @@ public class MainActivity extends AppCompatActivity implements LocationPermissio
         if (isLocationServiceBound) {
             if (locationService != null && locationService.isTracking()) {
                 // ניתוק מהשירות אבל השארת השירות פעיל
+                locationService.removeTrackingStateListener(trackingStateListener);
                 unbindService(serviceConnection);
                 isLocationServiceBound = false;
             } else {
                 // אם לא במצב מעקב, ניתוק וסגירת השירות
+                if (locationService != null) {
+                    locationService.removeTrackingStateListener(trackingStateListener);
+                }
                 unbindService(serviceConnection);
                 stopService(new Intent(this, LocationService.class));
                 isLocationServiceBound = false;
@@ -168,6 +166,9 @@ public class MainActivity extends AppCompatActivity implements LocationPermissio
 
         // וידוא ניתוק מהשירות
         if (isLocationServiceBound) {
+            if (locationService != null) {
+                locationService.removeTrackingStateListener(trackingStateListener);
+            }
             unbindService(serviceConnection);
             isLocationServiceBound = false;
         }
@@ -234,9 +235,6 @@ public class MainActivity extends AppCompatActivity implements LocationPermissio
             if (locationService.startTracking()) {
                 Log.d(TAG, "Tracking started");
                 Toast.makeText(this, "מעקב מיקום החל", Toast.LENGTH_SHORT).show();
-
-                // התחלת עדכוני מספר נקודות
-                statusTextView.post(pointCountUpdater);
             } else {
                 Toast.makeText(this, "לא ניתן להתחיל מעקב מיקום", Toast.LENGTH_SHORT).show();
             }
@@ -255,9 +253,6 @@ public class MainActivity extends AppCompatActivity implements LocationPermissio
             Log.d(TAG, "Tracking stopped");
             Toast.makeText(this, "מעקב מיקום הופסק ונשמר", Toast.LENGTH_SHORT).show();
 
-            // עצירת עדכוני מספר נקודות
-            statusTextView.removeCallbacks(pointCountUpdater);
-
             // עדכון ממשק המשתמש
             updateUIState();
         }
@@ -265,16 +260,22 @@ public class MainActivity extends AppCompatActivity implements LocationPermissio
 
 
     /**
-     * Updates the points count TextView with the number of collected points.
+     * Updates the points count TextView with the tracking state pushed by the location service.
+     *
+     * @param state the current tracking state
      */
-    private void updatePointsCount() {
-        if (isLocationServiceBound && locationService != null && locationService.isTracking()) {
-            Path currentPath = locationService.getCurrentPath();
-            if (currentPath != null) {
-                int pointsCount = currentPath.getPoints().size();
-                pointsCountTextView.setText("מספר נקודות שנאספו: " + pointsCount);
-            }
+    private void updatePointsCount(TrackingState state) {
+        if (!state.isTracking()) {
+            return;
         }
+        long seconds = state.getDurationMillis() / 1000;
+        String text = "מספר נקודות שנאספו: " + state.getPointCount()
+                + "\nמרחק: " + Math.round(state.getDistanceMeters()) + " מ'"
+                + " | זמן: " + String.format(Locale.US, "%d:%02d", seconds / 60, seconds % 60);
+        if (state.getAccuracyMeters() > 0) {
+            text += " | דיוק: ±" + Math.round(state.getAccuracyMeters()) + " מ'";
+        }
+        pointsCountTextView.setText(text);
     }
 
 
@@ -298,7 +299,6 @@ public class MainActivity extends AppCompatActivity implements LocationPermissio
             pointsCountTextView.setText("");
         } else if (isTracking) {
             statusTextView.setText("מעקב מיקום פעיל");
-            updatePointsCount();
         } else {
             statusTextView.setText("מעקב מיקום מושבת");
             pointsCountTextView.setText("");
@@ -333,22 +333,13 @@ public class MainActivity extends AppCompatActivity implements LocationPermissio
 
             // קבלת המיקום הנוכחי
             Path currentPath = locationService.getCurrentPath();
-            if (currentPath != null && !currentPath.getPoints().isEmpty()) {
-                List<Point> points = currentPath.getPoints();
+            if (currentPath != null && !currentPath.isEmpty()) {
+                Path.PointsView points = currentPath.getPoints();
                 Point currentPoint = points.get(points.size() - 1);
 
                 // Find the closest path point to the current location (within 5 meters)
-                int closestIndex = -1;
-                double minDistance = Double.MAX_VALUE;
-                for (int i = 0; i < points.size(); i++) {
-                    Point p = points.get(i);
-                    double dist = haversineDistanceMeters(p.getX(), p.getY(), currentPoint.getX(), currentPoint.getY());
-                    if (dist < minDistance) {
-                        minDistance = dist;
-                        closestIndex = i;
-                    }
-                }
-                Point snapPoint = points.get(closestIndex);
+                int closestIndex = currentPath.findClosestPointIndex(currentPoint, 5.0);
+                Point snapPoint = closestIndex != -1 ? points.get(closestIndex) : currentPoint;
 
                 // שמירת הנקודה בדאטאבייס
                 boolean saved = poiManager.savePointOfInterest(
@@ -373,19 +364,5 @@ public class MainActivity extends AppCompatActivity implements LocationPermissio
         builder.show();
     }
 
-    /**
-     * Calculates the Haversine distance in meters between two lat/lon points.
-     */
-    private double haversineDistanceMeters(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371000; // Earth radius in meters
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return R * c;
-    }
-
 }
 
@@ -8,8 +8,14 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.ListView;
 import android.widget.Toast;
 import android.Manifest;
 
@@ -24,15 +30,9 @@ import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.maps.model.PolylineOptions;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Main maps activity of the application that handles indoor navigation in shopping centers.
@@ -56,6 +56,9 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     /** Tag for logging debug messages */
     private static final String TAG = "MapsActivity";
 
+    /** Maximum number of destinations listed while searching */
+    private static final int MAX_SEARCH_RESULTS = 50;
+
     /** Google Maps object */
     private GoogleMap mMap;
 
@@ -68,6 +71,12 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     /** Point of interest manager */
     private PointOfInterestManager poiManager;
 
+    /** Planner serving routes to points of interest from precomputed tables */
+    private RoutePlanner routePlanner;
+
+    /** Draws navigation routes as a simplified polyline */
+    private RouteRenderer routeRenderer;
+
     /**
      * Called when the activity is created. Initializes the map, buttons, and connects to the database.
      *
@@ -85,22 +94,15 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         goToLearningButton = findViewById(R.id.goToLearningButton);
 
         // Initialize Point of Interest Manager
-        poiManager = new PointOfInterestManager();
+        poiManager = new PointOfInterestManager(this);
 
-        // Check Firebase database connection
-        DatabaseReference connectedRef = FirebaseDatabase.getInstance().getReference(".info/connected");
-        connectedRef.addValueEventListener(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                boolean connected = snapshot.getValue(Boolean.class);
-                Log.d(TAG, "Firebase connected: " + connected);
-                Toast.makeText(MapsActivity.this, "Firebase connected: " + connected, Toast.LENGTH_SHORT).show();
-            }
+        // Start loading recorded paths so routing data is ready before the first request
+        routePlanner = RoutePlanner.getInstance(this);
 
-            @Override
-            public void onCancelled(DatabaseError error) {
-                Log.e(TAG, "Firebase connection error: " + error.getMessage());
-            }
+        // Check Firebase database connection, data is served locally either way
+        OfflineFirstDataStore.getInstance(this).addConnectionListener(connected -> {
+            Log.d(TAG, "Firebase connected: " + connected);
+            Toast.makeText(MapsActivity.this, "Firebase connected: " + connected, Toast.LENGTH_SHORT).show();
         });
 
         // Set up button click listeners
@@ -124,6 +126,10 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     public void onMapReady(GoogleMap googleMap) {
         mMap = googleMap;
 
+        // Draw routes as one polyline whose detail follows the zoom level
+        routeRenderer = new RouteRenderer(mMap, true);
+        mMap.setOnCameraIdleListener(routeRenderer::onCameraIdle);
+
         // Enable my location if permission is granted
         try {
             if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) ==
@@ -141,15 +147,14 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
 
     /**
      * Shows a dialog for selecting a saved point of interest for navigation.
-     * The dialog loads the list of points from the database and allows selection.
+     * The list is filtered with the point of interest search index as the user types.
      */
     private void showSavedPointsDialog() {
-        Toast.makeText(this, "Loading points of interest...", Toast.LENGTH_SHORT).show();
         Log.d(TAG, "Starting to load points");
 
         poiManager.loadSavedLocations(new PointOfInterestManager.LocationsLoadCallback() {
             @Override
-            public void onLocationsLoaded(List<Map<String, Object>> locations) {
+            public void onLocationsLoaded(List<PointOfInterest> locations) {
                 Log.d(TAG, "Successfully loaded " + locations.size() + " points");
                 if (locations.isEmpty()) {
                     Toast.makeText(MapsActivity.this,
@@ -158,22 +163,7 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
                     return;
                 }
 
-                // Create array of point names
-                String[] pointNames = new String[locations.size()];
-                for (int i = 0; i < locations.size(); i++) {
-                    pointNames[i] = (String) locations.get(i).get("name");
-                    Log.d(TAG, "Point found: " + pointNames[i]);
-                }
-
-                // Show selection dialog
-                new AlertDialog.Builder(MapsActivity.this)
-                        .setTitle("Select Navigation Destination")
-                        .setItems(pointNames, (dialog, which) -> {
-                            String selectedPointName = pointNames[which];
-                            showSelectedPointOnMap(locations.get(which));
-                        })
-                        .setNegativeButton("Cancel", null)
-                        .show();
+                showDestinationSearch(poiManager.getSearchIndex());
             }
 
             @Override
@@ -186,24 +176,87 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         });
     }
 
+    /**
+     * Shows a searchable list of destinations. Every keystroke queries the search index,
+     * which answers in well under a frame, and replaces the listed results.
+     *
+     * @param searchIndex search index over the saved points of interest
+     */
+    private void showDestinationSearch(PointOfInterestIndex searchIndex) {
+        final List<PointOfInterest> results = new ArrayList<>(searchIndex.search("", MAX_SEARCH_RESULTS));
+        final ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        for (PointOfInterest pointOfInterest : results) {
+            adapter.add(pointOfInterest.getName());
+        }
+
+        // Search field above the results list
+        EditText searchInput = new EditText(this);
+        searchInput.setHint("Search destinations");
+        searchInput.setSingleLine(true);
+        ListView resultsList = new ListView(this);
+        resultsList.setAdapter(adapter);
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.addView(searchInput);
+        layout.addView(resultsList);
+
+        AlertDialog dialog = new AlertDialog.Builder(MapsActivity.this)
+                .setTitle("Select Navigation Destination")
+                .setView(layout)
+                .setNegativeButton("Cancel", null)
+                .create();
+
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+                // Not needed
+            }
+
+            @Override
+            public void onTextChanged(CharSequence text, int start, int before, int count) {
+                results.clear();
+                results.addAll(searchIndex.search(text.toString(), MAX_SEARCH_RESULTS));
+                adapter.setNotifyOnChange(false);
+                adapter.clear();
+                for (PointOfInterest pointOfInterest : results) {
+                    adapter.add(pointOfInterest.getName());
+                }
+                adapter.notifyDataSetChanged();
+            }
+
+            @Override
+            public void afterTextChanged(Editable text) {
+                // Not needed
+            }
+        });
+
+        resultsList.setOnItemClickListener((parent, view, position, id) -> {
+            dialog.dismiss();
+            showSelectedPointOnMap(results.get(position));
+        });
+
+        dialog.show();
+    }
+
     /**
      * Shows the selected point on the map and calculates a navigation route to it.
      *
-     * @param pointData data of the selected point including location and name
+     * @param pointOfInterest the selected point of interest
      */
-    private void showSelectedPointOnMap(Map<String, Object> pointData) {
+    private void showSelectedPointOnMap(PointOfInterest pointOfInterest) {
         if (mMap == null) return;
 
         // Get point data
-        Point selectedPoint = (Point) pointData.get("location");
-        String pointName = (String) pointData.get("name");
+        Point selectedPoint = pointOfInterest.getLocation();
+        String pointName = pointOfInterest.getName();
 
         if (selectedPoint == null || pointName == null) {
             Toast.makeText(this, "Error loading point data", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // Clear previous markers
+        // Clear previous markers and route
+        routeRenderer.clear();
         mMap.clear();
 
         // Add destination marker
@@ -223,10 +276,11 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
             FusedLocationProviderClient fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
             fusedLocationClient.getLastLocation().addOnSuccessListener(location -> {
                 if (location != null) {
+                    // Without an altitude the floor is unknown and every floor is searched
                     Point userLocation = new Point(
                             location.getLatitude(),
                             location.getLongitude(),
-                            location.getAltitude()
+                            location.hasAltitude() ? location.getAltitude() : Double.NaN
                     );
 
                     // Add user location marker
@@ -236,7 +290,7 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
                             .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_GREEN)));
 
                     // Display path between points with fallback to rounded location
-                    displayPathWithFallback(userLocation, selectedPoint);
+                    displayPathWithFallback(userLocation, pointOfInterest);
                 } else {
                     Toast.makeText(MapsActivity.this,
                             "Could not get current location",
@@ -253,10 +307,10 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
      * If no route is found, tries again with rounded location.
      *
      * @param userLocation current user location
-     * @param selectedPoint the selected destination point
+     * @param destination the selected destination point of interest
      */
-    private void displayPathWithFallback(Point userLocation, Point selectedPoint) {
-        displayPathBetweenPoints(userLocation, selectedPoint, new PathCallback() {
+    private void displayPathWithFallback(Point userLocation, PointOfInterest destination) {
+        displayPathBetweenPoints(userLocation, destination, new PathCallback() {
             @Override
             public void onPathFound() {
                 // Path found, nothing else to do
@@ -277,7 +331,7 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
                     return;
                 }
 
-                displayPathBetweenPoints(roundedLocation, selectedPoint, new PathCallback() {
+                displayPathBetweenPoints(roundedLocation, destination, new PathCallback() {
                     @Override
                     public void onPathFound() {
                         // Path found with rounded location
@@ -295,156 +349,26 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     }
 
     /**
-     * Searches for and displays a route between two points on the map.
+     * Finds and displays a route from a point to a point of interest on the map.
+     * All recorded paths are merged into a single navigation graph, so the route
+     * may combine segments from several recordings. Routes to points of interest are
+     * precomputed by the route planner, so usually only the start is snapped to the graph here.
      *
      * @param startPoint starting point
-     * @param endPoint destination point
+     * @param destination destination point of interest
      * @param callback callback for receiving search results
      */
-    private void displayPathBetweenPoints(Point startPoint, Point endPoint, PathCallback callback) {
-        DatabaseReference pathsRef = FirebaseDatabase.getInstance().getReference("paths");
-        pathsRef.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot dataSnapshot) {
-                boolean pathFound = false;
-
-                for (DataSnapshot pathSnapshot : dataSnapshot.getChildren()) {
-                    List<Point> orderedPoints = extractOrderedPoints(pathSnapshot);
-                    int[] indices = findPointIndices(orderedPoints, startPoint, endPoint);
-
-                    if (indices != null) {
-                        drawPathBetweenIndices(orderedPoints, indices[0], indices[1]);
-                        pathFound = true;
-                        break;
-                    }
-                }
-
-                if (pathFound) {
-                    if (callback != null) callback.onPathFound();
-                } else {
-                    if (callback != null) callback.onPathNotFound();
-                }
-            }
-
-            @Override
-            public void onCancelled(DatabaseError databaseError) {
-                Log.e(TAG, "Error loading paths: " + databaseError.getMessage());
+    private void displayPathBetweenPoints(Point startPoint, PointOfInterest destination, PathCallback callback) {
+        routePlanner.findRoute(startPoint, destination, route -> {
+            if (route != null) {
+                routeRenderer.show(route);
+                if (callback != null) callback.onPathFound();
+            } else {
                 if (callback != null) callback.onPathNotFound();
             }
         });
     }
 
-    /**
-     * Extracts route points in numerical order from the database.
-     *
-     * @param pathSnapshot snapshot of a route from the database
-     * @return ordered list of route points
-     */
-    private List<Point> extractOrderedPoints(DataSnapshot pathSnapshot) {
-        List<Point> points = new ArrayList<>();
-        int index = 0;
-
-        while (true) {
-            DataSnapshot pointSnapshot = pathSnapshot.child(String.valueOf(index));
-            if (!pointSnapshot.exists()) break;
-
-            Point point = pointSnapshot.getValue(Point.class);
-            points.add(point);
-            index++;
-        }
-        return points;
-    }
-
-    /**
-     * Finds the indices of the closest points in the route to the given points.
-     *
-     * @param pathPoints route points
-     * @param point1 first point to search for
-     * @param point2 second point to search for
-     * @return array of two indices or null if no close points found
-     */
-    private int[] findPointIndices(List<Point> pathPoints, Point point1, Point point2) {
-        int index1 = findClosestPointIndex(pathPoints, point1, 5.0); // 5 meters
-        int index2 = findClosestPointIndex(pathPoints, point2, 5.0); // 5 meters
-        return (index1 != -1 && index2 != -1) ? new int[]{index1, index2} : null;
-    }
-
-    /**
-     * Finds the index of the closest point in the route within a given radius.
-     *
-     * @param pathPoints list of route points
-     * @param target target point
-     * @param thresholdMeters search radius in meters
-     * @return index of the closest point or -1 if not found within radius
-     */
-    private int findClosestPointIndex(List<Point> pathPoints, Point target, double thresholdMeters) {
-        int closestIndex = -1;
-        double minDistance = Double.MAX_VALUE;
-        for (int i = 0; i < pathPoints.size(); i++) {
-            Point p = pathPoints.get(i);
-            double dist = haversineDistanceMeters(p.x, p.y, target.x, target.y);
-            if (dist < minDistance) {
-                minDistance = dist;
-                closestIndex = i;
-            }
-        }
-        // Only accept if within threshold
-        if (minDistance > thresholdMeters) return -1;
-        return closestIndex;
-    }
-
-    /**
-     * Calculates distance between two geographic points using the Haversine formula.
-     *
-     * @param lat1 latitude of first point
-     * @param lon1 longitude of first point
-     * @param lat2 latitude of second point
-     * @param lon2 longitude of second point
-     * @return distance in meters between the two points
-     */
-    private double haversineDistanceMeters(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371000; // Earth radius in meters
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return R * c;
-    }
-
-    /**
-     * Displays on the map the route segment between two indices.
-     * Adds markers for each point in the route and adjusts the map view.
-     *
-     * @param pathPoints list of route points
-     * @param startIdx starting point index
-     * @param endIdx ending point index
-     */
-    private void drawPathBetweenIndices(List<Point> pathPoints, int startIdx, int endIdx) {
-        int start = Math.min(startIdx, endIdx);
-        int end = Math.max(startIdx, endIdx);
-
-        mMap.clear();
-
-        // Add a marker for each point in the path segment
-        for (int i = start; i <= end; i++) {
-            Point p = pathPoints.get(i);
-            mMap.addMarker(new MarkerOptions()
-                    .position(new LatLng(p.x, p.y))
-                    .title("Path Point " + (i + 1))
-                    .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_AZURE)));
-        }
-
-        // Optionally, zoom to fit all points
-        LatLngBounds.Builder builder = new LatLngBounds.Builder();
-        for (int i = start; i <= end; i++) {
-            Point p = pathPoints.get(i);
-            builder.include(new LatLng(p.x, p.y));
-        }
-        mMap.animateCamera(CameraUpdateFactory.newLatLngBounds(builder.build(), 100));
-    }
-
     /**
      * Adds markers for starting and destination locations on the map.
      *
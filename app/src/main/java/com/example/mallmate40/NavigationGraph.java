@@ -0,0 +1,647 @@
+package com.example.mallmate40;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Navigation graph that merges every recorded path into a single walkable network.
+ * Points from different recordings that lie close to each other are merged into one node,
+ * and consecutive points of a recording become edges weighted by their distance in meters.
+ * Routes are found with A* search, so a route may cross from one recording to another.
+ * Node positions are also kept in a {@link LocalFrame}, so edge weights and the A* estimate are
+ * plain Euclidean distances in meters.
+ *
+ * <p>Every node belongs to a floor of a {@link FloorModel}, and each floor has its own spatial
+ * index, so points are only merged with and snapped to nodes on their own floor. Floors are
+ * joined where a recording changed floor and by explicit {@link VerticalConnector}s, whose
+ * edges cost the horizontal distance plus the cost of the climb.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class NavigationGraph {
+
+    /** Default radius in meters within which recorded points are merged into one node */
+    public static final double DEFAULT_MERGE_RADIUS_METERS = 3.0;
+
+    /** Radius in meters within which the ends of a connector are snapped to existing nodes */
+    public static final double CONNECTOR_SNAP_RADIUS_METERS = 5.0;
+
+    /** Initial capacity of the node and edge arrays */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Radius in meters within which points are merged into an existing node */
+    private final double mergeRadiusMeters;
+
+    /** Latitude of every node */
+    private double[] nodeLat = new double[INITIAL_CAPACITY];
+
+    /** Longitude of every node */
+    private double[] nodeLng = new double[INITIAL_CAPACITY];
+
+    /** Altitude of every node */
+    private double[] nodeAlt = new double[INITIAL_CAPACITY];
+
+    /** Distance east of the frame origin of every node, in meters */
+    private double[] nodeEast = new double[INITIAL_CAPACITY];
+
+    /** Distance north of the frame origin of every node, in meters */
+    private double[] nodeNorth = new double[INITIAL_CAPACITY];
+
+    /** Local frame the nodes are projected into, anchored at the first node */
+    private LocalFrame frame;
+
+    /** Index of the first outgoing edge of every node, or -1 if the node has no edges */
+    private int[] firstEdge = new int[INITIAL_CAPACITY];
+
+    /** Number of nodes in the graph */
+    private int nodeCount = 0;
+
+    /** Target node of every edge */
+    private int[] edgeTarget = new int[INITIAL_CAPACITY];
+
+    /** Index of the next edge leaving the same node, or -1 at the end of the list */
+    private int[] edgeNext = new int[INITIAL_CAPACITY];
+
+    /** Length of every edge in meters */
+    private double[] edgeWeight = new double[INITIAL_CAPACITY];
+
+    /** Number of directed edges in the graph (every connection is stored in both directions) */
+    private int edgeCount = 0;
+
+    /** Floor of every node */
+    private int[] nodeFloor = new int[INITIAL_CAPACITY];
+
+    /** Floors of the building the graph covers */
+    private final FloorModel floors;
+
+    /** Spatial index over node positions of every floor, used for merging and snapping */
+    private final SpatialIndex[] floorIndexes;
+
+    /**
+     * Creates an empty single-floor navigation graph using the default merge radius.
+     */
+    public NavigationGraph() {
+        this(DEFAULT_MERGE_RADIUS_METERS, FloorModel.SINGLE_FLOOR);
+    }
+
+    /**
+     * Creates an empty single-floor navigation graph.
+     *
+     * @param mergeRadiusMeters radius in meters within which recorded points are merged into one node
+     */
+    public NavigationGraph(double mergeRadiusMeters) {
+        this(mergeRadiusMeters, FloorModel.SINGLE_FLOOR);
+    }
+
+    /**
+     * Creates an empty navigation graph over the floors of a building.
+     *
+     * @param mergeRadiusMeters radius in meters within which recorded points are merged into one node
+     * @param floors the floors of the building
+     */
+    public NavigationGraph(double mergeRadiusMeters, FloorModel floors) {
+        this.mergeRadiusMeters = mergeRadiusMeters;
+        this.floors = floors;
+        this.floorIndexes = new SpatialIndex[floors.getFloorCount()];
+        for (int floor = 0; floor < floorIndexes.length; floor++) {
+            floorIndexes[floor] = new SpatialIndex(mergeRadiusMeters);
+        }
+    }
+
+    /**
+     * Builds a graph over every floor of a building. The floors are found from the altitudes
+     * of all recorded points before any path is added.
+     *
+     * @param paths ordered points of every recorded path
+     * @param connectors the stairs, escalators and elevators of the building
+     * @return the navigation graph
+     */
+    public static NavigationGraph build(List<List<Point>> paths, List<VerticalConnector> connectors) {
+        int count = 0;
+        for (List<Point> points : paths) {
+            count += points.size();
+        }
+        double[] altitudes = new double[count];
+        int index = 0;
+        for (List<Point> points : paths) {
+            for (Point point : points) {
+                altitudes[index++] = point == null ? Double.NaN : point.z;
+            }
+        }
+        NavigationGraph graph = new NavigationGraph(DEFAULT_MERGE_RADIUS_METERS,
+                FloorModel.fromAltitudes(altitudes, count));
+        for (List<Point> points : paths) {
+            graph.addPath(points);
+        }
+        for (VerticalConnector connector : connectors) {
+            graph.addConnector(connector);
+        }
+        return graph;
+    }
+
+    /**
+     * Builds a graph over every floor of a building from paths kept in compact form. Each path
+     * is decoded twice, once for the floors and once into the graph, and no list of points is
+     * ever built.
+     *
+     * @param paths the recorded paths
+     * @param connectors the stairs, escalators and elevators of the building
+     * @return the navigation graph
+     */
+    public static NavigationGraph buildFromEncoded(List<EncodedPath> paths, List<VerticalConnector> connectors) {
+        int count = 0;
+        for (EncodedPath path : paths) {
+            count += path.getPointCount();
+        }
+        final double[] altitudes = new double[count];
+        final int[] index = {0};
+        for (EncodedPath path : paths) {
+            path.forEachPoint((lat, lng, alt) -> altitudes[index[0]++] = alt);
+        }
+        NavigationGraph graph = new NavigationGraph(DEFAULT_MERGE_RADIUS_METERS,
+                FloorModel.fromAltitudes(altitudes, count));
+        for (EncodedPath path : paths) {
+            graph.addPath(path);
+        }
+        for (VerticalConnector connector : connectors) {
+            graph.addConnector(connector);
+        }
+        return graph;
+    }
+
+    /**
+     * Adds a recorded path to the graph. Every point is merged into a nearby node on its floor
+     * when one exists, and consecutive points are connected by an edge. Where the recording
+     * changes floor the edge is costed like stairs.
+     *
+     * @param points ordered points of the recorded path
+     */
+    public void addPath(List<Point> points) {
+        int previousNode = -1;
+        for (Point point : points) {
+            if (point == null) {
+                continue;
+            }
+            previousNode = addPathPoint(previousNode, point.x, point.y, point.z);
+        }
+    }
+
+    /**
+     * Adds a recorded path kept in compact form to the graph, decoding it point by point.
+     *
+     * @param path the recorded path
+     * @see #addPath(List)
+     */
+    public void addPath(EncodedPath path) {
+        final int[] previousNode = {-1};
+        path.forEachPoint((lat, lng, alt) -> previousNode[0] = addPathPoint(previousNode[0], lat, lng, alt));
+    }
+
+    /**
+     * Adds the next point of a recorded path, connecting it to the node of the previous point.
+     *
+     * @param previousNode node of the previous point, or -1 at the start of the path
+     * @param lat latitude of the point
+     * @param lng longitude of the point
+     * @param alt altitude of the point
+     * @return the node of the point
+     */
+    private int addPathPoint(int previousNode, double lat, double lng, double alt) {
+        // A point without an altitude stays on the floor of the point before it
+        int floor = Double.isNaN(alt) && previousNode != -1
+                ? nodeFloor[previousNode] : Math.max(0, floors.floorOf(alt));
+        int node = findOrCreateNode(lat, lng, alt, floor);
+        if (previousNode != -1 && previousNode != node) {
+            double weight = distance(previousNode, node);
+            if (nodeFloor[previousNode] != nodeFloor[node]) {
+                double height = nodeAlt[node] - nodeAlt[previousNode];
+                weight += VerticalConnector.Type.STAIRS.climbCost(Double.isNaN(height) ? 0 : height);
+            }
+            connect(previousNode, node, weight);
+        }
+        return node;
+    }
+
+    /**
+     * Adds a connector between floors. Each end is snapped to the closest node on its floor,
+     * or becomes a new node if there is none nearby.
+     *
+     * @param connector the stairs, escalator or elevator to add
+     */
+    public void addConnector(VerticalConnector connector) {
+        Point from = connector.getFrom();
+        Point to = connector.getTo();
+        int fromNode = snapOrCreateNode(from);
+        int toNode = snapOrCreateNode(to);
+        if (fromNode == toNode) {
+            return;
+        }
+        double height = nodeAlt[toNode] - nodeAlt[fromNode];
+        double weight = distance(fromNode, toNode)
+                + connector.getType().climbCost(Double.isNaN(height) ? 0 : height);
+        connect(fromNode, toNode, weight);
+    }
+
+    /**
+     * Returns the floors of the building the graph covers.
+     *
+     * @return the floor model
+     */
+    public FloorModel getFloors() {
+        return floors;
+    }
+
+    /**
+     * Returns the floor of a node.
+     *
+     * @param node index of the node
+     * @return index of the floor, 0 for the lowest
+     */
+    public int getNodeFloor(int node) {
+        return nodeFloor[node];
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     *
+     * @return the node count
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of connections between nodes in the graph.
+     *
+     * @return the number of undirected edges
+     */
+    public int getEdgeCount() {
+        return edgeCount / 2;
+    }
+
+    /**
+     * Returns the position of a node.
+     *
+     * @param node index of the node
+     * @return a new point holding the node position
+     */
+    public Point getNodePoint(int node) {
+        return new Point(nodeLat[node], nodeLng[node], nodeAlt[node]);
+    }
+
+    /**
+     * Finds the node closest to the given point within a maximum distance. Only the floor of the
+     * point is searched; if the altitude of the point is unknown, every floor is searched.
+     *
+     * @param target the point to search around
+     * @param maxDistanceMeters search radius in meters
+     * @return index of the closest node or -1 if no node is within the radius
+     */
+    public int findNearestNode(Point target, double maxDistanceMeters) {
+        int floor = floors.floorOf(target.z);
+        if (floor != FloorModel.UNKNOWN_FLOOR) {
+            return floorIndexes[floor].nearest(target, maxDistanceMeters);
+        }
+        if (nodeCount == 0) {
+            return -1;
+        }
+        double east = frame.toEast(target.y);
+        double north = frame.toNorth(target.x);
+        int closest = -1;
+        double minDistanceSquared = Double.MAX_VALUE;
+        for (SpatialIndex index : floorIndexes) {
+            int node = index.nearest(target, maxDistanceMeters);
+            if (node == -1) continue;
+            double distanceSquared = LocalFrame.distanceSquared(nodeEast[node], nodeNorth[node], east, north);
+            if (distanceSquared < minDistanceSquared) {
+                minDistanceSquared = distanceSquared;
+                closest = node;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Finds the shortest route between two points. Both points are snapped to the closest node
+     * within the given radius before searching.
+     *
+     * @param start starting point
+     * @param end destination point
+     * @param snapRadiusMeters maximum distance in meters between a point and its snapped node
+     * @return ordered list of route points, or null if either point is off the graph or no route exists
+     */
+    public List<Point> findRoute(Point start, Point end, double snapRadiusMeters) {
+        int startNode = findNearestNode(start, snapRadiusMeters);
+        int endNode = findNearestNode(end, snapRadiusMeters);
+        if (startNode == -1 || endNode == -1) {
+            return null;
+        }
+        int[] nodes = findRoute(startNode, endNode);
+        if (nodes == null) {
+            return null;
+        }
+        List<Point> route = new ArrayList<>(nodes.length);
+        for (int node : nodes) {
+            route.add(getNodePoint(node));
+        }
+        return route;
+    }
+
+    /**
+     * Finds the shortest route between two nodes using A* search with a straight-line heuristic.
+     *
+     * @param startNode index of the starting node
+     * @param endNode index of the destination node
+     * @return ordered node indices from start to end, or null if the nodes are not connected
+     */
+    public int[] findRoute(int startNode, int endNode) {
+        double[] distance = new double[nodeCount];
+        int[] previous = new int[nodeCount];
+        boolean[] settled = new boolean[nodeCount];
+        Arrays.fill(distance, Double.MAX_VALUE);
+        Arrays.fill(previous, -1);
+
+        NodeQueue open = new NodeQueue();
+        distance[startNode] = 0;
+        open.push(startNode, heuristic(startNode, endNode));
+
+        while (!open.isEmpty()) {
+            int node = open.pop();
+            if (settled[node]) continue;
+            if (node == endNode) break;
+            settled[node] = true;
+
+            for (int edge = firstEdge[node]; edge != -1; edge = edgeNext[edge]) {
+                int next = edgeTarget[edge];
+                if (settled[next]) continue;
+                double candidate = distance[node] + edgeWeight[edge];
+                if (candidate < distance[next]) {
+                    distance[next] = candidate;
+                    previous[next] = node;
+                    open.push(next, candidate + heuristic(next, endNode));
+                }
+            }
+        }
+
+        if (distance[endNode] == Double.MAX_VALUE) {
+            return null;
+        }
+
+        List<Integer> reversed = new ArrayList<>();
+        for (int node = endNode; node != -1; node = previous[node]) {
+            reversed.add(node);
+        }
+        Collections.reverse(reversed);
+        int[] route = new int[reversed.size()];
+        for (int i = 0; i < route.length; i++) {
+            route[i] = reversed.get(i);
+        }
+        return route;
+    }
+
+    /**
+     * Computes the shortest route from every node to a root node with Dijkstra's algorithm.
+     * Edges are symmetric, so the tree also holds the shortest route from the root to every node.
+     *
+     * @param root index of the root node
+     * @param nextHop receives, for every node, the next node on its route to the root,
+     *                or -1 for the root and for nodes not connected to it
+     * @param distance receives, for every node, the route length to the root in meters,
+     *                 or infinity for nodes not connected to it
+     */
+    public void computeShortestPathTree(int root, int[] nextHop, float[] distance) {
+        double[] exact = new double[nodeCount];
+        boolean[] settled = new boolean[nodeCount];
+        Arrays.fill(exact, Double.MAX_VALUE);
+        Arrays.fill(nextHop, 0, nodeCount, -1);
+
+        NodeQueue open = new NodeQueue();
+        exact[root] = 0;
+        open.push(root, 0);
+        while (!open.isEmpty()) {
+            int node = open.pop();
+            if (settled[node]) continue;
+            settled[node] = true;
+
+            for (int edge = firstEdge[node]; edge != -1; edge = edgeNext[edge]) {
+                int next = edgeTarget[edge];
+                if (settled[next]) continue;
+                double candidate = exact[node] + edgeWeight[edge];
+                if (candidate < exact[next]) {
+                    exact[next] = candidate;
+                    nextHop[next] = node;
+                    open.push(next, candidate);
+                }
+            }
+        }
+
+        for (int node = 0; node < nodeCount; node++) {
+            distance[node] = settled[node] ? (float) exact[node] : Float.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Estimates the remaining distance between two nodes for the A* search.
+     *
+     * @param node current node
+     * @param goal destination node
+     * @return straight-line distance in meters
+     */
+    private double heuristic(int node, int goal) {
+        return distance(node, goal);
+    }
+
+    /**
+     * Returns a node on the same floor within the merge radius of the given position,
+     * creating a new node if none exists.
+     *
+     * @param lat latitude of the position
+     * @param lng longitude of the position
+     * @param alt altitude of the position, or NaN if unknown
+     * @param floor floor of the position
+     * @return index of the matching node
+     */
+    private int findOrCreateNode(double lat, double lng, double alt, int floor) {
+        int node = floorIndexes[floor].nearest(lat, lng, mergeRadiusMeters);
+        if (node != -1) {
+            return node;
+        }
+        node = addNode(lat, lng, alt, floor);
+        floorIndexes[floor].insert(node, lat, lng);
+        return node;
+    }
+
+    /**
+     * Returns the node on the same floor closest to a connector end within the snap radius,
+     * creating a new node if none exists.
+     *
+     * @param point the connector end
+     * @return index of the matching node
+     */
+    private int snapOrCreateNode(Point point) {
+        int floor = Math.max(0, floors.floorOf(point.z));
+        int node = floorIndexes[floor].nearest(point, CONNECTOR_SNAP_RADIUS_METERS);
+        if (node != -1) {
+            return node;
+        }
+        node = addNode(point.x, point.y, point.z, floor);
+        floorIndexes[floor].insert(node, point.x, point.y);
+        return node;
+    }
+
+    /**
+     * Appends a new node to the graph.
+     *
+     * @param lat latitude of the node
+     * @param lng longitude of the node
+     * @param alt altitude of the node
+     * @param floor floor of the node
+     * @return index of the new node
+     */
+    private int addNode(double lat, double lng, double alt, int floor) {
+        if (nodeCount == nodeLat.length) {
+            int capacity = nodeCount * 2;
+            nodeLat = Arrays.copyOf(nodeLat, capacity);
+            nodeLng = Arrays.copyOf(nodeLng, capacity);
+            nodeAlt = Arrays.copyOf(nodeAlt, capacity);
+            nodeEast = Arrays.copyOf(nodeEast, capacity);
+            nodeNorth = Arrays.copyOf(nodeNorth, capacity);
+            nodeFloor = Arrays.copyOf(nodeFloor, capacity);
+            firstEdge = Arrays.copyOf(firstEdge, capacity);
+        }
+        nodeLat[nodeCount] = lat;
+        nodeLng[nodeCount] = lng;
+        nodeAlt[nodeCount] = alt;
+        nodeFloor[nodeCount] = floor;
+        if (frame == null) {
+            frame = new LocalFrame(lat, lng);
+        }
+        nodeEast[nodeCount] = frame.toEast(lng);
+        nodeNorth[nodeCount] = frame.toNorth(lat);
+        firstEdge[nodeCount] = -1;
+        return nodeCount++;
+    }
+
+    /**
+     * Connects two nodes in both directions unless they are already connected.
+     *
+     * @param a first node
+     * @param b second node
+     * @param weight length of the connection in meters
+     */
+    private void connect(int a, int b, double weight) {
+        for (int edge = firstEdge[a]; edge != -1; edge = edgeNext[edge]) {
+            if (edgeTarget[edge] == b) return;
+        }
+        addEdge(a, b, weight);
+        addEdge(b, a, weight);
+    }
+
+    /**
+     * Appends a directed edge to the adjacency list of a node.
+     *
+     * @param from source node
+     * @param to target node
+     * @param weight length of the edge in meters
+     */
+    private void addEdge(int from, int to, double weight) {
+        if (edgeCount == edgeTarget.length) {
+            int capacity = edgeCount * 2;
+            edgeTarget = Arrays.copyOf(edgeTarget, capacity);
+            edgeNext = Arrays.copyOf(edgeNext, capacity);
+            edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+        }
+        edgeTarget[edgeCount] = to;
+        edgeWeight[edgeCount] = weight;
+        edgeNext[edgeCount] = firstEdge[from];
+        firstEdge[from] = edgeCount;
+        edgeCount++;
+    }
+
+    /**
+     * Returns the horizontal straight-line distance between two nodes.
+     *
+     * @param a first node
+     * @param b second node
+     * @return distance in meters
+     */
+    private double distance(int a, int b) {
+        return Math.sqrt(LocalFrame.distanceSquared(nodeEast[a], nodeNorth[a], nodeEast[b], nodeNorth[b]));
+    }
+
+    /**
+     * Binary min-heap of node indices ordered by their A* priority.
+     * Stale entries are skipped by the caller instead of being updated in place.
+     */
+    private static class NodeQueue {
+        /** Node index of every heap entry */
+        private int[] nodes = new int[64];
+
+        /** Priority of every heap entry */
+        private double[] keys = new double[64];
+
+        /** Number of entries in the heap */
+        private int size = 0;
+
+        /**
+         * Returns whether the queue has no entries.
+         *
+         * @return true if the queue is empty
+         */
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Adds a node to the queue.
+         *
+         * @param node node index
+         * @param key priority of the node, lower comes first
+         */
+        void push(int node, double key) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (keys[parent] <= key) break;
+                nodes[i] = nodes[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            keys[i] = key;
+        }
+
+        /**
+         * Removes and returns the node with the lowest priority.
+         *
+         * @return node index
+         */
+        int pop() {
+            int result = nodes[0];
+            size--;
+            int lastNode = nodes[size];
+            double lastKey = keys[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+                if (keys[child] >= lastKey) break;
+                nodes[i] = nodes[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            nodes[i] = lastNode;
+            keys[i] = lastKey;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package com.example.mallmate40;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Offline-first {@link DataStore} combining a local store on the device with the remote database.
+ * Reads are always served by the local store, and changes arriving from the remote database are
+ * copied into it. Writes are applied locally at once and queued for the remote database, which
+ * receives them in batches while it is reachable, so poor signal inside a building never blocks
+ * recording or navigation. The queue is an {@link OutboundQueue} persisted on the device, so
+ * writes not yet sent survive the process being killed. A batch failing for a reason that may
+ * clear up is sent again after a delay that doubles with every failure. A batch the remote
+ * database rejects for good, such as one denied by its rules, is split into its update groups,
+ * and the group that is rejected on its own is dropped, so it never blocks the queue.
+ *
+ * <p>A branch the device holds nothing of is reported loaded once the remote database has
+ * answered, or empty after {@link #REMOTE_ANSWER_TIMEOUT_MS} without an answer, since the
+ * remote database never answers while offline. Children arriving later are delivered as
+ * ordinary changes.</p>
+ *
+ * <p>Once both stores have delivered their initial data, local children missing from the
+ * remote database, and not waiting to be sent, are removed from the local store, so data
+ * deleted remotely while the app was closed is not served from the device forever.</p>
+ *
+ * <p>All listeners are called on the main thread. Writes may be issued from any thread.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class OfflineFirstDataStore implements DataStore {
+
+    /** Tag used for logging purposes */
+    private static final String TAG = "OfflineFirstDataStore";
+
+    /** Name of the local data file inside the app files directory */
+    private static final String LOCAL_FILE_NAME = "local_data.bin";
+
+    /** Name of the outbound queue file inside the app files directory */
+    private static final String QUEUE_FILE_NAME = "outbound_queue.bin";
+
+    /** Cache files of earlier versions, replaced by the local data file */
+    private static final String[] OBSOLETE_FILE_NAMES = {"paths_cache.bin", "poi_cache.bin"};
+
+    /** Time in milliseconds an empty local branch waits for the remote database before it is reported loaded */
+    private static final long REMOTE_ANSWER_TIMEOUT_MS = 3000;
+
+    /** Delay in milliseconds before queued writes are sent, so bursts go out as one batch */
+    private static final long BATCH_DELAY_MS = 1000;
+
+    /** Number of values no further update group is added to a batch beyond, a larger group is sent alone */
+    private static final int MAX_BATCH_SIZE = 100;
+
+    /** Delay in milliseconds before a failed batch is sent again for the first time */
+    private static final long INITIAL_RETRY_DELAY_MS = 2000;
+
+    /** Longest delay in milliseconds between attempts to send a failed batch */
+    private static final long MAX_RETRY_DELAY_MS = 5 * 60 * 1000;
+
+    /** The single shared store instance */
+    private static OfflineFirstDataStore instance;
+
+    /** Store on the device that serves all reads */
+    private final DataStore local;
+
+    /** Remote database that receives the queued writes */
+    private final DataStore remote;
+
+    /** Writes not yet confirmed by the remote database */
+    private final OutboundQueue pending;
+
+    /** Synchronization of every listened branch, keyed by the reader listening to it */
+    private final Map<ChildListener, BranchSync> branchSyncs = new HashMap<>();
+
+    /** Work waiting for the writes of an earlier process to be restored into the queue */
+    private final List<Runnable> pendingUntilQueueLoaded = new ArrayList<>();
+
+    /** Number of update groups still to be sent one at a time after a batch was rejected */
+    private int groupsToIsolate = 0;
+
+    /** Handler for running work on the main thread */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Sends the next batch of queued writes */
+    private final Runnable syncTask = this::sync;
+
+    /** Flag indicating whether a batch is waiting for the remote database to confirm it */
+    private boolean syncInProgress = false;
+
+    /** Flag indicating whether the remote database is currently reachable */
+    private boolean connected = false;
+
+    /** Delay in milliseconds before the next attempt after a failure */
+    private long retryDelayMillis = INITIAL_RETRY_DELAY_MS;
+
+    /** Flag indicating whether the last batch failed, so new writes wait for the scheduled retry */
+    private boolean backingOff = false;
+
+    /**
+     * Returns the shared data store of the app, backed by a local file and Firebase.
+     *
+     * @param context any context, used to locate the local data file
+     * @return the data store
+     */
+    public static synchronized OfflineFirstDataStore getInstance(Context context) {
+        if (instance == null) {
+            File directory = context.getApplicationContext().getFilesDir();
+            for (String name : OBSOLETE_FILE_NAMES) {
+                File obsolete = new File(directory, name);
+                if (obsolete.exists() && !obsolete.delete()) {
+                    Log.e(TAG, "Failed to delete " + name);
+                }
+            }
+            instance = new OfflineFirstDataStore(new LocalDataStore(new File(directory, LOCAL_FILE_NAME)),
+                    new FirebaseDataStore(), new File(directory, QUEUE_FILE_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * Creates an offline-first store over a local and a remote store.
+     *
+     * @param local store on the device that serves all reads
+     * @param remote remote database that receives the queued writes
+     * @param queueFile file persisting the writes not yet sent
+     */
+    public OfflineFirstDataStore(DataStore local, DataStore remote, File queueFile) {
+        this.local = local;
+        this.remote = remote;
+        this.pending = new OutboundQueue(queueFile, this::onQueueLoaded);
+        remote.addConnectionListener(isConnected -> {
+            connected = isConnected;
+            if (isConnected && !pending.isEmpty()) {
+                backingOff = false;
+                retryDelayMillis = INITIAL_RETRY_DELAY_MS;
+                scheduleSync(0);
+            }
+        });
+    }
+
+    /**
+     * Starts listening to the children of a branch. Children are served by the local
+     * store, while changes from the remote database are copied into it. The initial data is
+     * reported loaded once the local store has it, or, if it has none, once the remote database
+     * has answered or has not answered within {@link #REMOTE_ANSWER_TIMEOUT_MS}.
+     *
+     * @param branch path of the branch, such as "paths" or "paths/abc"
+     * @param listener receives the children and their changes
+     */
+    @Override
+    public void listen(String branch, ChildListener listener) {
+        BranchSync sync = new BranchSync(branch, listener);
+        branchSyncs.put(listener, sync);
+        sync.start();
+    }
+
+    /**
+     * Stops listening to the children of a branch, in both the local store and the remote database.
+     *
+     * @param branch path of the branch the listener was added to
+     * @param listener the listener to remove
+     */
+    @Override
+    public void removeListener(String branch, ChildListener listener) {
+        BranchSync sync = branchSyncs.remove(listener);
+        if (sync != null) {
+            sync.stop();
+        }
+    }
+
+    /**
+     * Applies values locally at once and queues them for the remote database.
+     *
+     * @param updates values keyed by their path
+     * @param callback receives the outcome once the remote database has stored the values or
+     *                 rejected them for good, or null if not needed
+     */
+    @Override
+    public void updateChildren(Map<String, Object> updates, WriteCallback callback) {
+        final Map<String, Object> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+            copy.put(entry.getKey(), LocalDataStore.deepCopy(entry.getValue()));
+        }
+        local.updateChildren(copy, null);
+        mainHandler.post(() -> {
+            pending.add(copy, callback);
+            if (!backingOff) {
+                scheduleSync(pending.size() >= MAX_BATCH_SIZE ? 0 : BATCH_DELAY_MS);
+            }
+        });
+    }
+
+    /**
+     * Registers a listener for the connection state of the remote database.
+     *
+     * @param listener the listener to add
+     */
+    @Override
+    public void addConnectionListener(ConnectionListener listener) {
+        remote.addConnectionListener(listener);
+    }
+
+    /**
+     * Returns the number of writes waiting for the remote database.
+     *
+     * @return the queued write count
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Runs the work that waited for the queue and sends the writes left by an earlier process
+     * as soon as they are restored.
+     */
+    private void onQueueLoaded() {
+        List<Runnable> work = new ArrayList<>(pendingUntilQueueLoaded);
+        pendingUntilQueueLoaded.clear();
+        for (Runnable task : work) {
+            task.run();
+        }
+        scheduleSync(0);
+    }
+
+    /**
+     * Runs work on the main thread once the queue holds the writes left by an earlier process.
+     *
+     * @param work the work to run
+     */
+    private void whenQueueLoaded(Runnable work) {
+        if (pending.isLoaded()) {
+            work.run();
+        } else {
+            pendingUntilQueueLoaded.add(work);
+        }
+    }
+
+    /**
+     * Schedules the next batch, replacing any batch scheduled before.
+     *
+     * @param delayMillis delay before sending
+     */
+    private void scheduleSync(long delayMillis) {
+        mainHandler.removeCallbacks(syncTask);
+        mainHandler.postDelayed(syncTask, delayMillis);
+    }
+
+    /**
+     * Sends the oldest queued writes to the remote database as one atomic update. The writes
+     * of one {@link #updateChildren} call always go out together.
+     */
+    private void sync() {
+        // Writes restored from an earlier process go out before anything newer
+        if (syncInProgress || !pending.isLoaded() || pending.isEmpty() || !connected) {
+            return;
+        }
+        // After a rejected batch its groups go one at a time, to find the one rejected
+        final Map<String, Object> batch = pending.peek(groupsToIsolate > 0 ? 1 : MAX_BATCH_SIZE);
+
+        syncInProgress = true;
+        remote.updateChildren(batch, (error, permanent) -> {
+            syncInProgress = false;
+            if (error != null && !permanent) {
+                Log.e(TAG, "Sync of " + batch.size() + " values failed, retrying in "
+                        + retryDelayMillis + " ms: " + error);
+                backingOff = true;
+                scheduleSync(retryDelayMillis);
+                retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MS);
+                return;
+            }
+            backingOff = false;
+            retryDelayMillis = INITIAL_RETRY_DELAY_MS;
+            if (error == null) {
+                // Writes replaced while the batch was on its way stay queued
+                pending.confirm(batch);
+                Log.d(TAG, "Synced " + batch.size() + " values, " + pending.size() + " still queued");
+                groupsToIsolate = Math.max(0, groupsToIsolate - 1);
+            } else if (pending.countGroups(batch) > 1) {
+                groupsToIsolate = pending.countGroups(batch);
+                Log.w(TAG, "Batch of " + batch.size() + " values rejected, sending its "
+                        + groupsToIsolate + " update groups one at a time: " + error);
+            } else {
+                Log.e(TAG, "Update of " + batch.size() + " values rejected for good, dropping it: " + error);
+                pending.drop(batch, error);
+                groupsToIsolate = Math.max(0, groupsToIsolate - 1);
+            }
+            if (!pending.isEmpty()) {
+                scheduleSync(0);
+            }
+        });
+    }
+
+    /**
+     * Keeps one branch of the local store in step with the remote database and forwards the
+     * local children to the reader.
+     */
+    private class BranchSync {
+
+        /** Name of the branch */
+        private final String branch;
+
+        /** The reader listening to the branch */
+        private final ChildListener listener;
+
+        /** Listener attached to the local store */
+        private final ChildListener localListener;
+
+        /** Listener attached to the remote database */
+        private final ChildListener remoteListener;
+
+        /** Flag indicating whether the reader stopped listening */
+        private boolean stopped = false;
+
+        /** Current local value of every child, used to skip remote changes already stored */
+        private final Map<String, Object> localChildren = new HashMap<>();
+
+        /** Flag indicating whether the local store has delivered its initial data */
+        private boolean localLoaded = false;
+
+        /** Flag indicating whether the remote database has delivered its initial data or failed */
+        private boolean remoteLoaded = false;
+
+        /** Flag indicating whether the reader has been told the initial data is loaded */
+        private boolean initialReported = false;
+
+        /** Reports an empty branch loaded when the remote database has not answered in time */
+        private final Runnable remoteTimeout = this::onRemoteTimeout;
+
+        /** Flag indicating whether the remote answer timeout has been scheduled */
+        private boolean timeoutScheduled = false;
+
+        /**
+         * Keys of the children present in the remote database, collected until stale local
+         * children have been removed, or null once they have been or the remote read failed
+         */
+        private Set<String> remoteKeys = new HashSet<>();
+
+        /**
+         * Creates the synchronization of a branch.
+         *
+         * @param branch name of the branch
+         * @param listener the reader listening to the branch
+         */
+        BranchSync(String branch, ChildListener listener) {
+            this.branch = branch;
+            this.listener = listener;
+            this.localListener = new ChildListener() {
+                @Override
+                public void onChildChanged(String key, Object value) {
+                    if (stopped) return;
+                    localChildren.put(key, value);
+                    listener.onChildChanged(key, value);
+                }
+
+                @Override
+                public void onChildRemoved(String key) {
+                    if (stopped) return;
+                    localChildren.remove(key);
+                    listener.onChildRemoved(key);
+                }
+
+                @Override
+                public void onInitialDataLoaded() {
+                    if (stopped) return;
+                    localLoaded = true;
+                    removeStaleChildren();
+                    reportInitialData();
+                }
+
+                @Override
+                public void onError(String error) {
+                    if (stopped) return;
+                    listener.onError(error);
+                }
+            };
+            this.remoteListener = new ChildListener() {
+                @Override
+                public void onChildChanged(String key, Object value) {
+                    if (stopped) return;
+                    if (remoteKeys != null) remoteKeys.add(key);
+                    mirror(key, value);
+                }
+
+                @Override
+                public void onChildRemoved(String key) {
+                    if (stopped) return;
+                    if (remoteKeys != null) remoteKeys.remove(key);
+                    mirror(key, null);
+                }
+
+                @Override
+                public void onInitialDataLoaded() {
+                    if (stopped) return;
+                    remoteLoaded = true;
+                    removeStaleChildren();
+                    reportInitialData();
+                }
+
+                @Override
+                public void onError(String error) {
+                    if (stopped) return;
+                    // Keep serving the local copy
+                    Log.e(TAG, "Remote sync of " + branch + " failed: " + error);
+                    remoteKeys = null;
+                    remoteLoaded = true;
+                    reportInitialData();
+                }
+            };
+        }
+
+        /**
+         * Attaches the listeners to the local and the remote store.
+         */
+        void start() {
+            local.listen(branch, localListener);
+            remote.listen(branch, remoteListener);
+        }
+
+        /**
+         * Detaches the listeners from the local and the remote store. Events still on their way
+         * are dropped.
+         */
+        void stop() {
+            stopped = true;
+            mainHandler.removeCallbacks(remoteTimeout);
+            local.removeListener(branch, localListener);
+            remote.removeListener(branch, remoteListener);
+        }
+
+        /**
+         * Copies a child received from the remote database into the local store. Queued writes
+         * below the child are applied on top, so changes not yet sent are not lost.
+         *
+         * @param key the key of the child
+         * @param value the remote value of the child, or null if it was removed
+         */
+        private void mirror(String key, Object value) {
+            String childPath = branch + "/" + key;
+            Map<String, Object> update = new LinkedHashMap<>();
+            update.put(childPath, value);
+            Map<String, Object> queued = pending.getPendingUnder(childPath);
+            update.putAll(queued);
+            boolean hasPending = !queued.isEmpty();
+            if (!hasPending && Objects.equals(localChildren.get(key), value)) {
+                return; // Already stored locally
+            }
+            local.updateChildren(update, null);
+        }
+
+        /**
+         * Removes the local children the remote database did not deliver, once both stores have
+         * delivered their initial data. Children with writes waiting to be sent are kept, so the
+         * removal waits until the writes of an earlier process are restored into the queue.
+         */
+        private void removeStaleChildren() {
+            if (!localLoaded || !remoteLoaded || remoteKeys == null) return;
+            final Set<String> delivered = remoteKeys;
+            whenQueueLoaded(() -> {
+                if (stopped) return;
+                // Children delivered while waiting for the queue are collected too
+                remoteKeys = null;
+                for (String key : new ArrayList<>(localChildren.keySet())) {
+                    if (!delivered.contains(key) && pending.getPendingUnder(branch + "/" + key).isEmpty()) {
+                        Log.d(TAG, "Removing " + branch + "/" + key + ", no longer in the remote database");
+                        mirror(key, null);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Tells the reader the initial data is loaded once there is something to serve or
+         * nothing more to wait for. An empty local branch waits a limited time for the remote
+         * database.
+         */
+        private void reportInitialData() {
+            if (initialReported || !localLoaded) return;
+            if (remoteLoaded || !localChildren.isEmpty()) {
+                initialReported = true;
+                mainHandler.removeCallbacks(remoteTimeout);
+                listener.onInitialDataLoaded();
+            } else if (!timeoutScheduled) {
+                timeoutScheduled = true;
+                mainHandler.postDelayed(remoteTimeout, REMOTE_ANSWER_TIMEOUT_MS);
+            }
+        }
+
+        /**
+         * Reports the branch loaded while it is still empty, since the remote database has not
+         * answered in time. Its children are delivered as changes if it answers later.
+         */
+        private void onRemoteTimeout() {
+            if (stopped || initialReported) return;
+            Log.d(TAG, "No answer for " + branch + " from the remote database, serving it empty");
+            initialReported = true;
+            listener.onInitialDataLoaded();
+        }
+    }
+}
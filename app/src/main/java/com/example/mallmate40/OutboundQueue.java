@@ -0,0 +1,549 @@
+package com.example.mallmate40;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes waiting to be sent to the remote database, kept in write order and persisted to an
+ * {@link AppendLog}, so paths and points of interest recorded without a connection are still sent
+ * after the process is killed. Every queued write and every write confirmed or dropped is
+ * appended as a record, and the log is replayed into the queue when it is created.
+ *
+ * <p>A queued write below a new path is replaced by it, and a queued write above a new path
+ * absorbs it, so the queue never holds overlapping paths. The writes of one {@link #add} call
+ * form a group that is always sent whole, such as a path chunk with its tile index entries and
+ * summary, and groups touching the same paths are joined into one. The log holds one record per
+ * group, is emptied whenever the queue drains and is compacted on start if it has grown long.</p>
+ *
+ * <p>Every group completes its callbacks once all of its writes are confirmed, or once it is
+ * dropped after the remote database rejected it for good. Callbacks are not persisted, the
+ * writes restored from an earlier process complete silently.</p>
+ *
+ * <p>The queue is only touched on the main thread, the log is written on a background thread.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class OutboundQueue {
+
+    /** Tag used for logging purposes */
+    private static final String TAG = "OutboundQueue";
+
+    /** Value written at the start of the log file to identify its format */
+    private static final int MAGIC = 0x4D4D5131; // "MMQ1"
+
+    /** Record type of queued writes */
+    static final byte RECORD_QUEUED = 'Q';
+
+    /** Record type of writes confirmed or rejected for good by the remote database */
+    static final byte RECORD_SENT = 'S';
+
+    /** Number of replayed records after which the log is compacted */
+    private static final int COMPACT_AFTER_RECORDS = 200;
+
+    /** The log of queued and confirmed writes, only accessed on the background thread */
+    private final AppendLog log;
+
+    /** Writes not yet confirmed by the remote database, keyed by path, in write order */
+    private final Map<String, Object> pending = new LinkedHashMap<>();
+
+    /** Group of every queued write keyed by path, older groups have lower numbers */
+    private final Map<String, Long> groups = new HashMap<>();
+
+    /** Number of the group of the next added writes */
+    private long nextGroup = 0;
+
+    /** Callbacks waiting for their group to be sent, keyed by group */
+    private final Map<Long, List<DataStore.WriteCallback>> callbacks = new HashMap<>();
+
+    /** Background thread for log access */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /** Handler for running work on the main thread */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Flag indicating whether the log has been replayed into the queue */
+    private boolean loaded = false;
+
+    /**
+     * Creates the queue and replays its log file in the background.
+     *
+     * @param file the log file, created if it does not exist
+     * @param onLoaded called on the main thread once the replayed writes are queued
+     */
+    public OutboundQueue(File file, Runnable onLoaded) {
+        this.log = new AppendLog(file, MAGIC);
+        executor.execute(() -> {
+            Map<String, Object> replayed = new LinkedHashMap<>();
+            Map<String, Long> replayedGroups = new HashMap<>();
+            replay(replayed, replayedGroups);
+            mainHandler.post(() -> {
+                // Writes queued while replaying are newer than the replayed ones
+                Map<Long, Map<String, Object>> newer = splitGroups(pending, groups);
+                pending.clear();
+                groups.clear();
+                pending.putAll(replayed);
+                groups.putAll(replayedGroups);
+                nextGroup = 0;
+                for (long group : replayedGroups.values()) {
+                    nextGroup = Math.max(nextGroup, group + 1);
+                }
+                Map<Long, List<DataStore.WriteCallback>> waiting = new HashMap<>(callbacks);
+                callbacks.clear();
+                for (Map.Entry<Long, Map<String, Object>> writes : newer.entrySet()) {
+                    long group = nextGroup++;
+                    for (Map.Entry<String, Object> entry : writes.getValue().entrySet()) {
+                        group = merge(pending, groups, entry.getKey(), entry.getValue(), group);
+                    }
+                    addCallbacks(group, waiting.remove(writes.getKey()));
+                    settleCallbacks(group);
+                }
+                loaded = true;
+                Log.d(TAG, "Restored " + replayed.size() + " queued writes");
+                onLoaded.run();
+            });
+        });
+    }
+
+    /**
+     * Adds writes to the queue and to the log as one group.
+     *
+     * @param updates values keyed by their path, a null value removes the path
+     * @param callback receives the outcome once the group is sent or dropped, or null if not needed
+     */
+    public void add(Map<String, Object> updates, DataStore.WriteCallback callback) {
+        long group = nextGroup++;
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+            group = merge(pending, groups, entry.getKey(), entry.getValue(), group);
+        }
+        if (callback != null) {
+            addCallbacks(group, Collections.singletonList(callback));
+        }
+        settleCallbacks(group);
+        final Map<String, Object> record = new LinkedHashMap<>(updates);
+        executor.execute(() -> append(RECORD_QUEUED, record));
+    }
+
+    /**
+     * Removes writes confirmed by the remote database. A write replaced after it was sent stays
+     * queued, since the remote database has not seen the new value yet. Groups left without
+     * writes complete their callbacks.
+     *
+     * @param sent the values that were sent, keyed by their path
+     */
+    public void confirm(Map<String, Object> sent) {
+        Set<Long> sentGroups = getGroups(sent);
+        final Map<String, Object> record = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : sent.entrySet()) {
+            if (pending.containsKey(entry.getKey()) && pending.get(entry.getKey()) == entry.getValue()) {
+                pending.remove(entry.getKey());
+                groups.remove(entry.getKey());
+                record.put(entry.getKey(), null);
+            }
+        }
+        sentGroups.removeAll(groups.values());
+        removeFromLog(record);
+        for (long group : sentGroups) {
+            complete(group, null, false);
+        }
+    }
+
+    /**
+     * Drops the groups of writes the remote database rejected for good, including writes
+     * joined to them after they were sent. The dropped paths are logged, and the callbacks of
+     * the groups receive the error.
+     *
+     * @param sent the values that were sent, keyed by their path
+     * @param error the error reported by the remote database
+     */
+    public void drop(Map<String, Object> sent, String error) {
+        Set<Long> rejected = getGroups(sent);
+        final Map<String, Object> record = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, Long>> entries = groups.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Long> entry = entries.next();
+            if (rejected.contains(entry.getValue())) {
+                Log.e(TAG, "Dropped rejected write of " + entry.getKey());
+                entries.remove();
+                pending.remove(entry.getKey());
+                record.put(entry.getKey(), null);
+            }
+        }
+        removeFromLog(record);
+        for (long group : rejected) {
+            complete(group, error, true);
+        }
+    }
+
+    /**
+     * Returns the number of groups holding some of the given writes.
+     *
+     * @param writes values keyed by their path
+     * @return the number of groups
+     */
+    public int countGroups(Map<String, Object> writes) {
+        return getGroups(writes).size();
+    }
+
+    /**
+     * Returns the writes of the oldest groups. Groups are never split, so a single group
+     * larger than the maximum is returned whole.
+     *
+     * @param maxCount number of writes no further group is added beyond
+     * @return values keyed by their path, oldest group first
+     */
+    public Map<String, Object> peek(int maxCount) {
+        Map<String, Object> batch = new LinkedHashMap<>();
+        for (Map<String, Object> group : splitGroups(pending, groups).values()) {
+            if (!batch.isEmpty() && batch.size() + group.size() > maxCount) break;
+            batch.putAll(group);
+        }
+        return batch;
+    }
+
+    /**
+     * Returns the queued writes at or below a path.
+     *
+     * @param path the path
+     * @return values keyed by their path, in write order
+     */
+    public Map<String, Object> getPendingUnder(String path) {
+        Map<String, Object> found = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : pending.entrySet()) {
+            if (entry.getKey().equals(path) || entry.getKey().startsWith(path + "/")) {
+                found.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns whether the writes left by an earlier process have been restored. Nothing should
+     * be sent before, or a restored write could overwrite a newer one already sent.
+     *
+     * @return true once the log has been replayed
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Returns the number of queued writes.
+     *
+     * @return the queued write count
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Returns whether no writes are queued.
+     *
+     * @return true if the queue is empty
+     */
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Returns the groups of queued writes.
+     *
+     * @param writes values keyed by their path
+     * @return the groups of the paths still queued
+     */
+    private Set<Long> getGroups(Map<String, Object> writes) {
+        Set<Long> found = new HashSet<>();
+        for (String path : writes.keySet()) {
+            Long group = groups.get(path);
+            if (group != null) {
+                found.add(group);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Adds callbacks to a group.
+     *
+     * @param group the group
+     * @param added the callbacks, or null if there are none
+     */
+    private void addCallbacks(long group, List<DataStore.WriteCallback> added) {
+        if (added == null || added.isEmpty()) {
+            return;
+        }
+        List<DataStore.WriteCallback> existing = callbacks.get(group);
+        if (existing == null) {
+            existing = new ArrayList<>();
+            callbacks.put(group, existing);
+        }
+        existing.addAll(added);
+    }
+
+    /**
+     * Moves the callbacks of groups joined into a group to it, and completes them at once if
+     * the group holds no writes.
+     *
+     * @param group the group the last added writes ended up in
+     */
+    private void settleCallbacks(long group) {
+        Set<Long> live = new HashSet<>(groups.values());
+        List<DataStore.WriteCallback> joined = new ArrayList<>();
+        Iterator<Map.Entry<Long, List<DataStore.WriteCallback>>> entries = callbacks.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Long, List<DataStore.WriteCallback>> entry = entries.next();
+            if (entry.getKey() != group && !live.contains(entry.getKey())) {
+                joined.addAll(entry.getValue());
+                entries.remove();
+            }
+        }
+        addCallbacks(group, joined);
+        if (!live.contains(group)) {
+            complete(group, null, false);
+        }
+    }
+
+    /**
+     * Completes the callbacks of a group.
+     *
+     * @param group the group
+     * @param error error message, or null if the group was sent
+     * @param permanent true if the group was rejected for good
+     */
+    private void complete(long group, String error, boolean permanent) {
+        List<DataStore.WriteCallback> done = callbacks.remove(group);
+        if (done == null) {
+            return;
+        }
+        for (DataStore.WriteCallback callback : done) {
+            callback.onComplete(error, permanent);
+        }
+    }
+
+    /**
+     * Records writes removed from the queue in the log, emptying it if the queue drained.
+     *
+     * @param record the removed paths mapped to null
+     */
+    private void removeFromLog(Map<String, Object> record) {
+        if (pending.isEmpty()) {
+            executor.execute(this::reset);
+        } else if (!record.isEmpty()) {
+            executor.execute(() -> append(RECORD_SENT, record));
+        }
+    }
+
+    /**
+     * Adds a write to a queue. A queued write below the new path is replaced by it, and a
+     * queued write above the new path absorbs it. Groups holding a replaced or absorbing
+     * write are joined with the group of the new write under the oldest of their numbers.
+     *
+     * @param queue the writes keyed by path
+     * @param groups the group of every write in the queue, keyed by path
+     * @param path the path of the value
+     * @param value the value, or null to remove the path
+     * @param group the group of the new write
+     * @return the group the new write ended up in, to be used for the rest of its group
+     */
+    private static long merge(Map<String, Object> queue, Map<String, Long> groups, String path,
+                              Object value, long group) {
+        Set<Long> joined = new HashSet<>();
+        joined.add(group);
+        Iterator<String> keys = queue.keySet().iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (key.startsWith(path + "/")) {
+                keys.remove();
+                joined.add(groups.remove(key));
+            }
+        }
+        String written = path;
+        Map.Entry<String, Object> absorbing = null;
+        for (Map.Entry<String, Object> entry : queue.entrySet()) {
+            if (path.startsWith(entry.getKey() + "/")) {
+                absorbing = entry;
+                break;
+            }
+        }
+        if (absorbing != null) {
+            written = absorbing.getKey();
+            Map<String, Object> merged = new TreeMap<>();
+            if (absorbing.getValue() instanceof Map) {
+                merged.putAll(asMap(LocalDataStore.deepCopy(absorbing.getValue())));
+            }
+            String[] segments = path.substring(written.length() + 1).split("/");
+            LocalDataStore.setValue(merged, segments, 0, value);
+            absorbing.setValue(merged.isEmpty() ? null : merged);
+        } else {
+            queue.put(path, value);
+        }
+        Long previous = groups.put(written, group);
+        if (previous != null) {
+            joined.add(previous);
+        }
+        if (joined.size() == 1) {
+            return group;
+        }
+        long oldest = Collections.min(joined);
+        for (Map.Entry<String, Long> entry : groups.entrySet()) {
+            if (joined.contains(entry.getValue())) {
+                entry.setValue(oldest);
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Splits queued writes by their group.
+     *
+     * @param queue the writes keyed by path
+     * @param groups the group of every write in the queue, keyed by path
+     * @return the writes of every group keyed by path in write order, oldest group first
+     */
+    private static Map<Long, Map<String, Object>> splitGroups(Map<String, Object> queue,
+                                                              Map<String, Long> groups) {
+        Map<Long, Map<String, Object>> split = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : queue.entrySet()) {
+            Long group = groups.get(entry.getKey());
+            Map<String, Object> writes = split.get(group);
+            if (writes == null) {
+                writes = new LinkedHashMap<>();
+                split.put(group, writes);
+            }
+            writes.put(entry.getKey(), entry.getValue());
+        }
+        return split;
+    }
+
+    /**
+     * Reads the log file and rebuilds the queue, compacting the file if it holds many records.
+     * Runs on the background thread and opens the file for appending.
+     *
+     * @param queue receives the queued writes in write order
+     * @param groups receives the group of every queued write
+     */
+    private void replay(Map<String, Object> queue, Map<String, Long> groups) {
+        int records = replay(log, queue, groups);
+
+        if (records < 0 || records > COMPACT_AFTER_RECORDS) {
+            rewrite(queue, groups);
+        }
+        if (!log.isOpen()) {
+            try {
+                log.openForAppend();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open outbound queue log: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Applies every complete record of a log to a queue. Every queued record is a group of its
+     * own. A record cut short or of an unknown type is truncated away together with everything
+     * after it.
+     *
+     * @param log the log to replay
+     * @param queue the queued writes in write order, the records are applied to
+     * @param groups the group of every queued write, keyed by path
+     * @return number of records applied, or -1 if the file does not exist or is not a log
+     */
+    static int replay(AppendLog log, Map<String, Object> queue, Map<String, Long> groups) {
+        final long[] nextGroup = {0};
+        for (long group : groups.values()) {
+            nextGroup[0] = Math.max(nextGroup[0], group + 1);
+        }
+        return log.replay(in -> {
+            byte type = in.readByte();
+            if (type != RECORD_QUEUED && type != RECORD_SENT) {
+                return false;
+            }
+            Map<String, Object> record = LocalDataStore.readRecord(in);
+            if (type == RECORD_QUEUED) {
+                long group = nextGroup[0]++;
+                for (Map.Entry<String, Object> entry : record.entrySet()) {
+                    group = merge(queue, groups, entry.getKey(), entry.getValue(), group);
+                }
+            } else {
+                queue.keySet().removeAll(record.keySet());
+                groups.keySet().removeAll(record.keySet());
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Empties the log once every queued write has been confirmed. Runs on the background thread.
+     */
+    private void reset() {
+        rewrite(Collections.<String, Object>emptyMap(), Collections.<String, Long>emptyMap());
+    }
+
+    /**
+     * Rewrites the log file as one record per group of the given writes, replacing it atomically.
+     *
+     * @param queue the queued writes
+     * @param groups the group of every queued write
+     */
+    private void rewrite(Map<String, Object> queue, Map<String, Long> groups) {
+        final Map<Long, Map<String, Object>> split = splitGroups(queue, groups);
+        try {
+            log.rewrite(out -> {
+                for (Map<String, Object> writes : split.values()) {
+                    out.writeByte(RECORD_QUEUED);
+                    LocalDataStore.writeRecord(out, writes);
+                }
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compact outbound queue log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends a record to the log. Runs on the background thread.
+     *
+     * @param type the record type
+     * @param record values keyed by their path
+     */
+    private void append(byte type, Map<String, Object> record) {
+        try {
+            if (!log.isOpen()) {
+                // A failed rewrite left the previous file in place, keep appending to it
+                log.openForAppend();
+            }
+            log.append(out -> {
+                out.writeByte(type);
+                LocalDataStore.writeRecord(out, record);
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append to outbound queue log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Casts a value to a map.
+     *
+     * @param value a value known to be a map
+     * @return the value as a map
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+}
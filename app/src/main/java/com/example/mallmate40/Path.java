@@ -1,35 +1,124 @@
 package com.example.mallmate40;
 
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import java.util.ArrayList;
-import java.util.List;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import android.util.Base64;
+import android.util.Log;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Locale;
 
 /**
  * Represents a collection of location points (path) that are gathered during tracking.
- * Provides methods for adding points, saving the path to Firebase, and clearing the path.
+ * Provides methods for adding points, saving the path to the database, and clearing the path.
+ *
+ * <p>The path is uploaded in fixed-size chunks while tracking is still running, so a long
+ * session never becomes one large write and the uploaded part survives if the process dies.
+ * Each chunk is stored under {@code paths/<pathId>/chunks/<chunkIndex>} with its point count
+ * and bounding box, and readers join the chunks in key order. Every chunk also adds the path to the tile index under
+ * {@code path_tiles/<geohash>/<pathId>} for each {@link GeoHash} tile its points fall in,
+ * so readers can fetch only the paths near them, and updates the {@link PathSummary} of the
+ * path under {@code path_summaries/<pathId>}.</p>
+ *
+ * <p>Every write sets values at keys that depend only on the path key, the chunk index and the
+ * points, and never appends or increments. Uploading a chunk again, after a retry or after
+ * resuming from the {@link TrackingJournal}, rewrites the same values instead of adding to them.</p>
+ *
+ * <p>Coordinates are kept in growable primitive columns rather than one object per point, so
+ * appending a point does not allocate. A single thread may append while other threads read
+ * through {@link #getPoints()}, which returns a view of the points present at the time of the call.</p>
  *
  * @author Shon Aronov
  * @version 1.0
  * @since 1.0
  */
 public class Path {
-    /** List of points that make up the path */
-    private ArrayList<Point> points;
+    /** Tag used for logging purposes */
+    private static final String TAG = "Path";
+
+    /** Database key holding the Base64 encoded points, see {@link PathCodec} */
+    public static final String KEY_DATA = "data";
+
+    /** Database key holding the number of encoded points */
+    public static final String KEY_COUNT = "count";
+
+    /** Database key of the branch holding the uploaded chunks of a path */
+    public static final String KEY_CHUNKS = "chunks";
+
+    /** Database key of the southern edge of a chunk's bounding box */
+    public static final String KEY_MIN_LAT = "minLat";
+
+    /** Database key of the western edge of a chunk's bounding box */
+    public static final String KEY_MIN_LNG = "minLng";
+
+    /** Database key of the northern edge of a chunk's bounding box */
+    public static final String KEY_MAX_LAT = "maxLat";
+
+    /** Database key of the eastern edge of a chunk's bounding box */
+    public static final String KEY_MAX_LNG = "maxLng";
+
+    /** Number of points after which a chunk is uploaded */
+    private static final int CHUNK_POINTS = 60;
+
+    /** Time in milliseconds after which pending points are uploaded even if the chunk is not full */
+    private static final long CHUNK_INTERVAL_MS = 30000;
 
-    /** Firebase database reference for storing paths */
-    private DatabaseReference dbref;
+    /** Initial capacity of the coordinate columns, about 10 minutes of 1 Hz tracking */
+    private static final int INITIAL_CAPACITY = 600;
+
+    /** Latitude (x) of every point. Replaced, never modified in place, when the column grows. */
+    private volatile double[] xs = new double[INITIAL_CAPACITY];
+
+    /** Longitude (y) of every point */
+    private volatile double[] ys = new double[INITIAL_CAPACITY];
+
+    /** Altitude (z) of every point */
+    private volatile double[] zs = new double[INITIAL_CAPACITY];
+
+    /** Number of points in the path, published after the point coordinates are written */
+    private volatile int size = 0;
+
+    /** Spatial index over the collected points, keyed by their position in the path */
+    private SpatialIndex pointIndex;
+
+    /** Number of points already added to the spatial index */
+    private int indexedCount = 0;
+
+    /** Data store the chunks of the path are written to */
+    private final DataStore dataStore;
+
+    /** Database key of this path, time ordered and unique per device, see {@link PathId} */
+    private final String pathId;
+
+    /** Number of points already uploaded in chunks */
+    private int flushedCount = 0;
+
+    /** Index of the next chunk to upload */
+    private int chunkIndex = 0;
+
+    /** Time in milliseconds of the last chunk upload */
+    private long lastFlushTime;
+
+    /** Summary of the points already uploaded, including the tiles written to the tile index */
+    private final PathSummary summary = new PathSummary();
 
     /**
-     * Creates a new path and initializes the Firebase connection.
-     * The path starts empty and is ready to collect location points.
+     * Creates an empty path that saves its chunks to the given data store.
+     * New sessions use a key from {@link PathId#generate(String)}, resumed sessions reuse the key
+     * of the interrupted session.
+     *
+     * @param pathId the database key of the path
+     * @param dataStore the data store the path is saved to
      */
-    public Path() {
-        this.points = new ArrayList<>();
-        this.dbref = FirebaseDatabase.getInstance().getReference("paths");
+    public Path(String pathId, DataStore dataStore) {
+        this.pointIndex = new SpatialIndex(5.0);
+        this.dataStore = dataStore;
+        this.pathId = pathId;
+        this.lastFlushTime = System.currentTimeMillis();
+        // Keys from PathId hold the time recording started, even for a resumed session
+        long startTime = PathId.getTime(pathId);
+        summary.setStartTime(startTime > 0 ? startTime : lastFlushTime);
     }
 
     /**
@@ -41,37 +130,295 @@ public class Path {
      * @param z the z-coordinate of the location (typically altitude)
      */
     public void addPoint(double x, double y, double z) {
-        points.add(new Point(x, y, z));
+        int index = size;
+        if (index == xs.length) {
+            int capacity = index * 2;
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            zs = Arrays.copyOf(zs, capacity);
+        }
+        xs[index] = x;
+        ys[index] = y;
+        zs[index] = z;
+        size = index + 1;
+    }
+
+    /**
+     * Returns the number of points in the path.
+     *
+     * @return the point count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the path has no points.
+     *
+     * @return true if no points were added
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the database key of this path.
+     *
+     * @return the path identifier
+     */
+    public String getPathId() {
+        return pathId;
+    }
+
+    /**
+     * Returns the number of points already uploaded in chunks.
+     *
+     * @return the uploaded point count
+     */
+    public int getFlushedCount() {
+        return flushedCount;
+    }
+
+    /**
+     * Records that a chunk ending at the given point count was uploaded by an earlier process.
+     * Used when replaying a {@link TrackingJournal}.
+     *
+     * @param count total number of points uploaded once the chunk was written
+     */
+    public void restoreFlushedCount(int count) {
+        PointsView points = getPoints();
+        for (int i = flushedCount; i < Math.min(count, points.size()); i++) {
+            summary.addPoint(points.getX(i), points.getY(i), points.getZ(i));
+        }
+        flushedCount = count;
+        chunkIndex++;
+    }
+
+    /**
+     * Uploads the points collected since the last upload as a new chunk once enough points
+     * or enough time have accumulated. Called after every new point during tracking, and
+     * when {@link #getMillisUntilFlushDue()} has passed, so points are uploaded on time even
+     * while no new points arrive.
+     *
+     * @return true if a chunk was uploaded
+     */
+    public boolean flushIfNeeded() {
+        int pending = size - flushedCount;
+        if (pending >= CHUNK_POINTS
+                || (pending > 0 && System.currentTimeMillis() - lastFlushTime >= CHUNK_INTERVAL_MS)) {
+            flushChunk();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the time left until the pending points are due for upload by
+     * {@link #flushIfNeeded()}, even if the chunk is not full.
+     *
+     * @return delay in milliseconds, the full chunk interval if no points are pending
+     */
+    public long getMillisUntilFlushDue() {
+        if (size == flushedCount) {
+            return CHUNK_INTERVAL_MS;
+        }
+        return Math.max(0, lastFlushTime + CHUNK_INTERVAL_MS - System.currentTimeMillis());
     }
 
     /**
-     * Saves the complete path to Firebase when the stop button is pressed.
-     * Creates a unique identifier for the path based on the current date and time.
-     * The path is only saved if it contains at least one point.
+     * Saves the rest of the path to Firebase when the stop button is pressed.
+     * Any points not yet uploaded are written as a final chunk in the compact
+     * {@link PathCodec} encoding. Nothing is written if there are no pending points.
      */
     public void updateDatabase() {
-        if (!points.isEmpty()) {
-            // Create current date and time object
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss", Locale.getDefault());
-            String dateTime = sdf.format(new Date());
-            // Use date and time as key
-            String pathId = dateTime;
-            dbref.child(pathId).setValue(points)
-                    .addOnSuccessListener(aVoid -> {
-                        System.out.println("Path saved successfully!");
-                    })
-                    .addOnFailureListener(e -> {
-                        System.err.println("Failed to save path: " + e.getMessage());
-                    });
+        if (size > flushedCount) {
+            flushChunk();
         }
     }
 
     /**
-     * Returns the list of points that make up this path.
+     * Uploads all pending points as the next chunk of this path.
+     */
+    private void flushChunk() {
+        PointsView points = getPoints();
+        int from = flushedCount;
+        int to = points.size();
+        String chunkKey = String.format(Locale.US, "%05d", chunkIndex);
+
+        Map<String, Object> value = new HashMap<>();
+        Map<String, Object> update = new HashMap<>();
+        update.put(PathStore.BRANCH + "/" + pathId + "/" + KEY_CHUNKS + "/" + chunkKey, value);
+        // The chunk, its tile index entries and the summary are written in one atomic update
+        double minLat = Double.POSITIVE_INFINITY;
+        double minLng = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double maxLng = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            minLat = Math.min(minLat, points.getX(i));
+            minLng = Math.min(minLng, points.getY(i));
+            maxLat = Math.max(maxLat, points.getX(i));
+            maxLng = Math.max(maxLng, points.getY(i));
+            if (summary.addPoint(points.getX(i), points.getY(i), points.getZ(i))) {
+                String tile = GeoHash.tileOf(points.getX(i), points.getY(i));
+                update.put(PathStore.TILES_BRANCH + "/" + tile + "/" + pathId, true);
+            }
+        }
+        // Readers take the box from the chunk header and only decode the points they need
+        value.put(KEY_COUNT, to - from);
+        value.put(KEY_MIN_LAT, minLat);
+        value.put(KEY_MIN_LNG, minLng);
+        value.put(KEY_MAX_LAT, maxLat);
+        value.put(KEY_MAX_LNG, maxLng);
+        value.put(KEY_DATA, Base64.encodeToString(points.encode(from, to), Base64.NO_WRAP));
+        summary.setEndTime(System.currentTimeMillis());
+        for (Map.Entry<String, Object> field : summary.toValue().entrySet()) {
+            // Only the first chunk knows when recording started, a resumed path keeps it
+            if (chunkIndex > 0 && PathSummary.KEY_START_TIME.equals(field.getKey())) continue;
+            update.put(PathSummary.BRANCH + "/" + pathId + "/" + field.getKey(), field.getValue());
+        }
+        dataStore.updateChildren(update, (error, permanent) -> {
+            if (error == null) {
+                Log.d(TAG, "Path chunk " + chunkKey + " saved successfully");
+            } else {
+                Log.e(TAG, "Failed to save path chunk " + chunkKey + ": " + error);
+            }
+        });
+
+        flushedCount = to;
+        chunkIndex++;
+        lastFlushTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Finds the index of the collected point closest to the given point within a radius,
+     * ignoring points recorded on another floor.
+     * Points added since the last call are indexed first, so appending stays allocation free.
+     * Must always be called from the same thread.
+     *
+     * @param target the point to search around
+     * @param thresholdMeters search radius in meters
+     * @return index of the closest point or -1 if no point is within the radius
+     */
+    public int findClosestPointIndex(Point target, double thresholdMeters) {
+        PointsView points = getPoints();
+        for (; indexedCount < points.size(); indexedCount++) {
+            pointIndex.insert(indexedCount, points.getX(indexedCount), points.getY(indexedCount),
+                    points.getZ(indexedCount));
+        }
+        return pointIndex.nearest(target.x, target.y, target.z, thresholdMeters,
+                FloorModel.SAME_FLOOR_TOLERANCE_METERS);
+    }
+
+    /**
+     * Returns the points that make up this path. The view shares the path storage without copying
+     * and always shows the points present when it was created, even while new points are added.
      *
      * @return an immutable view of the points in this path
      */
-    public List<Point> getPoints() {
-        return points;
+    public PointsView getPoints() {
+        int count = size;
+        return new PointsView(xs, ys, zs, count);
+    }
+
+    /**
+     * Immutable, zero-copy view over a prefix of the coordinate columns of a path.
+     * Primitive getters avoid allocation; {@link #get(int)} creates a new Point for list access.
+     */
+    public static final class PointsView extends AbstractList<Point> {
+        /** Latitude column shared with the path */
+        private final double[] xs;
+
+        /** Longitude column shared with the path */
+        private final double[] ys;
+
+        /** Altitude column shared with the path */
+        private final double[] zs;
+
+        /** Number of points visible through this view */
+        private final int size;
+
+        /**
+         * Creates a view over the first {@code size} entries of the given columns.
+         *
+         * @param xs latitude column
+         * @param ys longitude column
+         * @param zs altitude column
+         * @param size number of visible points
+         */
+        PointsView(double[] xs, double[] ys, double[] zs, int size) {
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+            this.size = size;
+        }
+
+        /**
+         * Returns the x-coordinate (latitude) of a point.
+         *
+         * @param index index of the point
+         * @return the x-coordinate
+         */
+        public double getX(int index) {
+            checkIndex(index);
+            return xs[index];
+        }
+
+        /**
+         * Returns the y-coordinate (longitude) of a point.
+         *
+         * @param index index of the point
+         * @return the y-coordinate
+         */
+        public double getY(int index) {
+            checkIndex(index);
+            return ys[index];
+        }
+
+        /**
+         * Returns the z-coordinate (altitude) of a point.
+         *
+         * @param index index of the point
+         * @return the z-coordinate
+         */
+        public double getZ(int index) {
+            checkIndex(index);
+            return zs[index];
+        }
+
+        /**
+         * Encodes a range of points with {@link PathCodec}.
+         *
+         * @param from index of the first point, inclusive
+         * @param to index of the last point, exclusive
+         * @return the encoded bytes
+         */
+        public byte[] encode(int from, int to) {
+            if (from < 0 || to > size || from > to) {
+                throw new IndexOutOfBoundsException("Range " + from + ".." + to + " of " + size);
+            }
+            return PathCodec.encode(xs, ys, zs, from, to);
+        }
+
+        @Override
+        public Point get(int index) {
+            checkIndex(index);
+            return new Point(xs[index], ys[index], zs[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Ensures an index lies inside this view.
+         *
+         * @param index the index to check
+         */
+        private void checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + size);
+            }
+        }
     }
 }
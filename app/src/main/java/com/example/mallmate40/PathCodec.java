@@ -0,0 +1,293 @@
+package com.example.mallmate40;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding for recorded paths. Latitude and longitude are stored as fixed-point
+ * integers in units of 1e-7 degrees (about 1 cm) and altitude in centimeters. Each point is stored
+ * as the difference from the previous point, zig-zag encoded and written as a variable-length
+ * integer, so a typical 1 Hz sample takes 4 to 6 bytes instead of three JSON doubles.
+ *
+ * <p>Layout: one format version byte, the point count as a varint, then three varints per point:
+ * the zig-zag latitude and longitude deltas, and the zig-zag altitude delta plus one, where 0
+ * marks a point without an altitude. An unknown altitude is decoded as NaN and does not change
+ * the altitude the next delta is taken from. Version 1 data, written before altitudes could be
+ * unknown, stores the altitude delta without the offset and is still decoded.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public final class PathCodec {
+
+    /** Version byte written at the start of every encoded path */
+    public static final int FORMAT_VERSION = 2;
+
+    /** Version of paths written before unknown altitudes were encoded */
+    private static final int FORMAT_VERSION_WITHOUT_UNKNOWN_ALTITUDE = 1;
+
+    /** Altitude varint marking a point without an altitude */
+    private static final long UNKNOWN_ALTITUDE = 0;
+
+    /** Scale factor between degrees and the fixed-point E7 representation */
+    private static final double E7 = 1e7;
+
+    /** Scale factor between meters and the fixed-point centimeter representation */
+    private static final double CENTIMETERS = 100.0;
+
+    /**
+     * Receives decoded points one at a time, so a path can be read without allocating a
+     * {@link Point} per sample.
+     */
+    public interface PointConsumer {
+        /**
+         * Called for every decoded point, in path order.
+         *
+         * @param lat latitude in degrees
+         * @param lng longitude in degrees
+         * @param alt altitude in meters, or NaN if unknown
+         */
+        void accept(double lat, double lng, double alt);
+    }
+
+    /**
+     * Utility class - not meant to be instantiated.
+     */
+    private PathCodec() {}
+
+    /**
+     * Encodes a list of points.
+     *
+     * @param points the points to encode, using x as latitude, y as longitude and z as altitude
+     * @return the encoded bytes
+     */
+    public static byte[] encode(List<Point> points) {
+        int count = points.size();
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double[] zs = new double[count];
+        for (int i = 0; i < count; i++) {
+            Point point = points.get(i);
+            xs[i] = point.x;
+            ys[i] = point.y;
+            zs[i] = point.z;
+        }
+        return encode(xs, ys, zs, 0, count);
+    }
+
+    /**
+     * Encodes a range of points stored in coordinate columns.
+     *
+     * @param xs latitude of every point
+     * @param ys longitude of every point
+     * @param zs altitude of every point, NaN where unknown
+     * @param from index of the first point to encode, inclusive
+     * @param to index of the last point to encode, exclusive
+     * @return the encoded bytes
+     */
+    public static byte[] encode(double[] xs, double[] ys, double[] zs, int from, int to) {
+        int count = to - from;
+        // Worst case is 10 bytes per varint, but real paths need far less
+        ByteWriter out = new ByteWriter(8 + count * 8);
+        out.writeByte(FORMAT_VERSION);
+        out.writeVarint(count);
+
+        long prevLat = 0;
+        long prevLng = 0;
+        long prevAlt = 0;
+        for (int i = from; i < to; i++) {
+            long lat = Math.round(xs[i] * E7);
+            long lng = Math.round(ys[i] * E7);
+            out.writeVarint(zigZag(lat - prevLat));
+            out.writeVarint(zigZag(lng - prevLng));
+            prevLat = lat;
+            prevLng = lng;
+            // Math.round would silently turn an unknown altitude into 0
+            if (Double.isNaN(zs[i])) {
+                out.writeVarint(UNKNOWN_ALTITUDE);
+            } else {
+                long alt = Math.round(zs[i] * CENTIMETERS);
+                out.writeVarint(zigZag(alt - prevAlt) + 1);
+                prevAlt = alt;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes bytes produced by {@link #encode(List)}.
+     *
+     * @param data the encoded bytes
+     * @return the decoded points in their original order
+     * @throws IllegalArgumentException if the data is truncated or uses an unknown format version
+     */
+    public static List<Point> decode(byte[] data) {
+        List<Point> points = new ArrayList<>();
+        decode(data, (lat, lng, alt) -> points.add(new Point(lat, lng, alt)));
+        return points;
+    }
+
+    /**
+     * Decodes bytes produced by {@link #encode(List)}, passing every point to a consumer
+     * instead of building a list.
+     *
+     * @param data the encoded bytes
+     * @param consumer receives the points in their original order
+     * @return the number of points decoded
+     * @throws IllegalArgumentException if the data is truncated or uses an unknown format version
+     */
+    public static int decode(byte[] data, PointConsumer consumer) {
+        ByteReader in = new ByteReader(data);
+        int version = in.readByte();
+        if (version != FORMAT_VERSION && version != FORMAT_VERSION_WITHOUT_UNKNOWN_ALTITUDE) {
+            throw new IllegalArgumentException("Unsupported path format version: " + version);
+        }
+        int count = (int) in.readVarint();
+
+        long lat = 0;
+        long lng = 0;
+        long alt = 0;
+        for (int i = 0; i < count; i++) {
+            lat += unZigZag(in.readVarint());
+            lng += unZigZag(in.readVarint());
+            if (version == FORMAT_VERSION_WITHOUT_UNKNOWN_ALTITUDE) {
+                alt += unZigZag(in.readVarint());
+                consumer.accept(lat / E7, lng / E7, alt / CENTIMETERS);
+                continue;
+            }
+            long altitudeValue = in.readVarint();
+            if (altitudeValue == UNKNOWN_ALTITUDE) {
+                consumer.accept(lat / E7, lng / E7, Double.NaN);
+            } else {
+                alt += unZigZag(altitudeValue - 1);
+                consumer.accept(lat / E7, lng / E7, alt / CENTIMETERS);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Maps a signed value to an unsigned one so that small negative numbers stay small.
+     *
+     * @param value the signed value
+     * @return the zig-zag encoded value
+     */
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverses {@link #zigZag(long)}.
+     *
+     * @param value the zig-zag encoded value
+     * @return the original signed value
+     */
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Growable byte buffer with varint support.
+     */
+    private static final class ByteWriter {
+        /** Buffer holding the written bytes */
+        private byte[] buffer;
+
+        /** Number of bytes written */
+        private int size = 0;
+
+        /**
+         * Creates a writer with the given initial capacity.
+         *
+         * @param capacity initial buffer size in bytes
+         */
+        ByteWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        /**
+         * Writes a single byte.
+         *
+         * @param value the byte to write
+         */
+        void writeByte(int value) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        /**
+         * Writes an unsigned value using 7 bits per byte, lowest bits first.
+         *
+         * @param value the value to write, treated as unsigned
+         */
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        /**
+         * Returns a copy of the written bytes.
+         *
+         * @return the written bytes
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    /**
+     * Sequential reader over an encoded byte array.
+     */
+    private static final class ByteReader {
+        /** The bytes being read */
+        private final byte[] data;
+
+        /** Position of the next byte to read */
+        private int position = 0;
+
+        /**
+         * Creates a reader over the given bytes.
+         *
+         * @param data the bytes to read
+         */
+        ByteReader(byte[] data) {
+            this.data = data;
+        }
+
+        /**
+         * Reads a single unsigned byte.
+         *
+         * @return the byte value between 0 and 255
+         */
+        int readByte() {
+            if (position >= data.length) {
+                throw new IllegalArgumentException("Encoded path is truncated");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        /**
+         * Reads a value written by {@link ByteWriter#writeVarint(long)}.
+         *
+         * @return the value, treated as unsigned
+         */
+        long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in encoded path");
+        }
+    }
+}
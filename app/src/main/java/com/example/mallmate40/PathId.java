@@ -0,0 +1,188 @@
+package com.example.mallmate40;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates the database keys of recorded paths. A key is 26 characters of Crockford base-32,
+ * like a ULID: 10 characters of the time in milliseconds, 6 characters identifying the device
+ * and 10 characters of randomness. Keys sort by the time recording started, and two devices, or
+ * two sessions on the same device, never produce the same key, so mapping devices can upload
+ * at the same time without overwriting each other's paths.
+ *
+ * <p>Within the same millisecond the random part is incremented instead of drawn again, so keys
+ * generated by one process are strictly increasing.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public final class PathId {
+
+    /** Number of characters of a key */
+    public static final int LENGTH = 26;
+
+    /** Characters of the Crockford base-32 alphabet, indexed by their 5-bit value */
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    /** Number of characters holding the time */
+    private static final int TIME_CHARS = 10;
+
+    /** Number of characters identifying the device */
+    private static final int DEVICE_CHARS = 6;
+
+    /** Number of characters holding the random part */
+    private static final int RANDOM_CHARS = 10;
+
+    /** Name of the preferences file holding the device identifier */
+    private static final String PREFS_NAME = "mallmate_device";
+
+    /** Preferences key of the device identifier */
+    private static final String KEY_DEVICE_ID = "device_id";
+
+    /** Source of the random parts */
+    private static final Random RANDOM = new SecureRandom();
+
+    /** Time in milliseconds of the last generated key */
+    private static long lastTime = -1;
+
+    /** Random part of the last generated key */
+    private static long lastRandom;
+
+    /**
+     * Not instantiable.
+     */
+    private PathId() {
+    }
+
+    /**
+     * Returns the identifier of this installation, creating and storing it on first use.
+     *
+     * @param context any context, used to reach the preferences
+     * @return the device identifier
+     */
+    public static synchronized String getDeviceId(Context context) {
+        SharedPreferences preferences = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String deviceId = preferences.getString(KEY_DEVICE_ID, null);
+        if (deviceId == null) {
+            deviceId = UUID.randomUUID().toString();
+            preferences.edit().putString(KEY_DEVICE_ID, deviceId).apply();
+        }
+        return deviceId;
+    }
+
+    /**
+     * Generates a new key for a path recorded on a device.
+     *
+     * @param deviceId identifier of the device, see {@link #getDeviceId(Context)}
+     * @return a key of {@link #LENGTH} characters
+     */
+    public static String generate(String deviceId) {
+        return generate(deviceId, System.currentTimeMillis(), RANDOM);
+    }
+
+    /**
+     * Generates a new key for a path recorded on a device at a given time.
+     *
+     * @param deviceId identifier of the device
+     * @param timeMillis time recording started, in milliseconds since the epoch
+     * @param random source of the random part
+     * @return a key of {@link #LENGTH} characters
+     */
+    static synchronized String generate(String deviceId, long timeMillis, Random random) {
+        long randomPart;
+        if (timeMillis == lastTime) {
+            // Same millisecond, keep the keys of this process increasing
+            randomPart = (lastRandom + 1) & mask(RANDOM_CHARS);
+        } else {
+            randomPart = random.nextLong() & mask(RANDOM_CHARS);
+        }
+        lastTime = timeMillis;
+        lastRandom = randomPart;
+
+        char[] key = new char[LENGTH];
+        write(key, 0, TIME_CHARS, timeMillis);
+        write(key, TIME_CHARS, DEVICE_CHARS, deviceId.hashCode());
+        write(key, TIME_CHARS + DEVICE_CHARS, RANDOM_CHARS, randomPart);
+        return new String(key);
+    }
+
+    /**
+     * Returns the time encoded in a key.
+     *
+     * @param pathId a key generated by this class
+     * @return time in milliseconds, or -1 if the key is not in this format, such as the
+     *         date based keys of older paths
+     */
+    public static long getTime(String pathId) {
+        if (pathId.length() != LENGTH) {
+            return -1;
+        }
+        long time = 0;
+        for (int i = 0; i < TIME_CHARS; i++) {
+            int value = indexOf(pathId.charAt(i));
+            if (value < 0) return -1;
+            time = (time << 5) | value;
+        }
+        return time;
+    }
+
+    /**
+     * Returns whether a key was generated on a device.
+     *
+     * @param pathId the key of a path
+     * @param deviceId identifier of the device, see {@link #getDeviceId(Context)}
+     * @return true if the key is in this format and its device characters match the device
+     */
+    public static boolean isFromDevice(String pathId, String deviceId) {
+        if (pathId.length() != LENGTH) {
+            return false;
+        }
+        char[] device = new char[DEVICE_CHARS];
+        write(device, 0, DEVICE_CHARS, deviceId.hashCode());
+        return pathId.regionMatches(TIME_CHARS, new String(device), 0, DEVICE_CHARS);
+    }
+
+    /**
+     * Writes the lowest bits of a value as base-32 characters, most significant first.
+     *
+     * @param key the characters to write into
+     * @param offset index of the first character
+     * @param count number of characters, 5 bits each
+     * @param value the value to write
+     */
+    private static void write(char[] key, int offset, int count, long value) {
+        for (int i = count - 1; i >= 0; i--) {
+            key[offset + i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+    }
+
+    /**
+     * Returns a mask of the bits held by a number of characters.
+     *
+     * @param count number of characters
+     * @return mask of the lowest {@code 5 * count} bits
+     */
+    private static long mask(int count) {
+        return (1L << (5 * count)) - 1;
+    }
+
+    /**
+     * Returns the 5-bit value of a base-32 character.
+     *
+     * @param c the character
+     * @return its index in the alphabet, or -1 if it is outside the alphabet
+     */
+    private static int indexOf(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.mallmate40;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Douglas-Peucker simplification of recorded paths. Removes points that deviate from the
+ * simplified line by less than a tolerance in meters, keeping the overall shape of the path
+ * with far fewer points.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public final class PathSimplifier {
+
+    /**
+     * Utility class - not meant to be instantiated.
+     */
+    private PathSimplifier() {}
+
+    /**
+     * Simplifies a path with the Douglas-Peucker algorithm. The first and last points are always kept.
+     *
+     * @param points the points to simplify, using x as latitude and y as longitude
+     * @param toleranceMeters maximum distance in meters between a removed point and the simplified line
+     * @return for every input point, whether it is kept in the simplified path
+     */
+    public static boolean[] simplify(List<Point> points, double toleranceMeters) {
+        int count = points.size();
+        boolean[] keep = new boolean[count];
+        if (count <= 2) {
+            for (int i = 0; i < count; i++) keep[i] = true;
+            return keep;
+        }
+
+        // Project to a local metric frame once so the inner loop needs no trigonometry
+        LocalFrame frame = new LocalFrame(points.get(0).x, points.get(0).y);
+        double[] east = new double[count];
+        double[] north = new double[count];
+        for (int i = 0; i < count; i++) {
+            Point p = points.get(i);
+            east[i] = frame.toEast(p.y);
+            north[i] = frame.toNorth(p.x);
+        }
+
+        double toleranceSquared = toleranceMeters * toleranceMeters;
+        keep[0] = true;
+        keep[count - 1] = true;
+
+        // Explicit stack of segments instead of recursion, long paths would overflow the call stack
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            int farthest = -1;
+            double maxDistance = toleranceSquared;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSquared(east[i], north[i],
+                        east[first], north[first], east[last], north[last]);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    farthest = i;
+                }
+            }
+
+            if (farthest != -1) {
+                keep[farthest] = true;
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Returns the squared distance between a point and a line segment in a planar frame.
+     *
+     * @param px east coordinate of the point
+     * @param py north coordinate of the point
+     * @param ax east coordinate of the segment start
+     * @param ay north coordinate of the segment start
+     * @param bx east coordinate of the segment end
+     * @param by north coordinate of the segment end
+     * @return squared distance in square meters
+     */
+    static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double cx = ax + t * dx - px;
+        double cy = ay + t * dy - py;
+        return cx * cx + cy * cy;
+    }
+}
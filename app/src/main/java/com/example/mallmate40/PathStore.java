@@ -0,0 +1,855 @@
+package com.example.mallmate40;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local on-device store of the recorded paths around the user. Readers ask for the area around
+ * a position with {@link #loadArea(Point)}, and the store loads the {@link GeoHash} tiles of the
+ * "path_tiles" index covering it, then every path listed in those tiles from the "paths" branch
+ * of the offline-first {@link DataStore}. The amount read grows with the area visited rather
+ * than with the whole recording history. Readers get the merged navigation graph from memory
+ * instead of downloading the paths for every navigation request. A graph request does not wait
+ * long for tiles still loading; it gets the graph of the paths already on the device, and tiles
+ * arriving later update the graph of later requests. The connectors between floors
+ * in the "connectors" branch are part of the graph as well.
+ *
+ * <p>Before a listed path is downloaded its {@link PathSummary} is read from the
+ * "path_summaries" branch, and the path is skipped unless its bounding box reaches the area
+ * around one of the requested positions. Paths are held as {@link EncodedPath}s, a few bytes per
+ * point, and only the chunks that changed are read again when a recording grows. A path is
+ * decoded only while the graph is built, and only if it reaches one of the requested areas.</p>
+ *
+ * <p>Paths recorded before the tile index existed are indexed once: if the "meta" branch does
+ * not mark the index as built, the whole "paths" branch is read and every path is added to the
+ * index and given a summary. The branch is let go once its initial data has been indexed.</p>
+ *
+ * <p>All public methods must be called on the main thread. Graph building runs on a background thread.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class PathStore {
+
+    /** Tag used for logging purposes */
+    private static final String TAG = "PathStore";
+
+    /** Name of the branch holding the recorded paths */
+    public static final String BRANCH = "paths";
+
+    /** Name of the branch holding the tile index, {@code path_tiles/<geohash>/<pathId>} */
+    public static final String TILES_BRANCH = "path_tiles";
+
+    /** Name of the branch holding database format markers */
+    private static final String META_BRANCH = "meta";
+
+    /** Key in the meta branch holding the version of the tile index */
+    private static final String KEY_TILE_INDEX_VERSION = "path_tiles_version";
+
+    /** Current version of the tile index, 2 added the path summaries */
+    private static final long TILE_INDEX_VERSION = 2;
+
+    /** Distance in meters around a requested position within which paths are loaded */
+    public static final double LOAD_RADIUS_METERS = 500.0;
+
+    /** Longest time in milliseconds a graph request waits for requested areas before the graph is built without them */
+    private static final long MAX_LOAD_WAIT_MS = 1000;
+
+    /** The single shared store instance */
+    private static PathStore instance;
+
+    /** Recorded paths keyed by their database key, in key order */
+    private final Map<String, EncodedPath> paths = new LinkedHashMap<>();
+
+    /** Tiles whose index is loaded or loading */
+    private final Set<String> loadedTiles = new HashSet<>();
+
+    /** Southern, western, northern and eastern edges of the area around every requested position */
+    private final List<double[]> loadedAreas = new ArrayList<>();
+
+    /** Paths that are loaded or loading */
+    private final Set<String> loadedPaths = new HashSet<>();
+
+    /** Paths listed in a loaded tile whose summary is loaded or loading */
+    private final Set<String> listedPaths = new HashSet<>();
+
+    /** Summaries of the listed paths keyed by path, paths without a summary are left out */
+    private final Map<String, PathSummary> summaries = new HashMap<>();
+
+    /** Connectors between floors keyed by their database key */
+    private final Map<String, VerticalConnector> connectors = new LinkedHashMap<>();
+
+    /** Callbacks waiting for the navigation graph */
+    private final List<GraphCallback> pendingCallbacks = new ArrayList<>();
+
+    /** Listeners notified on the main thread whenever a path is added, changed or removed */
+    private final List<ChangeListener> changeListeners = new ArrayList<>();
+
+    /** Background thread for graph building */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /** Handler for posting results back to the main thread */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Builds the graph for waiting callbacks from what has loaded when loading takes too long */
+    private final Runnable loadWaitTask = this::onLoadWaitExpired;
+
+    /** Data store the paths are read from */
+    private final DataStore dataStore;
+
+    /** Navigation graph built from the current paths, or null if the paths changed since it was built */
+    private NavigationGraph graph;
+
+    /** Incremented every time a path is added, changed or removed */
+    private int dataVersion = 0;
+
+    /** Flag indicating whether a graph is currently being built */
+    private boolean graphBuilding = false;
+
+    /** Number of tiles, paths and branches whose initial data has not arrived yet */
+    private int outstandingLoads = 0;
+
+    /** Flag indicating whether the meta branch marks the tile index as built */
+    private boolean tileIndexBuilt = false;
+
+    /**
+     * Interface for receiving the navigation graph once it is available.
+     */
+    public interface GraphCallback {
+        /**
+         * Called on the main thread with the navigation graph built from all known paths.
+         *
+         * @param graph the navigation graph
+         */
+        void onGraphReady(NavigationGraph graph);
+    }
+
+    /**
+     * Interface for being notified of changes to the paths.
+     */
+    public interface ChangeListener {
+        /**
+         * Called on the main thread after paths or connectors were added, changed or removed.
+         *
+         * @param pathId the key of the only path that changed, or null if connectors or several
+         *               paths changed
+         */
+        void onPathsChanged(String pathId);
+    }
+
+    /**
+     * Returns the shared path store, creating it and starting synchronization on first use.
+     *
+     * @param context any context, used to reach the data store
+     * @return the path store
+     */
+    public static synchronized PathStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new PathStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Creates the store and starts listening for connectors and the tile index version.
+     *
+     * @param context the application context
+     */
+    private PathStore(Context context) {
+        this.dataStore = OfflineFirstDataStore.getInstance(context);
+        dataStore.listen(VerticalConnector.BRANCH, new LoadingListener() {
+            @Override
+            public void onChildChanged(String key, Object value) {
+                VerticalConnector connector = VerticalConnector.fromValue(value);
+                if (connector == null) {
+                    Log.e(TAG, "Invalid connector: " + key);
+                    return;
+                }
+                connectors.put(key, connector);
+                onPathsChanged(null);
+            }
+
+            @Override
+            public void onChildRemoved(String key) {
+                if (connectors.remove(key) != null) {
+                    onPathsChanged(null);
+                }
+            }
+
+            @Override
+            public void onInitialDataLoaded() {
+                Log.d(TAG, "Initial connector sync complete, " + connectors.size() + " connectors");
+                finish();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Error loading connectors: " + error);
+                finish();
+            }
+        });
+
+        dataStore.listen(META_BRANCH, new LoadingListener() {
+            @Override
+            public void onChildChanged(String key, Object value) {
+                if (KEY_TILE_INDEX_VERSION.equals(key) && value instanceof Long
+                        && (Long) value >= TILE_INDEX_VERSION) {
+                    tileIndexBuilt = true;
+                }
+            }
+
+            @Override
+            public void onChildRemoved(String key) {
+                // The index is never dropped once built
+            }
+
+            @Override
+            public void onInitialDataLoaded() {
+                if (!tileIndexBuilt) {
+                    buildTileIndex();
+                }
+                finish();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Error loading meta: " + error);
+                finish();
+            }
+        });
+    }
+
+    /**
+     * Loads the paths within {@link #LOAD_RADIUS_METERS} of a position, unless they are already
+     * loaded. The index of the tile around the position and its neighbouring tiles is read, and
+     * the listed paths whose summary reaches the area are downloaded. The navigation graph is
+     * served once everything requested has arrived.
+     *
+     * @param center the position to load paths around
+     * @return true if new tiles or paths were requested
+     */
+    public boolean loadArea(Point center) {
+        double[] area = areaAround(center);
+        for (double[] loaded : loadedAreas) {
+            if (loaded[0] <= area[0] && loaded[1] <= area[1] && loaded[2] >= area[2] && loaded[3] >= area[3]) {
+                return false;
+            }
+        }
+        loadedAreas.add(area);
+
+        boolean requested = false;
+        // Paths already listed by a loaded tile may reach the new area
+        for (Map.Entry<String, PathSummary> entry : summaries.entrySet()) {
+            if (!loadedPaths.contains(entry.getKey()) && isInLoadedArea(entry.getValue())) {
+                listenToPath(entry.getKey());
+                requested = true;
+            }
+        }
+        // Neighbouring tiles are at least a tile wide, which covers the load radius
+        for (String tile : GeoHash.tilesAround(center.x, center.y, GeoHash.TILE_PRECISION)) {
+            if (loadedTiles.add(tile)) {
+                listenToTile(tile);
+                requested = true;
+            }
+        }
+        return requested;
+    }
+
+    /**
+     * Returns the navigation graph built from all loaded paths. The graph is served from memory
+     * when it is up to date, otherwise it is rebuilt in the background once the requested
+     * areas have loaded, or after {@link #MAX_LOAD_WAIT_MS} from the paths already on the
+     * device. Paths arriving later change the graph served to the next request.
+     *
+     * @param callback receives the graph on the main thread
+     */
+    public void getNavigationGraph(GraphCallback callback) {
+        if (graph != null && outstandingLoads == 0) {
+            callback.onGraphReady(graph);
+            return;
+        }
+        pendingCallbacks.add(callback);
+        if (outstandingLoads == 0) {
+            rebuildGraph();
+        } else if (pendingCallbacks.size() == 1) {
+            mainHandler.postDelayed(loadWaitTask, MAX_LOAD_WAIT_MS);
+        }
+    }
+
+    /**
+     * Registers a listener that is called on the main thread whenever the paths change.
+     *
+     * @param listener the listener to add
+     */
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Returns whether a position lies within an area requested with {@link #loadArea(Point)}.
+     *
+     * @param position the position
+     * @return true if the paths around the position are loaded or loading
+     */
+    public boolean isInLoadedArea(Point position) {
+        for (double[] area : loadedAreas) {
+            if (position.x >= area[0] && position.y >= area[1] && position.x <= area[2] && position.y <= area[3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of paths currently held by the store.
+     *
+     * @return the path count
+     */
+    public int getPathCount() {
+        return paths.size();
+    }
+
+    /**
+     * Starts listening to the paths listed in a tile of the index.
+     *
+     * @param tile geohash of the tile
+     */
+    private void listenToTile(String tile) {
+        dataStore.listen(TILES_BRANCH + "/" + tile, new LoadingListener() {
+            @Override
+            public void onChildChanged(String pathId, Object value) {
+                listenToSummary(pathId);
+            }
+
+            @Override
+            public void onChildRemoved(String pathId) {
+                // A path may lie in several tiles, removals arrive through the path itself
+            }
+
+            @Override
+            public void onInitialDataLoaded() {
+                finish();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Error loading tile " + tile + ": " + error);
+                finish();
+            }
+        });
+    }
+
+    /**
+     * Starts listening to the summary of a listed path, and downloads the path once its summary
+     * reaches a loaded area. Paths recorded before summaries existed are downloaded right away.
+     *
+     * @param pathId the key of the path
+     */
+    private void listenToSummary(String pathId) {
+        if (!listedPaths.add(pathId)) return;
+        final Map<String, Object> fields = new TreeMap<>();
+        dataStore.listen(PathSummary.BRANCH + "/" + pathId, new LoadingListener() {
+            @Override
+            public void onChildChanged(String key, Object value) {
+                fields.put(key, value);
+                if (isFinished()) {
+                    onSummaryChanged(pathId, fields);
+                }
+            }
+
+            @Override
+            public void onChildRemoved(String key) {
+                fields.remove(key);
+            }
+
+            @Override
+            public void onInitialDataLoaded() {
+                onSummaryChanged(pathId, fields);
+                finish();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Error loading summary of " + pathId + ": " + error);
+                listenToPath(pathId);
+                finish();
+            }
+        });
+    }
+
+    /**
+     * Stores the new summary of a listed path and downloads the path if it reaches a loaded area.
+     *
+     * @param pathId the key of the path
+     * @param fields the fields of the summary
+     */
+    private void onSummaryChanged(String pathId, Map<String, Object> fields) {
+        PathSummary summary = PathSummary.fromValue(fields);
+        if (summary == null) {
+            // No summary, the path can only be judged by its points
+            listenToPath(pathId);
+            return;
+        }
+        summaries.put(pathId, summary);
+        if (isInLoadedArea(summary)) {
+            listenToPath(pathId);
+        }
+    }
+
+    /**
+     * Checks whether a summarized path reaches the area around a requested position.
+     *
+     * @param summary the summary of the path
+     * @return true if the bounding box of the path overlaps a loaded area
+     */
+    private boolean isInLoadedArea(PathSummary summary) {
+        for (double[] area : loadedAreas) {
+            if (summary.intersects(area[0], area[1], area[2], area[3])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the area within {@link #LOAD_RADIUS_METERS} of a position.
+     *
+     * @param center the position
+     * @return southern, western, northern and eastern edges in degrees
+     */
+    private static double[] areaAround(Point center) {
+        double dLat = LOAD_RADIUS_METERS / GeoMath.METERS_PER_DEGREE;
+        double dLng = LOAD_RADIUS_METERS / GeoMath.metersPerDegreeLongitude(center.x);
+        return new double[]{center.x - dLat, center.y - dLng, center.x + dLat, center.y + dLng};
+    }
+
+    /**
+     * Starts listening to a single path, which is read again whenever one of its children
+     * changes. Chunks that did not change are not decoded again.
+     *
+     * @param pathId the key of the path
+     */
+    private void listenToPath(String pathId) {
+        if (!loadedPaths.add(pathId)) return;
+        final Map<String, Object> children = new TreeMap<>();
+        final PathReader reader = new PathReader();
+        dataStore.listen(BRANCH + "/" + pathId, new LoadingListener() {
+            @Override
+            public void onChildChanged(String key, Object value) {
+                children.put(key, value);
+                if (isFinished()) {
+                    putPath(pathId, reader.read(children));
+                }
+            }
+
+            @Override
+            public void onChildRemoved(String key) {
+                children.remove(key);
+                if (!isFinished()) return;
+                if (children.isEmpty()) {
+                    if (paths.remove(pathId) != null) {
+                        onPathsChanged(pathId);
+                    }
+                } else {
+                    putPath(pathId, reader.read(children));
+                }
+            }
+
+            @Override
+            public void onInitialDataLoaded() {
+                if (!children.isEmpty()) {
+                    putPath(pathId, reader.read(children));
+                }
+                finish();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Error loading path " + pathId + ": " + error);
+                finish();
+            }
+        });
+    }
+
+    /**
+     * Adds every recorded path to the tile index and writes its summary. Reads the whole
+     * "paths" branch, so it only runs while the meta branch does not mark the index as built,
+     * and stops listening to the branch once its initial data has been indexed. Paths outside
+     * the loaded areas are dropped from memory again at that point.
+     */
+    private void buildTileIndex() {
+        Log.d(TAG, "Tile index not built, indexing every path");
+        final Set<String> indexed = new HashSet<>();
+        dataStore.listen(BRANCH, new LoadingListener() {
+            @Override
+            public void onChildChanged(String key, Object value) {
+                EncodedPath path = parsePath(value);
+                putPath(key, path);
+                if (!indexed.add(key)) return;
+                final Map<String, Object> update = new LinkedHashMap<>();
+                final PathSummary summary = new PathSummary();
+                path.forEachPoint((lat, lng, alt) -> summary.addPoint(lat, lng, alt));
+                for (String tile : summary.getTiles()) {
+                    update.put(TILES_BRANCH + "/" + tile + "/" + key, true);
+                }
+                // Field by field, so the recording times of paths that have them are kept
+                for (Map.Entry<String, Object> field : summary.toValue().entrySet()) {
+                    update.put(PathSummary.BRANCH + "/" + key + "/" + field.getKey(), field.getValue());
+                }
+                if (!update.isEmpty()) {
+                    dataStore.updateChildren(update, null);
+                }
+            }
+
+            @Override
+            public void onChildRemoved(String key) {
+                if (paths.remove(key) != null) {
+                    onPathsChanged(key);
+                }
+            }
+
+            @Override
+            public void onInitialDataLoaded() {
+                if (isFinished()) return;
+                Log.d(TAG, "Indexed " + indexed.size() + " paths into tiles");
+                dataStore.removeListener(BRANCH, this);
+                // Nothing indexed may mean the remote database was not reached, try again next start
+                if (!indexed.isEmpty()) {
+                    Map<String, Object> update = new LinkedHashMap<>();
+                    update.put(META_BRANCH + "/" + KEY_TILE_INDEX_VERSION, TILE_INDEX_VERSION);
+                    dataStore.updateChildren(update, null);
+                }
+                // Only the paths listened to one by one are kept up to date from now on
+                if (paths.keySet().retainAll(loadedPaths)) {
+                    onPathsChanged(null);
+                }
+                finish();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Error indexing paths: " + error);
+                dataStore.removeListener(BRANCH, this);
+                finish();
+            }
+        });
+    }
+
+    /**
+     * Stores a path, replacing any previous version.
+     *
+     * @param key the key of the path
+     * @param path the path read from the data store
+     */
+    private void putPath(String key, EncodedPath path) {
+        paths.put(key, path);
+        onPathsChanged(key);
+    }
+
+    /**
+     * Invalidates the navigation graph and notifies the listeners after a change.
+     *
+     * @param pathId the key of the only path that changed, or null if connectors or several paths changed
+     */
+    private void onPathsChanged(String pathId) {
+        dataVersion++;
+        graph = null;
+        if (!pendingCallbacks.isEmpty() && outstandingLoads == 0) {
+            rebuildGraph();
+        }
+        for (ChangeListener listener : changeListeners) {
+            listener.onPathsChanged(pathId);
+        }
+    }
+
+    /**
+     * Records that the initial data of a tile, path or branch has arrived, and builds the graph
+     * for any waiting callbacks once nothing is loading.
+     */
+    private void onLoadFinished() {
+        outstandingLoads--;
+        if (outstandingLoads == 0 && !pendingCallbacks.isEmpty()) {
+            rebuildGraph();
+        }
+    }
+
+    /**
+     * Builds the graph for the waiting callbacks from the paths loaded so far, since the
+     * remaining tiles and paths have not arrived in time.
+     */
+    private void onLoadWaitExpired() {
+        if (pendingCallbacks.isEmpty()) return;
+        Log.d(TAG, "Building the graph while " + outstandingLoads + " loads are outstanding");
+        if (graph != null) {
+            // Nothing arrived since the graph was built
+            List<GraphCallback> callbacks = new ArrayList<>(pendingCallbacks);
+            pendingCallbacks.clear();
+            for (GraphCallback callback : callbacks) {
+                callback.onGraphReady(graph);
+            }
+            return;
+        }
+        rebuildGraph();
+    }
+
+    /**
+     * Builds a new navigation graph from a copy of the current paths in the background.
+     * If the paths change while building, the finished graph is still delivered to the waiting
+     * callbacks but not kept for later requests.
+     */
+    private void rebuildGraph() {
+        if (graphBuilding) return;
+        graphBuilding = true;
+        final int version = dataVersion;
+        final List<EncodedPath> snapshot = new ArrayList<>(paths.values());
+        final List<double[]> areaSnapshot = new ArrayList<>(loadedAreas);
+        final List<VerticalConnector> connectorSnapshot = new ArrayList<>(connectors.values());
+        executor.execute(() -> {
+            long startTime = System.currentTimeMillis();
+            List<EncodedPath> candidates = selectCandidates(snapshot, areaSnapshot);
+            NavigationGraph built = NavigationGraph.buildFromEncoded(candidates, connectorSnapshot);
+            Log.d(TAG, "Navigation graph built with " + built.getNodeCount() + " nodes on "
+                    + built.getFloors().getFloorCount() + " floors from " + candidates.size() + " of "
+                    + snapshot.size() + " paths in " + (System.currentTimeMillis() - startTime) + " ms");
+
+            mainHandler.post(() -> {
+                graphBuilding = false;
+                mainHandler.removeCallbacks(loadWaitTask);
+                if (version == dataVersion) {
+                    graph = built;
+                }
+                List<GraphCallback> callbacks = new ArrayList<>(pendingCallbacks);
+                pendingCallbacks.clear();
+                for (GraphCallback callback : callbacks) {
+                    callback.onGraphReady(built);
+                }
+            });
+        });
+    }
+
+    /**
+     * Returns the paths whose bounding box reaches one of the given areas, without decoding any.
+     *
+     * @param candidates the paths to choose from
+     * @param areas southern, western, northern and eastern edges of every area
+     * @return the paths that may have points in an area
+     */
+    static List<EncodedPath> selectCandidates(List<EncodedPath> candidates, List<double[]> areas) {
+        List<EncodedPath> selected = new ArrayList<>();
+        for (EncodedPath path : candidates) {
+            for (double[] area : areas) {
+                if (path.intersects(area[0], area[1], area[2], area[3])) {
+                    selected.add(path);
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Reads a path value in any of its stored formats.
+     *
+     * @param value the value of a route from the data store
+     * @return the path, without any chunks whose data is corrupt
+     */
+    static EncodedPath parsePath(Object value) {
+        return new PathReader().read(value);
+    }
+
+    /**
+     * Extracts route points in numerical order from the database.
+     *
+     * @param path value of a route stored as point objects keyed by their index
+     * @return ordered list of route points
+     */
+    static List<Point> extractOrderedPoints(Map<?, ?> path) {
+        // Place every child at its index in one pass over the children, the points end at the first gap
+        Object[] values = new Object[path.size()];
+        for (Map.Entry<?, ?> entry : path.entrySet()) {
+            int index = parseIndex(entry.getKey());
+            if (index >= 0 && index < values.length) {
+                values[index] = entry.getValue();
+            }
+        }
+
+        List<Point> points = new ArrayList<>(values.length);
+        for (Object pointValue : values) {
+            if (pointValue == null) break;
+
+            Point point = Point.fromValue(pointValue);
+            if (point != null) {
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Parses the key of a point stored by its index.
+     *
+     * @param key the key of a child
+     * @return the index, or -1 if the key is not a plain non-negative number
+     */
+    private static int parseIndex(Object key) {
+        if (!(key instanceof String)) return -1;
+        String text = (String) key;
+        int length = text.length();
+        // Keys are written as String.valueOf(index), so leading zeros never name a point
+        if (length == 0 || length > 9 || (length > 1 && text.charAt(0) == '0')) return -1;
+        int index = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    /**
+     * Child listener whose initial data counts as a load of the store. The load finishes once,
+     * on the initial data or on an error, whichever comes first.
+     */
+    private abstract class LoadingListener implements DataStore.ChildListener {
+
+        /** Flag indicating whether the load has finished */
+        private boolean finished = false;
+
+        /**
+         * Creates the listener and counts its load as outstanding.
+         */
+        LoadingListener() {
+            outstandingLoads++;
+        }
+
+        /**
+         * Returns whether the initial data has arrived or loading failed.
+         *
+         * @return true once the load has finished
+         */
+        boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * Finishes the load unless it has already finished.
+         */
+        void finish() {
+            if (finished) return;
+            finished = true;
+            onLoadFinished();
+        }
+    }
+
+    /**
+     * Reads the value of one path into an {@link EncodedPath}. The reader remembers the chunks
+     * it has read, so reading the path again after a new chunk arrives only decodes that chunk.
+     */
+    static final class PathReader {
+
+        /** Encoded text of every chunk read last time, keyed by chunk key */
+        private Map<String, String> sources = new TreeMap<>();
+
+        /** Every chunk read last time, keyed by chunk key */
+        private Map<String, EncodedPath.Chunk> chunks = new TreeMap<>();
+
+        /**
+         * Reads a path value. Chunked paths are joined in chunk key order, paths written as a
+         * single encoded block are read as one chunk, and older paths stored as a list of point
+         * objects are encoded once.
+         *
+         * @param value the value of a route from the data store
+         * @return the path, without any chunks whose data is corrupt
+         */
+        EncodedPath read(Object value) {
+            Map<String, String> readSources = new TreeMap<>();
+            Map<String, EncodedPath.Chunk> readChunks = new TreeMap<>();
+            if (value instanceof Map) {
+                Map<?, ?> path = (Map<?, ?>) value;
+                Object chunksValue = path.get(Path.KEY_CHUNKS);
+                if (chunksValue instanceof Map) {
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) chunksValue).entrySet()) {
+                        readChunk(String.valueOf(entry.getKey()), entry.getValue(), readSources, readChunks);
+                    }
+                } else if (path.containsKey(Path.KEY_DATA)) {
+                    readChunk(Path.KEY_DATA, path, readSources, readChunks);
+                } else {
+                    sources = readSources;
+                    chunks = readChunks;
+                    return EncodedPath.fromPoints(extractOrderedPoints(path));
+                }
+            }
+            sources = readSources;
+            chunks = readChunks;
+            return new EncodedPath(new ArrayList<>(readChunks.values()));
+        }
+
+        /**
+         * Reads one chunk holding Base64 {@link PathCodec} data, reusing the chunk read last time
+         * if its data did not change.
+         *
+         * @param key key of the chunk
+         * @param value value of the chunk
+         * @param readSources receives the encoded text of the chunk
+         * @param readChunks receives the chunk
+         */
+        private void readChunk(String key, Object value, Map<String, String> readSources,
+                               Map<String, EncodedPath.Chunk> readChunks) {
+            Object encoded = value instanceof Map ? ((Map<?, ?>) value).get(Path.KEY_DATA) : null;
+            if (!(encoded instanceof String)) {
+                return;
+            }
+            String source = (String) encoded;
+            EncodedPath.Chunk chunk = source.equals(sources.get(key)) ? chunks.get(key) : null;
+            if (chunk == null) {
+                try {
+                    chunk = createChunk((Map<?, ?>) value, Base64.decode(source, Base64.NO_WRAP));
+                } catch (IllegalArgumentException e) {
+                    Log.e(TAG, "Corrupt path data at " + key + ": " + e.getMessage());
+                    return;
+                }
+            }
+            readSources.put(key, source);
+            readChunks.put(key, chunk);
+        }
+
+        /**
+         * Creates a chunk from its stored value. The point count and bounding box are taken from
+         * the chunk header when present, so the points are not decoded until they are needed.
+         *
+         * @param value value of the chunk
+         * @param data the decoded bytes of the chunk
+         * @return the chunk
+         */
+        private EncodedPath.Chunk createChunk(Map<?, ?> value, byte[] data) {
+            Object count = value.get(Path.KEY_COUNT);
+            Object minLat = value.get(Path.KEY_MIN_LAT);
+            Object minLng = value.get(Path.KEY_MIN_LNG);
+            Object maxLat = value.get(Path.KEY_MAX_LAT);
+            Object maxLng = value.get(Path.KEY_MAX_LNG);
+            if (count instanceof Number && minLat instanceof Number && minLng instanceof Number
+                    && maxLat instanceof Number && maxLng instanceof Number) {
+                return new EncodedPath.Chunk(data, ((Number) count).intValue(),
+                        ((Number) minLat).doubleValue(), ((Number) minLng).doubleValue(),
+                        ((Number) maxLat).doubleValue(), ((Number) maxLng).doubleValue());
+            }
+            // Chunks uploaded before the header was written are scanned on first use
+            return new EncodedPath.Chunk(data);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.mallmate40;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Small description of a recorded path stored under {@code path_summaries/<pathId>}: its bounding
+ * box, altitude range, length, point count, recording times and the {@link GeoHash} tiles it
+ * crosses. Readers check the summary before downloading a path, so paths far from the area they
+ * need are skipped without reading a single point.
+ *
+ * <p>The summary grows with every point added, and is written together with every chunk of
+ * the path.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class PathSummary {
+
+    /** Name of the branch holding the summaries */
+    public static final String BRANCH = "path_summaries";
+
+    /** Key of the time recording started, only written with the first chunk */
+    public static final String KEY_START_TIME = "startTime";
+
+    /** Key of the time of the last uploaded chunk */
+    private static final String KEY_END_TIME = "endTime";
+
+    /** Key of the number of points */
+    private static final String KEY_COUNT = "count";
+
+    /** Key of the length in meters */
+    private static final String KEY_LENGTH = "length";
+
+    /** Key of the southern edge of the bounding box */
+    private static final String KEY_MIN_LAT = "minLat";
+
+    /** Key of the western edge of the bounding box */
+    private static final String KEY_MIN_LNG = "minLng";
+
+    /** Key of the northern edge of the bounding box */
+    private static final String KEY_MAX_LAT = "maxLat";
+
+    /** Key of the eastern edge of the bounding box */
+    private static final String KEY_MAX_LNG = "maxLng";
+
+    /** Key of the lowest altitude */
+    private static final String KEY_MIN_ALT = "minAlt";
+
+    /** Key of the highest altitude */
+    private static final String KEY_MAX_ALT = "maxAlt";
+
+    /** Key of the tiles crossed by the path, stored as {@code tiles/<geohash>: true} */
+    private static final String KEY_TILES = "tiles";
+
+    /** Number of points */
+    private int pointCount = 0;
+
+    /** Length of the path in meters */
+    private double lengthMeters = 0;
+
+    /** Southern edge of the bounding box */
+    private double minLat = Double.POSITIVE_INFINITY;
+
+    /** Western edge of the bounding box */
+    private double minLng = Double.POSITIVE_INFINITY;
+
+    /** Northern edge of the bounding box */
+    private double maxLat = Double.NEGATIVE_INFINITY;
+
+    /** Eastern edge of the bounding box */
+    private double maxLng = Double.NEGATIVE_INFINITY;
+
+    /** Lowest known altitude, or NaN if no altitude is known */
+    private double minAlt = Double.NaN;
+
+    /** Highest known altitude, or NaN if no altitude is known */
+    private double maxAlt = Double.NaN;
+
+    /** Time in milliseconds recording started, or 0 if unknown */
+    private long startTime = 0;
+
+    /** Time in milliseconds of the last uploaded chunk, or 0 if unknown */
+    private long endTime = 0;
+
+    /** Tiles crossed by the path */
+    private final Set<String> tiles = new TreeSet<>();
+
+    /** Latitude of the last point added, used for the length */
+    private double lastLat;
+
+    /** Longitude of the last point added, used for the length */
+    private double lastLng;
+
+    /**
+     * Adds the next point of the path.
+     *
+     * @param lat latitude in degrees
+     * @param lng longitude in degrees
+     * @param alt altitude in meters, or NaN if unknown
+     * @return true if the point lies in a tile the path did not cross before
+     */
+    public boolean addPoint(double lat, double lng, double alt) {
+        if (pointCount > 0) {
+            lengthMeters += GeoMath.haversineDistanceMeters(lastLat, lastLng, lat, lng);
+        }
+        pointCount++;
+        lastLat = lat;
+        lastLng = lng;
+        minLat = Math.min(minLat, lat);
+        minLng = Math.min(minLng, lng);
+        maxLat = Math.max(maxLat, lat);
+        maxLng = Math.max(maxLng, lng);
+        if (!Double.isNaN(alt)) {
+            minAlt = Double.isNaN(minAlt) ? alt : Math.min(minAlt, alt);
+            maxAlt = Double.isNaN(maxAlt) ? alt : Math.max(maxAlt, alt);
+        }
+        return tiles.add(GeoHash.tileOf(lat, lng));
+    }
+
+    /**
+     * Sets the time recording started.
+     *
+     * @param startTime time in milliseconds
+     */
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Sets the time of the last uploaded chunk.
+     *
+     * @param endTime time in milliseconds
+     */
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    /**
+     * Returns the number of points.
+     *
+     * @return the point count
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Returns the length of the path.
+     *
+     * @return length in meters
+     */
+    public double getLengthMeters() {
+        return lengthMeters;
+    }
+
+    /**
+     * Returns the time recording started.
+     *
+     * @return time in milliseconds, or 0 if unknown
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the time of the last uploaded chunk.
+     *
+     * @return time in milliseconds, or 0 if unknown
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Returns the tiles crossed by the path.
+     *
+     * @return unmodifiable set of geohashes of {@link GeoHash#TILE_PRECISION} characters
+     */
+    public Set<String> getTiles() {
+        return Collections.unmodifiableSet(tiles);
+    }
+
+    /**
+     * Checks whether the bounding box of the path overlaps an area.
+     *
+     * @param south southern edge of the area
+     * @param west western edge of the area
+     * @param north northern edge of the area
+     * @param east eastern edge of the area
+     * @return true if the path may have points in the area
+     */
+    public boolean intersects(double south, double west, double north, double east) {
+        return pointCount > 0 && minLat <= north && maxLat >= south && minLng <= east && maxLng >= west;
+    }
+
+    /**
+     * Returns the floors the path reaches.
+     *
+     * @param floors the floors of the building
+     * @return lowest and highest floor, both {@link FloorModel#UNKNOWN_FLOOR} if no altitude is known
+     */
+    public int[] getFloorRange(FloorModel floors) {
+        return new int[]{floors.floorOf(minAlt), floors.floorOf(maxAlt)};
+    }
+
+    /**
+     * Returns the summary as a plain value for a {@link DataStore}. Unknown times and
+     * altitudes are left out.
+     *
+     * @return map of the summary fields
+     */
+    public Map<String, Object> toValue() {
+        Map<String, Object> value = new TreeMap<>();
+        value.put(KEY_COUNT, pointCount);
+        value.put(KEY_LENGTH, lengthMeters);
+        if (pointCount > 0) {
+            value.put(KEY_MIN_LAT, minLat);
+            value.put(KEY_MIN_LNG, minLng);
+            value.put(KEY_MAX_LAT, maxLat);
+            value.put(KEY_MAX_LNG, maxLng);
+        }
+        if (!Double.isNaN(minAlt)) {
+            value.put(KEY_MIN_ALT, minAlt);
+            value.put(KEY_MAX_ALT, maxAlt);
+        }
+        if (startTime > 0) {
+            value.put(KEY_START_TIME, startTime);
+        }
+        if (endTime > 0) {
+            value.put(KEY_END_TIME, endTime);
+        }
+        Map<String, Object> tileValue = new TreeMap<>();
+        for (String tile : tiles) {
+            tileValue.put(tile, true);
+        }
+        value.put(KEY_TILES, tileValue);
+        return value;
+    }
+
+    /**
+     * Reads a summary from a plain {@link DataStore} value.
+     *
+     * @param value the stored value
+     * @return the summary, or null if the value is not a valid summary
+     */
+    public static PathSummary fromValue(Object value) {
+        if (!(value instanceof Map)) {
+            return null;
+        }
+        Map<?, ?> map = (Map<?, ?>) value;
+        if (!(map.get(KEY_COUNT) instanceof Number)) {
+            return null;
+        }
+        PathSummary summary = new PathSummary();
+        summary.pointCount = ((Number) map.get(KEY_COUNT)).intValue();
+        summary.lengthMeters = getDouble(map, KEY_LENGTH, 0);
+        summary.minLat = getDouble(map, KEY_MIN_LAT, Double.POSITIVE_INFINITY);
+        summary.minLng = getDouble(map, KEY_MIN_LNG, Double.POSITIVE_INFINITY);
+        summary.maxLat = getDouble(map, KEY_MAX_LAT, Double.NEGATIVE_INFINITY);
+        summary.maxLng = getDouble(map, KEY_MAX_LNG, Double.NEGATIVE_INFINITY);
+        summary.minAlt = getDouble(map, KEY_MIN_ALT, Double.NaN);
+        summary.maxAlt = getDouble(map, KEY_MAX_ALT, Double.NaN);
+        summary.startTime = (long) getDouble(map, KEY_START_TIME, 0);
+        summary.endTime = (long) getDouble(map, KEY_END_TIME, 0);
+        if (map.get(KEY_TILES) instanceof Map) {
+            for (Object tile : ((Map<?, ?>) map.get(KEY_TILES)).keySet()) {
+                summary.tiles.add(String.valueOf(tile));
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Reads a number from a stored map.
+     *
+     * @param map the stored map
+     * @param key key of the number
+     * @param fallback value returned if the key holds no number
+     * @return the number as a double
+     */
+    private static double getDouble(Map<?, ?> map, String key, double fallback) {
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : fallback;
+    }
+}
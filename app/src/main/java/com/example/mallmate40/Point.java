@@ -1,5 +1,8 @@
 package com.example.mallmate40;
 
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * Represents a point in three-dimensional space with x, y, and z coordinates.
  * This class is designed to be compatible with Firebase serialization.
@@ -91,4 +94,41 @@ public class Point {
     public void setZ(double z) {
         this.z = z;
     }
+
+    /**
+     * Returns the point as a plain value for a {@link DataStore}, laid out like Firebase serializes it.
+     * An unknown altitude is left out, Firebase cannot store NaN.
+     *
+     * @return map holding the x, y and, if known, z coordinates
+     */
+    public Map<String, Object> toValue() {
+        Map<String, Object> value = new TreeMap<>();
+        value.put("x", x);
+        value.put("y", y);
+        if (!Double.isNaN(z)) {
+            value.put("z", z);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a point from a plain {@link DataStore} value.
+     *
+     * @param value map holding the x, y and, if known, z coordinates
+     * @return the point with a NaN altitude if it has none, or null if the value is not a point
+     */
+    public static Point fromValue(Object value) {
+        if (!(value instanceof Map)) {
+            return null;
+        }
+        Map<?, ?> map = (Map<?, ?>) value;
+        Object x = map.get("x");
+        Object y = map.get("y");
+        Object z = map.get("z");
+        if (!(x instanceof Number) || !(y instanceof Number)) {
+            return null;
+        }
+        return new Point(((Number) x).doubleValue(), ((Number) y).doubleValue(),
+                z instanceof Number ? ((Number) z).doubleValue() : Double.NaN);
+    }
 }
@@ -0,0 +1,57 @@
+package com.example.mallmate40;
+
+/**
+ * A named point of interest, such as a classroom or a shop, that users can navigate to.
+ * The name is the key of the point in the "points_of_interest" branch of the database.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public final class PointOfInterest {
+
+    /** The name of the point of interest */
+    private final String name;
+
+    /** The location of the point of interest */
+    private final Point location;
+
+    /**
+     * Creates a point of interest.
+     *
+     * @param name the name of the point of interest
+     * @param location the location of the point of interest
+     */
+    public PointOfInterest(String name, Point location) {
+        this.name = name;
+        this.location = location;
+    }
+
+    /**
+     * Returns the name of the point of interest.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the key of the point of interest in the database. Names are unique, so the
+     * name is the key.
+     *
+     * @return the database key
+     */
+    public String getKey() {
+        return name;
+    }
+
+    /**
+     * Returns the location of the point of interest.
+     *
+     * @return the location, using x as latitude, y as longitude and z as altitude
+     */
+    public Point getLocation() {
+        return location;
+    }
+}
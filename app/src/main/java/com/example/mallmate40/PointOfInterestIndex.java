@@ -0,0 +1,326 @@
+package com.example.mallmate40;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Search index over point of interest names, built for search-as-you-type in large malls.
+ * Names are split into words and normalized, so matching ignores case, accents and Hebrew
+ * vowel marks. Every query word is matched as a prefix of a name word through binary search over
+ * the sorted word list, and, from three letters on, also with up to one or two typos.
+ * A name is returned when every query word matches one of its words, ranked by how well they match.
+ *
+ * <p>The index is immutable after it is built and may be shared between threads.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class PointOfInterestIndex {
+
+    /** Score of a query word equal to a name word */
+    private static final int EXACT_SCORE = 4;
+
+    /** Score of a query word that is a prefix of a name word */
+    private static final int PREFIX_SCORE = 3;
+
+    /** Score of a query word that matches a name word prefix with a single typo */
+    private static final int FUZZY_SCORE = 2;
+
+    /** Minimum length of a query word before typos are tolerated */
+    private static final int MIN_FUZZY_LENGTH = 3;
+
+    /** Minimum length of a query word before two typos are tolerated */
+    private static final int MIN_TWO_TYPO_LENGTH = 6;
+
+    /** The indexed points of interest, in name order */
+    private final List<PointOfInterest> pointsOfInterest;
+
+    /** Normalized full name of every point of interest */
+    private final String[] normalizedNames;
+
+    /** Every distinct normalized word, sorted */
+    private final String[] words;
+
+    /** For every word, the indices of the points of interest whose name contains it */
+    private final int[][] wordOwners;
+
+    /**
+     * Builds the index.
+     *
+     * @param pointsOfInterest the points of interest to index, in the order results are listed on equal rank
+     */
+    public PointOfInterestIndex(List<PointOfInterest> pointsOfInterest) {
+        this.pointsOfInterest = new ArrayList<>(pointsOfInterest);
+        int count = this.pointsOfInterest.size();
+        this.normalizedNames = new String[count];
+
+        // Collect (word, owner) pairs, then sort and group them by word
+        List<String> pairWords = new ArrayList<>();
+        List<Integer> pairOwners = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            normalizedNames[i] = normalize(this.pointsOfInterest.get(i).getName());
+            for (String word : split(normalizedNames[i])) {
+                pairWords.add(word);
+                pairOwners.add(i);
+            }
+        }
+        Integer[] order = new Integer[pairWords.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> {
+            int byWord = pairWords.get(a).compareTo(pairWords.get(b));
+            return byWord != 0 ? byWord : Integer.compare(pairOwners.get(a), pairOwners.get(b));
+        });
+
+        List<String> distinctWords = new ArrayList<>();
+        List<int[]> owners = new ArrayList<>();
+        int start = 0;
+        while (start < order.length) {
+            String word = pairWords.get(order[start]);
+            int end = start;
+            while (end < order.length && pairWords.get(order[end]).equals(word)) end++;
+            int[] wordOwnerIds = new int[end - start];
+            int ownerCount = 0;
+            for (int k = start; k < end; k++) {
+                int owner = pairOwners.get(order[k]);
+                // A word repeated in the same name is stored once
+                if (ownerCount == 0 || wordOwnerIds[ownerCount - 1] != owner) {
+                    wordOwnerIds[ownerCount++] = owner;
+                }
+            }
+            distinctWords.add(word);
+            owners.add(Arrays.copyOf(wordOwnerIds, ownerCount));
+            start = end;
+        }
+        this.words = distinctWords.toArray(new String[0]);
+        this.wordOwners = owners.toArray(new int[0][]);
+    }
+
+    /**
+     * Returns the number of indexed points of interest.
+     *
+     * @return the point of interest count
+     */
+    public int size() {
+        return pointsOfInterest.size();
+    }
+
+    /**
+     * Finds the points of interest matching a query, best matches first.
+     * An empty query returns every point of interest in name order.
+     *
+     * @param query the text typed by the user
+     * @param maxResults maximum number of results
+     * @return the matching points of interest
+     */
+    public List<PointOfInterest> search(String query, int maxResults) {
+        String normalizedQuery = normalize(query);
+        List<String> queryWords = split(normalizedQuery);
+        int count = pointsOfInterest.size();
+        if (queryWords.isEmpty()) {
+            return Collections.unmodifiableList(pointsOfInterest.subList(0, Math.min(count, maxResults)));
+        }
+
+        int[] totalScore = new int[count];
+        int[] matchedWords = new int[count];
+        int[] bestScore = new int[count];
+        int[] bestStamp = new int[count];
+        for (int q = 0; q < queryWords.size(); q++) {
+            String queryWord = queryWords.get(q);
+            int stamp = q + 1;
+
+            // Prefix matches form one contiguous run in the sorted word list
+            int first = lowerBound(queryWord);
+            int last = first;
+            while (last < words.length && words[last].startsWith(queryWord)) {
+                int score = words[last].length() == queryWord.length() ? EXACT_SCORE : PREFIX_SCORE;
+                credit(last, score, stamp, totalScore, matchedWords, bestScore, bestStamp);
+                last++;
+            }
+
+            // Typo-tolerant matches need a scan, cheap for a few thousand short words
+            if (queryWord.length() >= MIN_FUZZY_LENGTH) {
+                int maxEdits = queryWord.length() >= MIN_TWO_TYPO_LENGTH ? 2 : 1;
+                for (int w = 0; w < words.length; w++) {
+                    if (w >= first && w < last) continue;
+                    int edits = prefixEditDistance(queryWord, words[w], maxEdits);
+                    if (edits <= maxEdits) {
+                        credit(w, FUZZY_SCORE + 1 - edits, stamp, totalScore, matchedWords, bestScore, bestStamp);
+                    }
+                }
+            }
+        }
+
+        // Every query word must match, rank by score, then names starting with the query, then shorter names
+        List<Integer> matches = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (matchedWords[i] == queryWords.size()) {
+                if (normalizedNames[i].startsWith(normalizedQuery)) {
+                    totalScore[i]++;
+                }
+                matches.add(i);
+            }
+        }
+        Collections.sort(matches, (a, b) -> {
+            if (totalScore[a] != totalScore[b]) return Integer.compare(totalScore[b], totalScore[a]);
+            if (normalizedNames[a].length() != normalizedNames[b].length()) {
+                return Integer.compare(normalizedNames[a].length(), normalizedNames[b].length());
+            }
+            return Integer.compare(a, b);
+        });
+
+        List<PointOfInterest> results = new ArrayList<>();
+        for (int i = 0; i < matches.size() && i < maxResults; i++) {
+            results.add(pointsOfInterest.get(matches.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Normalizes text for matching - removes accents and Hebrew vowel marks, lowercases,
+     * replaces Hebrew final letters with their regular forms and turns punctuation into spaces.
+     *
+     * @param text the text to normalize
+     * @return the normalized text
+     */
+    static String normalize(String text) {
+        if (text == null) return "";
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(finalLetterToRegular(Character.toLowerCase(c)));
+            } else {
+                sb.append(' ');
+            }
+        }
+        return sb.toString().trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits normalized text into words.
+     *
+     * @param normalized normalized text
+     * @return the non-empty words
+     */
+    private static List<String> split(String normalized) {
+        List<String> result = new ArrayList<>();
+        for (String word : normalized.split(" +")) {
+            if (!word.isEmpty()) result.add(word);
+        }
+        return result;
+    }
+
+    /**
+     * Maps the Hebrew final letter forms to their regular forms, so a word typed halfway
+     * matches the full word.
+     *
+     * @param c a lowercase character
+     * @return the regular form, or the character itself
+     */
+    private static char finalLetterToRegular(char c) {
+        switch (c) {
+            case 'ך': return 'כ'; // final kaf
+            case 'ם': return 'מ'; // final mem
+            case 'ן': return 'נ'; // final nun
+            case 'ף': return 'פ'; // final pe
+            case 'ץ': return 'צ'; // final tsadi
+            default: return c;
+        }
+    }
+
+    /**
+     * Returns the index of the first word not less than the given one.
+     *
+     * @param word the word to look up
+     * @return insertion point in the sorted word list
+     */
+    private int lowerBound(String word) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Credits a matching word to every point of interest containing it, keeping only the best
+     * match of each query word per point of interest.
+     *
+     * @param word index of the matching word
+     * @param score score of the match
+     * @param stamp identifies the current query word
+     * @param totalScore running score of every point of interest
+     * @param matchedWords number of query words matched by every point of interest
+     * @param bestScore best score of the current query word for every point of interest
+     * @param bestStamp query word that bestScore belongs to, for every point of interest
+     */
+    private void credit(int word, int score, int stamp, int[] totalScore, int[] matchedWords,
+                        int[] bestScore, int[] bestStamp) {
+        for (int owner : wordOwners[word]) {
+            if (bestStamp[owner] != stamp) {
+                bestStamp[owner] = stamp;
+                bestScore[owner] = score;
+                matchedWords[owner]++;
+                totalScore[owner] += score;
+            } else if (score > bestScore[owner]) {
+                totalScore[owner] += score - bestScore[owner];
+                bestScore[owner] = score;
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest edit distance between a query word and any prefix of a name word,
+     * giving up early once it exceeds the limit.
+     *
+     * @param query the query word
+     * @param word the name word
+     * @param maxEdits the largest distance of interest
+     * @return the distance, or maxEdits + 1 if it is larger than maxEdits
+     */
+    static int prefixEditDistance(String query, String word, int maxEdits) {
+        int m = query.length();
+        int n = Math.min(word.length(), m + maxEdits);
+        if (n < m - maxEdits) return maxEdits + 1;
+
+        // Rows run over the query, columns over the word prefix
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int j = 0; j <= n; j++) previous[j] = j;
+        for (int i = 1; i <= m; i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            char qc = query.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                int cost = qc == word.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(previous[j - 1] + cost, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = value;
+                if (value < rowMin) rowMin = value;
+            }
+            if (rowMin > maxEdits) return maxEdits + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        // Any prefix of the word may match the whole query
+        int best = maxEdits + 1;
+        for (int j = 0; j <= n; j++) {
+            if (previous[j] < best) best = previous[j];
+        }
+        return best;
+    }
+}
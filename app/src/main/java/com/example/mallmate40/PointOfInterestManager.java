@@ -1,21 +1,13 @@
 package com.example.mallmate40;
 
-import android.util.Log;
+import android.content.Context;
 
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
-
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Point of Interest Manager - responsible for saving, loading, and deleting points of interest
  * in the Firebase database. Provides methods for managing user-defined locations within the application.
+ * Reads are served from the shared {@link PointOfInterestStore} catalog instead of the network.
  *
  * @author Shon Aronov
  * @version 1.0
@@ -23,11 +15,8 @@ import java.util.Map;
  */
 public class PointOfInterestManager {
 
-    /** Tag used for logging purposes */
-    private static final String TAG = "PointOfInterestManager";
-
-    /** Database reference for storing points of interest */
-    private DatabaseReference dbref;
+    /** Shared catalog of points of interest kept in sync with the database */
+    private final PointOfInterestStore store;
 
     /**
      * Interface for receiving loading results from the database.
@@ -37,9 +26,9 @@ public class PointOfInterestManager {
         /**
          * Called when locations are successfully loaded from the database.
          *
-         * @param locations list of location data containing name and Point objects
+         * @param locations points of interest sorted by name
          */
-        void onLocationsLoaded(List<Map<String, Object>> locations);
+        void onLocationsLoaded(List<PointOfInterest> locations);
 
         /**
          * Called when an error occurs during the loading process.
@@ -50,13 +39,12 @@ public class PointOfInterestManager {
     }
 
     /**
-     * Constructor - initializes the Firebase database connection.
-     * Creates a reference to the "points_of_interest" branch in the database.
+     * Constructor - connects to the shared point of interest catalog.
+     *
+     * @param context any context, used to locate the catalog cache
      */
-    public PointOfInterestManager() {
-        // Create reference to "points_of_interest" branch in the database
-        this.dbref = FirebaseDatabase.getInstance().getReference("points_of_interest");
-        Log.d(TAG, "Initialized with reference: " + dbref.toString());
+    public PointOfInterestManager(Context context) {
+        this.store = PointOfInterestStore.getInstance(context);
     }
 
     /**
@@ -74,18 +62,7 @@ public class PointOfInterestManager {
             return false;
         }
 
-        // Create point object
-        Point location = new Point(x, y, z);
-
-        // Save to database
-        dbref.child(name).setValue(location)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Point of interest saved successfully: " + name);
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to save point of interest: " + e.getMessage());
-                });
-
+        store.save(new PointOfInterest(name, new Point(x, y, z)));
         return true;
     }
 
@@ -97,53 +74,27 @@ public class PointOfInterestManager {
      */
     public void deletePointOfInterest(String name) {
         if (name != null && !name.trim().isEmpty()) {
-            dbref.child(name).removeValue();
+            store.delete(name);
         }
     }
 
     /**
-     * Loads all saved points of interest from the database.
-     * Performs a single read operation on the database and returns results through a callback.
-     * Each location in the result contains both the name and the Point object.
+     * Returns the search index over the saved points of interest. Should be called once
+     * {@link #loadSavedLocations(LocationsLoadCallback)} has delivered the catalog.
+     *
+     * @return the search index
+     */
+    public PointOfInterestIndex getSearchIndex() {
+        return store.getSearchIndex();
+    }
+
+    /**
+     * Loads all saved points of interest.
+     * The catalog is served from memory once it has been loaded, so the callback usually runs immediately.
      *
      * @param callback interface for receiving results - either a list of points of interest or an error message
      */
     public void loadSavedLocations(final LocationsLoadCallback callback) {
-        Log.d(TAG, "Attempting to load points from Firebase");
-        dbref.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot dataSnapshot) {
-                Log.d(TAG, "DataSnapshot received, has children: " + dataSnapshot.hasChildren());
-
-                List<Map<String, Object>> locations = new ArrayList<>();
-                try {
-                    for (DataSnapshot locationSnapshot : dataSnapshot.getChildren()) {
-                        String locationName = locationSnapshot.getKey();
-                        Log.d(TAG, "Found point: " + locationName);
-
-                        Point point = locationSnapshot.getValue(Point.class);
-                        if (point != null) {
-                            Map<String, Object> locationData = new HashMap<>();
-                            locationData.put("name", locationName);
-                            locationData.put("location", point);
-                            locations.add(locationData);
-                        } else {
-                            Log.e(TAG, "Point is null for: " + locationName);
-                        }
-                    }
-                    Log.d(TAG, "Successfully loaded " + locations.size() + " points");
-                    callback.onLocationsLoaded(locations);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error parsing data: " + e.getMessage(), e);
-                    callback.onError("Error parsing data: " + e.getMessage());
-                }
-            }
-
-            @Override
-            public void onCancelled(DatabaseError databaseError) {
-                Log.e(TAG, "Database error: " + databaseError.getMessage(), databaseError.toException());
-                callback.onError("Database error: " + databaseError.getMessage());
-            }
-        });
+        store.getPointsOfInterest(callback);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,243 @@
+package com.example.mallmate40;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Local on-device catalog of every point of interest. The catalog is filled from the
+ * "points_of_interest" branch of the offline-first {@link DataStore}, which serves the copy kept
+ * on the device and applies the child events of the remote database, so the destination list
+ * is served from memory without a network round trip.
+ *
+ * <p>All public methods must be called on the main thread.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class PointOfInterestStore {
+
+    /** Tag used for logging purposes */
+    private static final String TAG = "PointOfInterestStore";
+
+    /** Name of the branch holding the points of interest */
+    public static final String BRANCH = "points_of_interest";
+
+    /** The single shared store instance */
+    private static PointOfInterestStore instance;
+
+    /** Points of interest keyed by name, in name order */
+    private final Map<String, PointOfInterest> pointsOfInterest = new TreeMap<>();
+
+    /** Callbacks waiting for the first complete catalog */
+    private final List<PointOfInterestManager.LocationsLoadCallback> pendingCallbacks = new ArrayList<>();
+
+    /** Listeners notified on the main thread whenever a point of interest is added, changed or removed */
+    private final List<Runnable> changeListeners = new ArrayList<>();
+
+    /** Data store the catalog is read from and written to */
+    private final DataStore dataStore;
+
+    /** Sorted read-only copy of the catalog handed to readers, or null if the catalog changed since */
+    private List<PointOfInterest> snapshot;
+
+    /** Search index over the reader snapshot, or null if the catalog changed since it was built */
+    private PointOfInterestIndex searchIndex;
+
+    /** Flag indicating whether the store holds data that can be served to readers */
+    private boolean ready = false;
+
+    /**
+     * Returns the shared store, creating it and starting synchronization on first use.
+     *
+     * @param context any context, used to reach the data store
+     * @return the point of interest store
+     */
+    public static synchronized PointOfInterestStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new PointOfInterestStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Creates the store and starts listening for points of interest.
+     *
+     * @param context the application context
+     */
+    private PointOfInterestStore(Context context) {
+        this.dataStore = OfflineFirstDataStore.getInstance(context);
+        dataStore.listen(BRANCH, new DataStore.ChildListener() {
+            @Override
+            public void onChildChanged(String key, Object value) {
+                Point location = Point.fromValue(value);
+                if (location == null) {
+                    Log.e(TAG, "Point is null for: " + key);
+                    return;
+                }
+                put(new PointOfInterest(key, location));
+            }
+
+            @Override
+            public void onChildRemoved(String key) {
+                remove(key);
+            }
+
+            @Override
+            public void onInitialDataLoaded() {
+                Log.d(TAG, "Initial point of interest sync complete, " + pointsOfInterest.size() + " points");
+                markReady();
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Error loading points of interest: " + error);
+                failPending("Database error: " + error);
+            }
+        });
+    }
+
+    /**
+     * Returns every point of interest sorted by name. The catalog is served from memory once
+     * it has been loaded, so the callback usually runs before this method returns.
+     *
+     * @param callback receives the points of interest on the main thread
+     */
+    public void getPointsOfInterest(PointOfInterestManager.LocationsLoadCallback callback) {
+        if (ready) {
+            callback.onLocationsLoaded(getSnapshot());
+            return;
+        }
+        pendingCallbacks.add(callback);
+    }
+
+    /**
+     * Returns the search index over the current catalog, building it on first use after a change.
+     *
+     * @return the search index
+     */
+    public PointOfInterestIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new PointOfInterestIndex(getSnapshot());
+        }
+        return searchIndex;
+    }
+
+    /**
+     * Registers a listener that is called on the main thread whenever the catalog changes.
+     *
+     * @param listener the listener to add
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Saves a point of interest. The catalog is updated immediately and the remote database once it is reachable.
+     *
+     * @param pointOfInterest the point of interest to save, replacing any point with the same name
+     */
+    public void save(PointOfInterest pointOfInterest) {
+        String name = pointOfInterest.getName();
+        put(pointOfInterest);
+        Map<String, Object> update = new HashMap<>();
+        update.put(BRANCH + "/" + pointOfInterest.getKey(), pointOfInterest.getLocation().toValue());
+        dataStore.updateChildren(update, (error, permanent) -> {
+            if (error == null) {
+                Log.d(TAG, "Point of interest saved successfully: " + name);
+            } else {
+                Log.e(TAG, "Failed to save point of interest: " + error);
+            }
+        });
+    }
+
+    /**
+     * Deletes a point of interest by name from the catalog and the database.
+     *
+     * @param name the name of the point of interest to delete
+     */
+    public void delete(String name) {
+        remove(name);
+        Map<String, Object> update = new HashMap<>();
+        update.put(BRANCH + "/" + name, null);
+        dataStore.updateChildren(update, null);
+    }
+
+    /**
+     * Stores a point of interest.
+     *
+     * @param pointOfInterest the point of interest to store
+     */
+    private void put(PointOfInterest pointOfInterest) {
+        pointsOfInterest.put(pointOfInterest.getKey(), pointOfInterest);
+        onCatalogChanged();
+    }
+
+    /**
+     * Removes a point of interest.
+     *
+     * @param name the name of the point of interest
+     */
+    private void remove(String name) {
+        if (pointsOfInterest.remove(name) != null) {
+            onCatalogChanged();
+        }
+    }
+
+    /**
+     * Drops the reader snapshot and search index and notifies the listeners after a change.
+     */
+    private void onCatalogChanged() {
+        snapshot = null;
+        searchIndex = null;
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Returns the sorted read-only copy of the catalog, creating it if the catalog changed.
+     *
+     * @return the points of interest sorted by name
+     */
+    private List<PointOfInterest> getSnapshot() {
+        if (snapshot == null) {
+            snapshot = Collections.unmodifiableList(new ArrayList<>(pointsOfInterest.values()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Marks the store as ready to serve readers and answers any waiting callbacks.
+     */
+    private void markReady() {
+        if (ready) return;
+        ready = true;
+        List<PointOfInterestManager.LocationsLoadCallback> callbacks = new ArrayList<>(pendingCallbacks);
+        pendingCallbacks.clear();
+        for (PointOfInterestManager.LocationsLoadCallback callback : callbacks) {
+            callback.onLocationsLoaded(getSnapshot());
+        }
+    }
+
+    /**
+     * Reports an error to the waiting callbacks when nothing can be served.
+     *
+     * @param error error message describing what went wrong
+     */
+    private void failPending(String error) {
+        if (ready) return;
+        List<PointOfInterestManager.LocationsLoadCallback> callbacks = new ArrayList<>(pendingCallbacks);
+        pendingCallbacks.clear();
+        for (PointOfInterestManager.LocationsLoadCallback callback : callbacks) {
+            callback.onError(error);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.mallmate40;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plans navigation routes to points of interest. A {@link RouteTable} from every node to the
+ * points of interest within the areas loaded by the {@link PathStore} is rebuilt in the
+ * background whenever the paths or the points of interest change, so picking a destination
+ * nearby is a table lookup. Until the table is up to date, or for destinations outside it,
+ * routes are searched on the navigation graph instead. Only the paths around the route
+ * endpoints are loaded, building the table never loads more.
+ *
+ * <p>Chunks uploaded by a recording on this device do not drop the table, the changes are
+ * picked up by a rebuild at most every {@link #OWN_RECORDING_REBUILD_DELAY_MS}.</p>
+ *
+ * <p>All public methods must be called on the main thread.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class RoutePlanner {
+
+    /** Tag used for logging purposes */
+    private static final String TAG = "RoutePlanner";
+
+    /** Maximum distance in meters between a position and the node it is snapped to */
+    public static final double SNAP_RADIUS_METERS = 5.0;
+
+    /** Delay in milliseconds after the last change before the table is rebuilt */
+    private static final long REBUILD_DELAY_MS = 2000;
+
+    /** Delay in milliseconds before paths recorded on this device are added to the table */
+    private static final long OWN_RECORDING_REBUILD_DELAY_MS = 5 * 60 * 1000;
+
+    /** The single shared planner instance */
+    private static RoutePlanner instance;
+
+    /** Store providing the navigation graph */
+    private final PathStore pathStore;
+
+    /** Store providing the points of interest */
+    private final PointOfInterestStore pointOfInterestStore;
+
+    /** Background thread for building route tables */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /** Handler for posting results back to the main thread */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Rebuilds the table once changes have settled */
+    private final Runnable rebuildTask = this::rebuildTable;
+
+    /** Marks the table out of date once paths recorded on this device have waited long enough */
+    private final Runnable ownRecordingTask = this::onOwnRecordingDue;
+
+    /** Identifier of this device, used to recognize paths recorded here */
+    private final String deviceId;
+
+    /** Flag indicating whether changes to paths recorded on this device are waiting for a rebuild */
+    private boolean ownRecordingPending = false;
+
+    /** Route table matching the current paths and points of interest, or null if it is out of date */
+    private RouteTable table;
+
+    /** Incremented every time the paths or the points of interest change */
+    private int dataVersion = 0;
+
+    /**
+     * Interface for receiving a planned route.
+     */
+    public interface RouteCallback {
+        /**
+         * Called on the main thread with the planned route.
+         *
+         * @param route ordered list of route points, or null if no route exists
+         */
+        void onRoutePlanned(List<Point> route);
+    }
+
+    /**
+     * Returns the shared route planner, creating it and building the first table on first use.
+     *
+     * @param context any context, used to reach the stores
+     * @return the route planner
+     */
+    public static synchronized RoutePlanner getInstance(Context context) {
+        if (instance == null) {
+            instance = new RoutePlanner(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Creates the planner and schedules the first table build.
+     *
+     * @param context the application context
+     */
+    private RoutePlanner(Context context) {
+        this.pathStore = PathStore.getInstance(context);
+        this.pointOfInterestStore = PointOfInterestStore.getInstance(context);
+        this.deviceId = PathId.getDeviceId(context);
+        pathStore.addChangeListener(this::onPathsChanged);
+        pointOfInterestStore.addChangeListener(this::onDataChanged);
+        mainHandler.post(rebuildTask);
+    }
+
+    /**
+     * Plans a route from a position to a point of interest.
+     *
+     * @param start the starting position
+     * @param destination the destination point of interest
+     * @param callback receives the route on the main thread
+     */
+    public void findRoute(Point start, PointOfInterest destination, RouteCallback callback) {
+        // Both endpoints are always requested, a new area means the table misses its paths
+        boolean loading = pathStore.loadArea(start) | pathStore.loadArea(destination.getLocation());
+        if (!loading && table != null && table.contains(destination)) {
+            callback.onRoutePlanned(table.findRoute(start, destination, SNAP_RADIUS_METERS));
+            return;
+        }
+        // Table out of date or destination off the graph, search the graph directly
+        pathStore.getNavigationGraph(graph ->
+                callback.onRoutePlanned(graph.findRoute(start, destination.getLocation(), SNAP_RADIUS_METERS)));
+    }
+
+    /**
+     * Handles a change to the paths. A path recorded on this device keeps the current table,
+     * whose routes are still valid on the graph it was built from, and is added later.
+     *
+     * @param pathId the key of the only path that changed, or null if several changed
+     */
+    private void onPathsChanged(String pathId) {
+        if (pathId == null || !PathId.isFromDevice(pathId, deviceId)) {
+            onDataChanged();
+            return;
+        }
+        if (!ownRecordingPending) {
+            ownRecordingPending = true;
+            mainHandler.postDelayed(ownRecordingTask, OWN_RECORDING_REBUILD_DELAY_MS);
+        }
+    }
+
+    /**
+     * Rebuilds the table with the paths recorded on this device since the last rebuild.
+     */
+    private void onOwnRecordingDue() {
+        if (ownRecordingPending) {
+            onDataChanged();
+        }
+    }
+
+    /**
+     * Marks the table out of date and schedules a rebuild, coalescing bursts of changes.
+     * Pending changes to paths recorded on this device are included.
+     */
+    private void onDataChanged() {
+        ownRecordingPending = false;
+        mainHandler.removeCallbacks(ownRecordingTask);
+        dataVersion++;
+        table = null;
+        mainHandler.removeCallbacks(rebuildTask);
+        mainHandler.postDelayed(rebuildTask, REBUILD_DELAY_MS);
+    }
+
+    /**
+     * Builds a new table from the current graph and points of interest in the background.
+     * The table is dropped if anything changed while it was being built.
+     */
+    private void rebuildTable() {
+        final int version = dataVersion;
+        pointOfInterestStore.getPointsOfInterest(new PointOfInterestManager.LocationsLoadCallback() {
+            @Override
+            public void onLocationsLoaded(List<PointOfInterest> locations) {
+                if (version != dataVersion) return;
+                // Destinations elsewhere in the database are left to the graph search
+                final List<PointOfInterest> nearby = new ArrayList<>();
+                for (PointOfInterest location : locations) {
+                    if (pathStore.isInLoadedArea(location.getLocation())) {
+                        nearby.add(location);
+                    }
+                }
+                if (nearby.isEmpty()) return;
+                pathStore.getNavigationGraph(graph -> {
+                    if (version != dataVersion) return;
+                    executor.execute(() -> {
+                        long startTime = System.currentTimeMillis();
+                        RouteTable built = new RouteTable(graph, nearby, SNAP_RADIUS_METERS);
+                        Log.d(TAG, "Route table built for " + built.size() + " points of interest over "
+                                + graph.getNodeCount() + " nodes in "
+                                + (System.currentTimeMillis() - startTime) + " ms");
+                        mainHandler.post(() -> {
+                            if (version == dataVersion) {
+                                table = built;
+                            }
+                        });
+                    });
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Cannot build route table: " + error);
+            }
+        });
+    }
+}
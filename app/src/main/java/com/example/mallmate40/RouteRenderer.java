@@ -0,0 +1,184 @@
+package com.example.mallmate40;
+
+import android.graphics.Color;
+
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draws a navigation route on the map as a single polyline instead of one marker per point.
+ * The polyline is simplified to the detail visible at the current zoom level, and the simplified
+ * points are cached per zoom level so zooming back and forth does not repeat the work.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class RouteRenderer {
+
+    /** Lowest zoom level that gets its own level of detail */
+    private static final int MIN_ZOOM = 10;
+
+    /** Highest zoom level that gets its own level of detail */
+    private static final int MAX_ZOOM = 21;
+
+    /** Meters per screen pixel at zoom level 0 on the equator */
+    private static final double METERS_PER_PIXEL_AT_ZOOM_0 = 156543.03;
+
+    /** Width of the route line in pixels */
+    private static final float ROUTE_WIDTH = 12f;
+
+    /** Distance in meters between waypoint markers along the route */
+    private static final double WAYPOINT_SPACING_METERS = 50.0;
+
+    /** The map the route is drawn on */
+    private final GoogleMap map;
+
+    /** Flag indicating whether sparse waypoint markers are drawn along the route */
+    private final boolean showWaypoints;
+
+    /** The full route being displayed */
+    private List<Point> route;
+
+    /** Simplified route points for each zoom level already displayed */
+    private final Map<Integer, List<LatLng>> levelsOfDetail = new HashMap<>();
+
+    /** The polyline currently on the map, or null if no route is shown */
+    private Polyline polyline;
+
+    /** Waypoint markers currently on the map */
+    private final List<Marker> waypointMarkers = new ArrayList<>();
+
+    /** Zoom level whose simplified points the polyline currently shows */
+    private int currentZoom = -1;
+
+    /**
+     * Creates a renderer for the given map.
+     *
+     * @param map the map to draw on
+     * @param showWaypoints whether to draw sparse waypoint markers along the route
+     */
+    public RouteRenderer(GoogleMap map, boolean showWaypoints) {
+        this.map = map;
+        this.showWaypoints = showWaypoints;
+    }
+
+    /**
+     * Displays a route, replacing any route shown before, and moves the camera to fit it.
+     *
+     * @param routePoints ordered points of the route
+     */
+    public void show(List<Point> routePoints) {
+        clear();
+        if (routePoints.isEmpty()) return;
+        route = routePoints;
+
+        // Bounds and waypoints are collected in a single pass over the route
+        LatLngBounds.Builder bounds = new LatLngBounds.Builder();
+        double sinceLastWaypoint = 0;
+        Point previous = null;
+        for (Point p : routePoints) {
+            LatLng position = new LatLng(p.x, p.y);
+            bounds.include(position);
+            if (previous != null) {
+                sinceLastWaypoint += GeoMath.approximateDistanceMeters(previous.x, previous.y, p.x, p.y);
+            }
+            if (showWaypoints && (previous == null || sinceLastWaypoint >= WAYPOINT_SPACING_METERS)) {
+                waypointMarkers.add(map.addMarker(new MarkerOptions()
+                        .position(position)
+                        .title("Waypoint " + (waypointMarkers.size() + 1))
+                        .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_AZURE))));
+                sinceLastWaypoint = 0;
+            }
+            previous = p;
+        }
+
+        int zoom = zoomBucket(map.getCameraPosition().zoom);
+        polyline = map.addPolyline(new PolylineOptions()
+                .addAll(pointsForZoom(zoom))
+                .width(ROUTE_WIDTH)
+                .color(Color.BLUE)
+                .geodesic(false));
+        currentZoom = zoom;
+
+        map.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds.build(), 100));
+    }
+
+    /**
+     * Updates the polyline detail after the camera stops moving. Should be registered as
+     * the map camera idle listener.
+     */
+    public void onCameraIdle() {
+        if (polyline == null) return;
+        int zoom = zoomBucket(map.getCameraPosition().zoom);
+        if (zoom != currentZoom) {
+            polyline.setPoints(pointsForZoom(zoom));
+            currentZoom = zoom;
+        }
+    }
+
+    /**
+     * Removes the route from the map and forgets the cached levels of detail.
+     */
+    public void clear() {
+        if (polyline != null) {
+            polyline.remove();
+            polyline = null;
+        }
+        for (Marker marker : waypointMarkers) {
+            marker.remove();
+        }
+        waypointMarkers.clear();
+        levelsOfDetail.clear();
+        route = null;
+        currentZoom = -1;
+    }
+
+    /**
+     * Returns the route simplified for a zoom level, computing and caching it on first use.
+     *
+     * @param zoom the zoom level bucket
+     * @return the simplified route points
+     */
+    private List<LatLng> pointsForZoom(int zoom) {
+        List<LatLng> cached = levelsOfDetail.get(zoom);
+        if (cached != null) {
+            return cached;
+        }
+        // Anything smaller than one screen pixel at this zoom cannot be seen
+        double toleranceMeters = METERS_PER_PIXEL_AT_ZOOM_0
+                * Math.cos(Math.toRadians(route.get(0).x)) / Math.pow(2, zoom);
+        boolean[] keep = PathSimplifier.simplify(route, toleranceMeters);
+        List<LatLng> points = new ArrayList<>();
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                Point p = route.get(i);
+                points.add(new LatLng(p.x, p.y));
+            }
+        }
+        levelsOfDetail.put(zoom, points);
+        return points;
+    }
+
+    /**
+     * Maps a camera zoom to one of the cached level-of-detail buckets.
+     *
+     * @param zoom the camera zoom
+     * @return the zoom bucket
+     */
+    private static int zoomBucket(float zoom) {
+        return Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, (int) Math.floor(zoom)));
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.mallmate40;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed routes from every node of a {@link NavigationGraph} to every point of interest.
+ * For each point of interest a shortest path tree is stored as a next hop per node, so a route
+ * to a point of interest is found by snapping the user to the nearest node and following the
+ * next hops, without searching the graph.
+ *
+ * <p>Memory grows with the number of nodes times the number of points of interest, eight bytes
+ * per pair, so at most {@link #MAX_ENTRIES} pairs are held. Points of interest beyond that
+ * budget are left out of the table and routed to by searching the graph. Rows are keyed by the
+ * database key of the point of interest. The table is immutable after it is built and may be
+ * shared between threads.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class RouteTable {
+
+    /** Maximum number of node and point of interest pairs held, about 32 MB */
+    public static final long MAX_ENTRIES = 4_000_000L;
+
+    /** The graph the routes were computed on */
+    private final NavigationGraph graph;
+
+    /** Row of every point of interest in the table, keyed by database key */
+    private final Map<String, Integer> rows = new HashMap<>();
+
+    /** Point of interest of every row, used to notice a point that moved since the table was built */
+    private final PointOfInterest[] destinations;
+
+    /** Node of the graph every point of interest was snapped to, per row */
+    private final int[] targetNodes;
+
+    /** Next node on the route to the point of interest, per row and node */
+    private final int[][] nextHops;
+
+    /** Route length to the point of interest in meters, per row and node */
+    private final float[][] distances;
+
+    /**
+     * Builds the table within {@link #MAX_ENTRIES} pairs. Points of interest farther than the
+     * snap radius from every node are left out. Runs one Dijkstra search per point of interest,
+     * so it should be built on a background thread.
+     *
+     * @param graph the navigation graph
+     * @param pointsOfInterest the points of interest to route to, the first ones are kept
+     *                         if not all fit
+     * @param snapRadiusMeters maximum distance in meters between a point of interest and its node
+     */
+    public RouteTable(NavigationGraph graph, List<PointOfInterest> pointsOfInterest, double snapRadiusMeters) {
+        this(graph, pointsOfInterest, snapRadiusMeters, MAX_ENTRIES);
+    }
+
+    /**
+     * Builds the table. Points of interest farther than the snap radius from every node are
+     * left out, and so are those beyond the budget. Runs one Dijkstra search per point of
+     * interest, so it should be built on a background thread.
+     *
+     * @param graph the navigation graph
+     * @param pointsOfInterest the points of interest to route to, the first ones are kept
+     *                         if not all fit
+     * @param snapRadiusMeters maximum distance in meters between a point of interest and its node
+     * @param maxEntries maximum number of node and point of interest pairs
+     */
+    public RouteTable(NavigationGraph graph, List<PointOfInterest> pointsOfInterest, double snapRadiusMeters,
+                      long maxEntries) {
+        this.graph = graph;
+        int nodeCount = graph.getNodeCount();
+        long maxRows = nodeCount == 0 ? 0 : maxEntries / nodeCount;
+        List<PointOfInterest> kept = new ArrayList<>();
+        List<Integer> targets = new ArrayList<>();
+        for (PointOfInterest pointOfInterest : pointsOfInterest) {
+            if (targets.size() >= maxRows) break;
+            if (rows.containsKey(pointOfInterest.getKey())) continue;
+            int node = graph.findNearestNode(pointOfInterest.getLocation(), snapRadiusMeters);
+            if (node != -1) {
+                rows.put(pointOfInterest.getKey(), targets.size());
+                kept.add(pointOfInterest);
+                targets.add(node);
+            }
+        }
+
+        destinations = kept.toArray(new PointOfInterest[0]);
+        targetNodes = new int[targets.size()];
+        nextHops = new int[targets.size()][];
+        distances = new float[targets.size()][];
+        for (int row = 0; row < targetNodes.length; row++) {
+            targetNodes[row] = targets.get(row);
+            nextHops[row] = new int[nodeCount];
+            distances[row] = new float[nodeCount];
+            graph.computeShortestPathTree(targetNodes[row], nextHops[row], distances[row]);
+        }
+    }
+
+    /**
+     * Returns the graph the routes were computed on.
+     *
+     * @return the navigation graph
+     */
+    public NavigationGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the number of points of interest with precomputed routes.
+     *
+     * @return the point of interest count
+     */
+    public int size() {
+        return targetNodes.length;
+    }
+
+    /**
+     * Returns whether routes to a point of interest were precomputed.
+     *
+     * @param pointOfInterest the point of interest
+     * @return true if the table holds routes to it at its current location
+     */
+    public boolean contains(PointOfInterest pointOfInterest) {
+        return findRow(pointOfInterest) != null;
+    }
+
+    /**
+     * Returns the route from a position to a point of interest. The position is snapped to the
+     * nearest node within the radius, the rest of the route is read from the table.
+     *
+     * @param start the starting position
+     * @param destination the destination point of interest
+     * @param snapRadiusMeters maximum distance in meters between the start and its snapped node
+     * @return ordered list of route points, or null if the start is off the graph, the point
+     *         of interest is not in the table or it cannot be reached
+     */
+    public List<Point> findRoute(Point start, PointOfInterest destination, double snapRadiusMeters) {
+        Integer row = findRow(destination);
+        if (row == null) {
+            return null;
+        }
+        int startNode = graph.findNearestNode(start, snapRadiusMeters);
+        if (startNode == -1 || Float.isInfinite(distances[row][startNode])) {
+            return null;
+        }
+        int[] nextHop = nextHops[row];
+        List<Point> route = new ArrayList<>();
+        for (int node = startNode; node != -1; node = nextHop[node]) {
+            route.add(graph.getNodePoint(node));
+        }
+        return route;
+    }
+
+    /**
+     * Returns the row of a point of interest.
+     *
+     * @param pointOfInterest the point of interest
+     * @return its row, or null if it is not in the table or has moved since the table was built
+     */
+    private Integer findRow(PointOfInterest pointOfInterest) {
+        Integer row = rows.get(pointOfInterest.getKey());
+        if (row == null) {
+            return null;
+        }
+        Point stored = destinations[row].getLocation();
+        Point location = pointOfInterest.getLocation();
+        if (stored.x != location.x || stored.y != location.y) {
+            return null;
+        }
+        return row;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.mallmate40;
+
+/**
+ * Chooses how often and how precisely location is sampled during tracking, based on movement.
+ * While the user walks, fixes are requested every second at high accuracy. Once the filtered speed
+ * stays below walking pace for a while, sampling drops to a slow, power-saving rate, and it returns
+ * to the walking rate as soon as the speed picks up or a step is detected.
+ *
+ * <p>Both modes let the location provider batch fixes, so the device can stay asleep between
+ * deliveries instead of waking up for every fix.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class SamplingScheduler {
+
+    /** Speed in m/s below which the user is considered to be standing still */
+    private static final double STATIONARY_SPEED = 0.3;
+
+    /** Speed in m/s above which the user is considered to be walking again */
+    private static final double MOVING_SPEED = 0.7;
+
+    /** Time in milliseconds the speed must stay low before sampling slows down */
+    private static final long STATIONARY_AFTER_MS = 20000;
+
+    /**
+     * Sampling modes and their location request settings.
+     */
+    public enum Mode {
+        /** User is walking - frequent, precise fixes */
+        MOVING(1000, 500, 5000, true),
+
+        /** User is standing still - rare, low-power fixes */
+        STATIONARY(10000, 5000, 30000, false);
+
+        /** Desired interval between fixes in milliseconds */
+        public final long intervalMillis;
+
+        /** Fastest interval at which fixes are accepted in milliseconds */
+        public final long minIntervalMillis;
+
+        /** Maximum time in milliseconds fixes may be held back and delivered as a batch */
+        public final long maxUpdateDelayMillis;
+
+        /** Whether high accuracy, rather than balanced power, is requested */
+        public final boolean highAccuracy;
+
+        /**
+         * Creates a mode.
+         *
+         * @param intervalMillis desired interval between fixes
+         * @param minIntervalMillis fastest accepted interval
+         * @param maxUpdateDelayMillis maximum batching delay
+         * @param highAccuracy whether high accuracy is requested
+         */
+        Mode(long intervalMillis, long minIntervalMillis, long maxUpdateDelayMillis, boolean highAccuracy) {
+            this.intervalMillis = intervalMillis;
+            this.minIntervalMillis = minIntervalMillis;
+            this.maxUpdateDelayMillis = maxUpdateDelayMillis;
+            this.highAccuracy = highAccuracy;
+        }
+    }
+
+    /** The current sampling mode */
+    private Mode mode = Mode.MOVING;
+
+    /** Time in milliseconds since when the speed has been low, or -1 while moving */
+    private long slowSinceMillis = -1;
+
+    /**
+     * Returns the current sampling mode.
+     *
+     * @return the mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Updates the mode with the speed estimated from a new fix.
+     *
+     * @param speed filtered horizontal speed in m/s
+     * @param timeMillis time of the fix in milliseconds
+     * @return true if the mode changed and location updates must be requested again
+     */
+    public boolean onFix(double speed, long timeMillis) {
+        if (mode == Mode.MOVING) {
+            if (speed >= STATIONARY_SPEED) {
+                slowSinceMillis = -1;
+                return false;
+            }
+            if (slowSinceMillis == -1) {
+                slowSinceMillis = timeMillis;
+            }
+            if (timeMillis - slowSinceMillis >= STATIONARY_AFTER_MS) {
+                mode = Mode.STATIONARY;
+                return true;
+            }
+            return false;
+        }
+        if (speed > MOVING_SPEED) {
+            return switchToMoving();
+        }
+        return false;
+    }
+
+    /**
+     * Updates the mode after the step detector reports a step.
+     *
+     * @return true if the mode changed and location updates must be requested again
+     */
+    public boolean onStep() {
+        if (mode == Mode.STATIONARY) {
+            return switchToMoving();
+        }
+        // Still walking, restart the stationary timer
+        slowSinceMillis = -1;
+        return false;
+    }
+
+    /**
+     * Returns to the walking mode, used when tracking starts.
+     */
+    public void reset() {
+        mode = Mode.MOVING;
+        slowSinceMillis = -1;
+    }
+
+    /**
+     * Switches to the walking mode.
+     *
+     * @return always true
+     */
+    private boolean switchToMoving() {
+        mode = Mode.MOVING;
+        slowSinceMillis = -1;
+        return true;
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.mallmate40;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Uniform grid index over geographic points for fast nearest-neighbour and radius queries.
+ * Each entry is stored in the grid cell that contains it, so a query only has to examine
+ * the cells that overlap its search radius instead of every indexed point.
+ *
+ * <p>Positions are projected into a {@link LocalFrame} anchored at the first entry when they are
+ * inserted, so queries compare squared distances in meters without any trigonometry per entry.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class SpatialIndex {
+
+    /** Initial capacity of the entry arrays */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Side length of a grid cell in meters */
+    private final double cellSizeMeters;
+
+    /** Caller-supplied identifier of every entry */
+    private int[] ids = new int[INITIAL_CAPACITY];
+
+    /** Distance east of the frame origin of every entry, in meters */
+    private double[] easts = new double[INITIAL_CAPACITY];
+
+    /** Distance north of the frame origin of every entry, in meters */
+    private double[] norths = new double[INITIAL_CAPACITY];
+
+    /** Altitude of every entry, or NaN if unknown */
+    private double[] alts = new double[INITIAL_CAPACITY];
+
+    /** Number of entries in the index */
+    private int size = 0;
+
+    /** Grid cells keyed by packed cell coordinates. Each cell stores its entry count in the first slot. */
+    private final Map<Long, int[]> cells = new HashMap<>();
+
+    /** Local frame the entries are projected into, anchored at the first entry */
+    private LocalFrame frame;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param cellSizeMeters side length of a grid cell in meters, ideally close to the typical query radius
+     */
+    public SpatialIndex(double cellSizeMeters) {
+        this.cellSizeMeters = cellSizeMeters;
+    }
+
+    /**
+     * Adds a point to the index.
+     *
+     * @param id identifier returned by queries for this point
+     * @param point the point to add, using x as latitude, y as longitude and z as altitude
+     */
+    public void insert(int id, Point point) {
+        insert(id, point.x, point.y, point.z);
+    }
+
+    /**
+     * Adds a position to the index.
+     *
+     * @param id identifier returned by queries for this position
+     * @param lat latitude of the position
+     * @param lng longitude of the position
+     */
+    public void insert(int id, double lat, double lng) {
+        insert(id, lat, lng, Double.NaN);
+    }
+
+    /**
+     * Adds a position with an altitude to the index.
+     *
+     * @param id identifier returned by queries for this position
+     * @param lat latitude of the position
+     * @param lng longitude of the position
+     * @param alt altitude of the position, or NaN if unknown
+     */
+    public void insert(int id, double lat, double lng, double alt) {
+        if (frame == null) {
+            frame = new LocalFrame(lat, lng);
+        }
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            easts = Arrays.copyOf(easts, capacity);
+            norths = Arrays.copyOf(norths, capacity);
+            alts = Arrays.copyOf(alts, capacity);
+        }
+        double east = frame.toEast(lng);
+        double north = frame.toNorth(lat);
+        ids[size] = id;
+        easts[size] = east;
+        norths[size] = north;
+        alts[size] = alt;
+
+        long key = cellKey(cell(east), cell(north));
+        int[] cell = cells.get(key);
+        if (cell == null) {
+            cell = new int[4];
+        } else if (cell[0] + 1 == cell.length) {
+            cell = Arrays.copyOf(cell, cell.length * 2);
+        }
+        cell[++cell[0]] = size;
+        cells.put(key, cell);
+        size++;
+    }
+
+    /**
+     * Returns the number of entries in the index.
+     *
+     * @return the entry count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the entry closest to the given point within a maximum distance.
+     *
+     * @param target the point to search around
+     * @param maxDistanceMeters search radius in meters
+     * @return identifier of the closest entry or -1 if no entry is within the radius
+     */
+    public int nearest(Point target, double maxDistanceMeters) {
+        return nearest(target.x, target.y, maxDistanceMeters);
+    }
+
+    /**
+     * Finds the entry closest to the given position within a maximum distance.
+     *
+     * @param lat latitude of the position
+     * @param lng longitude of the position
+     * @param maxDistanceMeters search radius in meters
+     * @return identifier of the closest entry or -1 if no entry is within the radius
+     */
+    public int nearest(double lat, double lng, double maxDistanceMeters) {
+        return nearest(lat, lng, Double.NaN, maxDistanceMeters, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Finds the entry closest to the given position within a maximum distance, ignoring entries
+     * at a different height, such as on another floor. Entries or positions without an altitude
+     * are never excluded by height.
+     *
+     * @param lat latitude of the position
+     * @param lng longitude of the position
+     * @param alt altitude of the position, or NaN if unknown
+     * @param maxDistanceMeters horizontal search radius in meters
+     * @param maxAltitudeDeltaMeters largest altitude difference in meters of a matching entry
+     * @return identifier of the closest entry or -1 if no entry matches
+     */
+    public int nearest(double lat, double lng, double alt, double maxDistanceMeters, double maxAltitudeDeltaMeters) {
+        if (size == 0) return -1;
+        double east = frame.toEast(lng);
+        double north = frame.toNorth(lat);
+        long centerX = cell(east);
+        long centerY = cell(north);
+        long rings = (long) Math.ceil(maxDistanceMeters / cellSizeMeters);
+
+        int closest = -1;
+        double minDistanceSquared = maxDistanceMeters * maxDistanceMeters;
+        for (long dy = -rings; dy <= rings; dy++) {
+            for (long dx = -rings; dx <= rings; dx++) {
+                int[] cell = cells.get(cellKey(centerX + dx, centerY + dy));
+                if (cell == null) continue;
+                for (int i = 1; i <= cell[0]; i++) {
+                    int entry = cell[i];
+                    if (Math.abs(alts[entry] - alt) > maxAltitudeDeltaMeters) continue;
+                    double distanceSquared = LocalFrame.distanceSquared(easts[entry], norths[entry], east, north);
+                    if (distanceSquared <= minDistanceSquared) {
+                        minDistanceSquared = distanceSquared;
+                        closest = entry;
+                    }
+                }
+            }
+        }
+        return closest == -1 ? -1 : ids[closest];
+    }
+
+    /**
+     * Finds every entry within a radius of the given point.
+     *
+     * @param target the point to search around
+     * @param radiusMeters search radius in meters
+     * @return identifiers of all entries within the radius, in no particular order
+     */
+    public int[] withinRadius(Point target, double radiusMeters) {
+        return withinRadius(target.x, target.y, radiusMeters);
+    }
+
+    /**
+     * Finds every entry within a radius of the given position.
+     *
+     * @param lat latitude of the position
+     * @param lng longitude of the position
+     * @param radiusMeters search radius in meters
+     * @return identifiers of all entries within the radius, in no particular order
+     */
+    public int[] withinRadius(double lat, double lng, double radiusMeters) {
+        if (size == 0) return new int[0];
+        double east = frame.toEast(lng);
+        double north = frame.toNorth(lat);
+        long centerX = cell(east);
+        long centerY = cell(north);
+        long rings = (long) Math.ceil(radiusMeters / cellSizeMeters);
+        double radiusSquared = radiusMeters * radiusMeters;
+
+        int[] result = new int[8];
+        int count = 0;
+        for (long dy = -rings; dy <= rings; dy++) {
+            for (long dx = -rings; dx <= rings; dx++) {
+                int[] cell = cells.get(cellKey(centerX + dx, centerY + dy));
+                if (cell == null) continue;
+                for (int i = 1; i <= cell[0]; i++) {
+                    int entry = cell[i];
+                    if (LocalFrame.distanceSquared(easts[entry], norths[entry], east, north) <= radiusSquared) {
+                        if (count == result.length) {
+                            result = Arrays.copyOf(result, count * 2);
+                        }
+                        result[count++] = ids[entry];
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the grid column or row of a projected coordinate.
+     *
+     * @param meters east or north coordinate in meters
+     * @return grid column or row
+     */
+    private long cell(double meters) {
+        return (long) Math.floor(meters / cellSizeMeters);
+    }
+
+    /**
+     * Packs grid coordinates into a single map key.
+     *
+     * @param cellX grid column
+     * @param cellY grid row
+     * @return packed key
+     */
+    private static long cellKey(long cellX, long cellY) {
+        return (cellY << 32) ^ (cellX & 0xffffffffL);
+    }
+}
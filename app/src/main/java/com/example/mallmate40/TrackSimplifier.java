@@ -0,0 +1,347 @@
+package com.example.mallmate40;
+
+/**
+ * Online simplification stage between the location callback and the recorded {@link Path}.
+ * Fixes are dropped when they are closer than a minimum distance to the previous fix (stationary
+ * jitter). The remaining fixes are buffered in a window that is closed, and its last point kept,
+ * when the track turns by more than a minimum heading change, when a buffered fix strays more than
+ * a tolerance from the straight line across the window (streaming Douglas-Peucker), or when the
+ * window is full or longer than a maximum segment length. The length limit keeps kept points dense
+ * enough for {@link NavigationGraph} to merge crossing recordings and snap users onto the track.
+ *
+ * <p>Altitude counts too, so rides in elevators and on escalators are not simplified away: a fix
+ * that barely moves sideways is still taken when it climbs more than a vertical tolerance, and
+ * the line test measures altitude against the vertical tolerance alongside the horizontal one.
+ * Fixes with an unknown (NaN) altitude are judged horizontally only.</p>
+ *
+ * <p>The stage works on primitive buffers and does not allocate per fix. The most recent fix is
+ * held back until the next one shows whether it is needed; {@link #flush()} releases it.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class TrackSimplifier {
+
+    /** Default minimum distance in meters between consecutive fixes */
+    public static final double DEFAULT_MIN_DISTANCE_METERS = 1.0;
+
+    /** Default heading change in degrees that always keeps the turning point */
+    public static final double DEFAULT_MIN_HEADING_CHANGE_DEGREES = 30.0;
+
+    /** Default maximum distance in meters between a dropped fix and the simplified track */
+    public static final double DEFAULT_TOLERANCE_METERS = 1.0;
+
+    /** Default maximum number of fixes in the window, including the anchor */
+    public static final int DEFAULT_WINDOW_SIZE = 30;
+
+    /** Default maximum distance in meters between consecutive kept fixes */
+    public static final double DEFAULT_MAX_SEGMENT_METERS = 4.0;
+
+    /** Default maximum altitude difference in meters between a dropped fix and the simplified track, the spread of one floor */
+    public static final double DEFAULT_VERTICAL_TOLERANCE_METERS = FloorModel.SAME_FLOOR_TOLERANCE_METERS;
+
+    /**
+     * Receives the fixes kept by the simplifier.
+     */
+    public interface PointSink {
+        /**
+         * Called for every kept fix, in order.
+         *
+         * @param x the x-coordinate (latitude) of the fix
+         * @param y the y-coordinate (longitude) of the fix
+         * @param z the z-coordinate (altitude) of the fix
+         */
+        void onPoint(double x, double y, double z);
+    }
+
+    /** Receiver of the kept fixes */
+    private final PointSink sink;
+
+    /** Squared minimum distance between consecutive fixes */
+    private final double minDistanceSquared;
+
+    /** Cosine of the minimum heading change that keeps a turning point */
+    private final double cosMinHeadingChange;
+
+    /** Squared tolerance of the streaming Douglas-Peucker test */
+    private final double toleranceSquared;
+
+    /** Squared maximum distance between consecutive kept fixes */
+    private final double maxSegmentSquared;
+
+    /** Maximum altitude difference between a fix and the previous one that still counts as jitter */
+    private final double verticalTolerance;
+
+    /** Factor scaling altitudes so the vertical tolerance matches the horizontal one */
+    private final double heightScale;
+
+    /** Latitude of every buffered fix. Slot 0 holds the anchor, the last kept fix. */
+    private final double[] xs;
+
+    /** Longitude of every buffered fix */
+    private final double[] ys;
+
+    /** Altitude of every buffered fix */
+    private final double[] zs;
+
+    /** East offset in meters of every buffered fix in the local frame */
+    private final double[] easts;
+
+    /** North offset in meters of every buffered fix in the local frame */
+    private final double[] norths;
+
+    /** Altitude of every buffered fix scaled by {@link #heightScale}, NaN if unknown */
+    private final double[] heights;
+
+    /** Number of fixes in the buffer, including the anchor */
+    private int count = 0;
+
+    /** Local frame the fixes are projected into, anchored at the first fix */
+    private LocalFrame frame;
+
+    /** Number of fixes passed on to the sink */
+    private int keptCount = 0;
+
+    /** Number of fixes discarded */
+    private int droppedCount = 0;
+
+    /**
+     * Creates a simplifier with the default settings.
+     *
+     * @param sink receiver of the kept fixes
+     */
+    public TrackSimplifier(PointSink sink) {
+        this(sink, DEFAULT_MIN_DISTANCE_METERS, DEFAULT_MIN_HEADING_CHANGE_DEGREES,
+                DEFAULT_TOLERANCE_METERS, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_SEGMENT_METERS,
+                DEFAULT_VERTICAL_TOLERANCE_METERS);
+    }
+
+    /**
+     * Creates a simplifier.
+     *
+     * @param sink receiver of the kept fixes
+     * @param minDistanceMeters fixes closer than this to the previous fix are dropped
+     * @param minHeadingChangeDegrees turns sharper than this always keep the turning point
+     * @param toleranceMeters maximum distance between a dropped fix and the simplified track
+     * @param windowSize maximum number of fixes in the window, at least 3
+     * @param maxSegmentMeters maximum distance between consecutive kept fixes
+     * @param verticalToleranceMeters maximum altitude difference between a dropped fix and the simplified track
+     */
+    public TrackSimplifier(PointSink sink, double minDistanceMeters, double minHeadingChangeDegrees,
+                           double toleranceMeters, int windowSize, double maxSegmentMeters,
+                           double verticalToleranceMeters) {
+        if (windowSize < 3) {
+            throw new IllegalArgumentException("Window size must be at least 3");
+        }
+        this.sink = sink;
+        this.minDistanceSquared = minDistanceMeters * minDistanceMeters;
+        this.cosMinHeadingChange = Math.cos(Math.toRadians(minHeadingChangeDegrees));
+        this.toleranceSquared = toleranceMeters * toleranceMeters;
+        this.maxSegmentSquared = maxSegmentMeters * maxSegmentMeters;
+        this.verticalTolerance = verticalToleranceMeters;
+        this.heightScale = toleranceMeters / verticalToleranceMeters;
+        this.xs = new double[windowSize];
+        this.ys = new double[windowSize];
+        this.zs = new double[windowSize];
+        this.easts = new double[windowSize];
+        this.norths = new double[windowSize];
+        this.heights = new double[windowSize];
+    }
+
+    /**
+     * Offers a new fix to the simplifier.
+     *
+     * @param x the x-coordinate (latitude) of the fix
+     * @param y the y-coordinate (longitude) of the fix
+     * @param z the z-coordinate (altitude) of the fix
+     */
+    public void addPoint(double x, double y, double z) {
+        if (frame == null) {
+            frame = new LocalFrame(x, y);
+        }
+        double east = frame.toEast(y);
+        double north = frame.toNorth(x);
+
+        if (count == 0) {
+            // The first fix becomes the anchor and is always kept
+            put(0, x, y, z, east, north);
+            count = 1;
+            keep(0);
+            return;
+        }
+
+        int last = count - 1;
+        double dEast = east - easts[last];
+        double dNorth = north - norths[last];
+        if (dEast * dEast + dNorth * dNorth < minDistanceSquared && !climbs(zs[last], z)) {
+            droppedCount++;
+            return;
+        }
+
+        if (count >= 2 && (count == xs.length || isTooLong(east, north)
+                || isTurn(last, east, north) || deviates(east, north, z * heightScale))) {
+            // Close the window at the last buffered fix, which becomes the new anchor
+            keep(last);
+            droppedCount += last - 1;
+            put(0, xs[last], ys[last], zs[last], easts[last], norths[last]);
+            count = 1;
+        }
+
+        put(count, x, y, z, east, north);
+        count++;
+    }
+
+    /**
+     * Passes on the fix held back in the window, if any. Called when tracking stops.
+     * The simplifier then starts over with the next fix as its anchor.
+     */
+    public void flush() {
+        if (count >= 2) {
+            int last = count - 1;
+            keep(last);
+            droppedCount += last - 1;
+        }
+        count = 0;
+    }
+
+    /**
+     * Returns the number of fixes passed on to the sink.
+     *
+     * @return the kept fix count
+     */
+    public int getKeptCount() {
+        return keptCount;
+    }
+
+    /**
+     * Returns the number of fixes discarded as jitter or redundant.
+     *
+     * @return the dropped fix count
+     */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Checks whether the altitude changed by more than the vertical tolerance between two fixes.
+     *
+     * @param from altitude of the earlier fix, or NaN if unknown
+     * @param to altitude of the later fix, or NaN if unknown
+     * @return true if both altitudes are known and differ by more than the tolerance
+     */
+    private boolean climbs(double from, double to) {
+        return Math.abs(to - from) > verticalTolerance; // false if either is NaN
+    }
+
+    /**
+     * Checks whether the new fix is farther from the anchor than the maximum segment length.
+     *
+     * @param east east offset of the new fix
+     * @param north north offset of the new fix
+     * @return true if the window must be closed before the new fix
+     */
+    private boolean isTooLong(double east, double north) {
+        double dEast = east - easts[0];
+        double dNorth = north - norths[0];
+        return dEast * dEast + dNorth * dNorth > maxSegmentSquared;
+    }
+
+    /**
+     * Checks whether the track turns at the last buffered fix by more than the minimum heading change.
+     *
+     * @param last index of the last buffered fix
+     * @param east east offset of the new fix
+     * @param north north offset of the new fix
+     * @return true if the turn is sharp enough to keep the last buffered fix
+     */
+    private boolean isTurn(int last, double east, double north) {
+        double ax = easts[last] - easts[last - 1];
+        double ay = norths[last] - norths[last - 1];
+        double bx = east - easts[last];
+        double by = north - norths[last];
+        double lengths = Math.sqrt((ax * ax + ay * ay) * (bx * bx + by * by));
+        if (lengths == 0) return false;
+        return (ax * bx + ay * by) / lengths < cosMinHeadingChange;
+    }
+
+    /**
+     * Checks whether any buffered fix lies farther than the tolerance from the line
+     * between the anchor and the new fix. Altitudes are scaled so the vertical tolerance
+     * matches the horizontal one, and left out when any of the three is unknown.
+     *
+     * @param east east offset of the new fix
+     * @param north north offset of the new fix
+     * @param height scaled altitude of the new fix, or NaN if unknown
+     * @return true if the window can no longer be replaced by a single segment
+     */
+    private boolean deviates(double east, double north, double height) {
+        boolean heightsKnown = !Double.isNaN(heights[0]) && !Double.isNaN(height);
+        for (int i = 1; i < count; i++) {
+            double distanceSquared = heightsKnown && !Double.isNaN(heights[i])
+                    ? segmentDistanceSquared(i, east, north, height)
+                    : PathSimplifier.segmentDistanceSquared(easts[i], norths[i],
+                            easts[0], norths[0], east, north);
+            if (distanceSquared > toleranceSquared) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the squared distance between a buffered fix and the segment from the anchor to
+     * the new fix, with altitudes as the third coordinate.
+     *
+     * @param index index of the buffered fix
+     * @param east east offset of the new fix
+     * @param north north offset of the new fix
+     * @param height scaled altitude of the new fix
+     * @return squared distance in square meters
+     */
+    private double segmentDistanceSquared(int index, double east, double north, double height) {
+        double dx = east - easts[0];
+        double dy = north - norths[0];
+        double dz = height - heights[0];
+        double lengthSquared = dx * dx + dy * dy + dz * dz;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((easts[index] - easts[0]) * dx + (norths[index] - norths[0]) * dy
+                    + (heights[index] - heights[0]) * dz) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double cx = easts[0] + t * dx - easts[index];
+        double cy = norths[0] + t * dy - norths[index];
+        double cz = heights[0] + t * dz - heights[index];
+        return cx * cx + cy * cy + cz * cz;
+    }
+
+    /**
+     * Passes a buffered fix on to the sink.
+     *
+     * @param index index of the buffered fix
+     */
+    private void keep(int index) {
+        keptCount++;
+        sink.onPoint(xs[index], ys[index], zs[index]);
+    }
+
+    /**
+     * Stores a fix in a buffer slot.
+     *
+     * @param index the slot
+     * @param x latitude
+     * @param y longitude
+     * @param z altitude
+     * @param east east offset in the local frame
+     * @param north north offset in the local frame
+     */
+    private void put(int index, double x, double y, double z, double east, double north) {
+        xs[index] = x;
+        ys[index] = y;
+        zs[index] = z;
+        easts[index] = east;
+        norths[index] = north;
+        heights[index] = z * heightScale;
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.mallmate40;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Append-only on-disk journal of the tracking session in progress. Every new point and every
+ * uploaded chunk is appended as a small fixed-size record, so a session interrupted by the
+ * process being killed can be replayed into a {@link Path} and resumed when the service restarts.
+ * A journal left untouched for too long is only saved, not resumed.
+ *
+ * <p>Records are handed to the operating system after every append, which protects against the
+ * process dying. The file is synced to storage only every few seconds and on every chunk upload,
+ * so the per-point cost stays at one buffered write. The file is an {@link AppendLog}, so a
+ * record cut short by the process dying is dropped before the resumed session appends to it.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class TrackingJournal {
+
+    /** Tag used for logging purposes */
+    private static final String TAG = "TrackingJournal";
+
+    /** Name of the journal file inside the app files directory */
+    private static final String FILE_NAME = "tracking_journal.bin";
+
+    /** Value written at the start of the file to identify the journal format */
+    private static final int MAGIC = 0x4D4D4A31; // "MMJ1"
+
+    /** Record type of a collected point */
+    private static final byte RECORD_POINT = 'P';
+
+    /** Record type of an uploaded chunk */
+    private static final byte RECORD_CHUNK = 'C';
+
+    /** Minimum time in milliseconds between syncs of the file to storage */
+    private static final long SYNC_INTERVAL_MS = 5000;
+
+    /** Time in milliseconds since the last record after which a session is too old to resume */
+    private static final long MAX_RESUME_AGE_MS = 15 * 60 * 1000;
+
+    /** The journal file */
+    private final File file;
+
+    /** The journal file, open while a session is journaled */
+    private final AppendLog log;
+
+    /** Time in milliseconds of the last sync to storage */
+    private long lastSyncTime = 0;
+
+    /**
+     * Creates a journal stored in the given directory. No file is created until a session starts.
+     *
+     * @param directory the directory holding the journal file
+     */
+    public TrackingJournal(File directory) {
+        this.file = new File(directory, FILE_NAME);
+        this.log = new AppendLog(file, MAGIC);
+    }
+
+    /**
+     * Checks whether the journal was last written more than {@link #MAX_RESUME_AGE_MS} ago.
+     * A session that old ended long ago, resuming it would join a later walk onto it, so its
+     * points are only saved. Must be called before {@link #recover(DataStore)}, which may
+     * rewrite the file.
+     *
+     * @return true if the journal exists and is too old to resume
+     */
+    public boolean isStale() {
+        return file.exists() && System.currentTimeMillis() - file.lastModified() > MAX_RESUME_AGE_MS;
+    }
+
+    /**
+     * Replays an unfinished session left behind by a previous process.
+     * A record cut short by the process dying is removed from the journal.
+     *
+     * @param dataStore the data store the recovered path is saved to
+     * @return the recovered path with its points and upload progress, or null if there is no unfinished session
+     */
+    public Path recover(DataStore dataStore) {
+        // The first record holds the key of the path, the others its points and chunks
+        final Path[] recovered = new Path[1];
+        log.replay(in -> {
+            if (recovered[0] == null) {
+                recovered[0] = new Path(in.readUTF(), dataStore);
+                return true;
+            }
+            byte type = in.readByte();
+            if (type == RECORD_POINT) {
+                double x = in.readDouble();
+                double y = in.readDouble();
+                double z = in.readDouble();
+                recovered[0].addPoint(x, y, z);
+                return true;
+            } else if (type == RECORD_CHUNK) {
+                recovered[0].restoreFlushedCount(in.readInt());
+                return true;
+            }
+            return false;
+        });
+        Path path = recovered[0];
+        if (path != null) {
+            Log.d(TAG, "Recovered path " + path.getPathId() + " with " + path.size() + " points");
+        }
+        return path;
+    }
+
+    /**
+     * Starts journaling a new session, replacing any previous journal.
+     *
+     * @param path the path being tracked
+     */
+    public void start(Path path) {
+        try {
+            log.rewrite(out -> out.writeUTF(path.getPathId()));
+            lastSyncTime = System.currentTimeMillis();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start journal: " + e.getMessage());
+            log.close();
+        }
+    }
+
+    /**
+     * Continues journaling a recovered session by appending to the existing file.
+     * Must only be called after {@link #recover(DataStore)} has returned a path.
+     */
+    public void resume() {
+        try {
+            log.openForAppend();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to resume journal: " + e.getMessage());
+            log.close();
+        }
+    }
+
+    /**
+     * Appends a collected point.
+     *
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @param z the z-coordinate of the point
+     */
+    public void appendPoint(double x, double y, double z) {
+        if (!log.isOpen()) return;
+        try {
+            log.append(out -> {
+                out.writeByte(RECORD_POINT);
+                out.writeDouble(x);
+                out.writeDouble(y);
+                out.writeDouble(z);
+            });
+            if (System.currentTimeMillis() - lastSyncTime >= SYNC_INTERVAL_MS) {
+                sync();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append point, journaling disabled: " + e.getMessage());
+            log.close();
+        }
+    }
+
+    /**
+     * Appends the upload of a chunk and syncs the journal to storage.
+     *
+     * @param flushedCount total number of points uploaded so far
+     */
+    public void appendChunk(int flushedCount) {
+        if (!log.isOpen()) return;
+        try {
+            log.append(out -> {
+                out.writeByte(RECORD_CHUNK);
+                out.writeInt(flushedCount);
+            });
+            sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append chunk, journaling disabled: " + e.getMessage());
+            log.close();
+        }
+    }
+
+    /**
+     * Ends the session and deletes the journal. Called once the whole path has been handed to the database.
+     */
+    public void finish() {
+        if (!log.delete()) {
+            Log.e(TAG, "Failed to delete journal");
+        }
+    }
+
+    /**
+     * Forces the journaled records to storage.
+     *
+     * @throws IOException if the write fails
+     */
+    private void sync() throws IOException {
+        log.sync();
+        lastSyncTime = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.mallmate40;
+
+/**
+ * Immutable snapshot of the tracking session in progress, published by {@link LocationService}
+ * to its {@link TrackingStatePublisher.Listener listeners}.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public final class TrackingState {
+
+    /** State reported while no session is being tracked */
+    public static final TrackingState IDLE = new TrackingState(false, 0, 0, 0, 0, 0);
+
+    /** Flag indicating whether location tracking is active */
+    private final boolean tracking;
+
+    /** Number of points recorded in the current path */
+    private final int pointCount;
+
+    /** Length of the recorded path in meters */
+    private final double distanceMeters;
+
+    /** Time in milliseconds of {@link android.os.SystemClock#elapsedRealtime()} when tracking started */
+    private final long startTimeMillis;
+
+    /** Time in milliseconds since tracking started */
+    private final long durationMillis;
+
+    /** Estimated horizontal accuracy of the latest location in meters, or 0 if unknown */
+    private final double accuracyMeters;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param tracking whether location tracking is active
+     * @param pointCount number of recorded points
+     * @param distanceMeters length of the recorded path in meters
+     * @param startTimeMillis {@link android.os.SystemClock#elapsedRealtime()} when tracking started
+     * @param durationMillis time since tracking started in milliseconds
+     * @param accuracyMeters estimated accuracy of the latest location in meters
+     */
+    public TrackingState(boolean tracking, int pointCount, double distanceMeters,
+                         long startTimeMillis, long durationMillis, double accuracyMeters) {
+        this.tracking = tracking;
+        this.pointCount = pointCount;
+        this.distanceMeters = distanceMeters;
+        this.startTimeMillis = startTimeMillis;
+        this.durationMillis = durationMillis;
+        this.accuracyMeters = accuracyMeters;
+    }
+
+    /**
+     * Returns this snapshot with the duration brought up to a time, so it keeps counting while
+     * no new fix arrives. A stopped session keeps the duration it ended with.
+     *
+     * @param nowMillis the current {@link android.os.SystemClock#elapsedRealtime()}
+     * @return the snapshot at that time
+     */
+    public TrackingState at(long nowMillis) {
+        if (!tracking) {
+            return this;
+        }
+        return new TrackingState(true, pointCount, distanceMeters, startTimeMillis,
+                nowMillis - startTimeMillis, accuracyMeters);
+    }
+
+    /**
+     * Returns whether location tracking is active.
+     *
+     * @return true while tracking
+     */
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    /**
+     * Returns the number of points recorded in the current path.
+     *
+     * @return the point count
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Returns the length of the recorded path.
+     *
+     * @return distance in meters
+     */
+    public double getDistanceMeters() {
+        return distanceMeters;
+    }
+
+    /**
+     * Returns the time since tracking started.
+     *
+     * @return duration in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Returns the estimated horizontal accuracy of the latest location.
+     *
+     * @return accuracy in meters, or 0 if unknown
+     */
+    public double getAccuracyMeters() {
+        return accuracyMeters;
+    }
+}
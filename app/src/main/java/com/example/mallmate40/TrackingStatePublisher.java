@@ -0,0 +1,144 @@
+package com.example.mallmate40;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pushes {@link TrackingState} updates from the location worker thread to listeners on the main thread.
+ * Updates are coalesced: only the latest state is kept, and it is delivered at most once per
+ * display frame, so a burst of batched fixes costs a single UI update. The duration is derived
+ * from the start time when the state is delivered, and while a session is tracked the state is
+ * delivered again every second, so the duration keeps counting while no fix arrives.
+ *
+ * <p>{@link #publish(TrackingState)} may be called from any thread. Listeners are added, removed
+ * and called on the main thread.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class TrackingStatePublisher {
+
+    /**
+     * Receives tracking state updates on the main thread.
+     */
+    public interface Listener {
+        /**
+         * Called with the latest tracking state.
+         *
+         * @param state the current state
+         */
+        void onTrackingStateChanged(TrackingState state);
+    }
+
+    /** Time in milliseconds after which a tracking state is delivered again without a new fix */
+    private static final long DURATION_TICK_MS = 1000;
+
+    /** Handler used to reach the main thread */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** The most recently published state */
+    private final AtomicReference<TrackingState> latestState = new AtomicReference<>(TrackingState.IDLE);
+
+    /** Flag indicating whether a delivery is already scheduled for the next frame */
+    private final AtomicBoolean deliveryScheduled = new AtomicBoolean(false);
+
+    /** Registered listeners, only accessed on the main thread */
+    private final List<Listener> listeners = new ArrayList<>();
+
+    /** Delivers the latest state when the next frame is drawn */
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> deliver();
+
+    /** Schedules the frame callback, must run on the main thread */
+    private final Runnable scheduleFrame = () -> Choreographer.getInstance().postFrameCallback(frameCallback);
+
+    /** Delivers the state of a tracked session again so its duration advances */
+    private final Runnable durationTick = this::scheduleDelivery;
+
+    /**
+     * Publishes a new state. Replaces any state not delivered yet.
+     *
+     * @param state the new state
+     */
+    public void publish(TrackingState state) {
+        latestState.set(state);
+        scheduleDelivery();
+    }
+
+    /**
+     * Returns the most recently published state, with the duration up to now.
+     *
+     * @return the latest state
+     */
+    public TrackingState getState() {
+        return latestState.get().at(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Registers a listener and immediately passes it the current state. Must be called on the main thread.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+        TrackingState state = getState();
+        listener.onTrackingStateChanged(state);
+        scheduleTick(state);
+    }
+
+    /**
+     * Unregisters a listener. Must be called on the main thread.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) {
+            mainHandler.removeCallbacks(durationTick);
+        }
+    }
+
+    /**
+     * Schedules a delivery of the latest state with the next frame, unless one is scheduled already.
+     * May be called from any thread.
+     */
+    private void scheduleDelivery() {
+        if (deliveryScheduled.compareAndSet(false, true)) {
+            mainHandler.post(scheduleFrame);
+        }
+    }
+
+    /**
+     * Schedules the next delivery of a tracked session without a new fix. Must be called on the main thread.
+     *
+     * @param state the state just delivered
+     */
+    private void scheduleTick(TrackingState state) {
+        mainHandler.removeCallbacks(durationTick);
+        if (state.isTracking() && !listeners.isEmpty()) {
+            mainHandler.postDelayed(durationTick, DURATION_TICK_MS);
+        }
+    }
+
+    /**
+     * Passes the latest state to every listener, with the duration up to the frame.
+     */
+    private void deliver() {
+        // Clear the flag first, a state published from now on schedules another frame
+        deliveryScheduled.set(false);
+        TrackingState state = getState();
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onTrackingStateChanged(state);
+        }
+        scheduleTick(state);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.mallmate40;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A way between two floors, such as a staircase, an escalator or an elevator, stored under the
+ * "connectors" branch of the database. Its two ends are joined in the navigation graph, so routes
+ * can change floors where people actually can, even if no recording walked through it.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public final class VerticalConnector {
+
+    /** Name of the branch holding the connectors */
+    public static final String BRANCH = "connectors";
+
+    /**
+     * Kind of connector, which sets how costly it is to use.
+     */
+    public enum Type {
+        /** Stairs, climbing is slower than walking the same distance */
+        STAIRS(2.0, 0.0),
+        /** Escalator, about as fast as walking, treated as usable in both directions */
+        ESCALATOR(1.0, 5.0),
+        /** Elevator, fast but with a wait */
+        ELEVATOR(0.5, 30.0);
+
+        /** Cost in meters of walking per meter of height */
+        private final double costPerMeterOfHeight;
+
+        /** Fixed cost in meters of using the connector, such as waiting */
+        private final double fixedCost;
+
+        /**
+         * Creates a connector type.
+         *
+         * @param costPerMeterOfHeight cost in meters of walking per meter of height
+         * @param fixedCost fixed cost in meters of using the connector
+         */
+        Type(double costPerMeterOfHeight, double fixedCost) {
+            this.costPerMeterOfHeight = costPerMeterOfHeight;
+            this.fixedCost = fixedCost;
+        }
+
+        /**
+         * Returns the cost of climbing a height with this connector, as an equivalent walking distance.
+         *
+         * @param heightMeters the height climbed or descended in meters
+         * @return cost in meters, added to the horizontal distance
+         */
+        public double climbCost(double heightMeters) {
+            return fixedCost + costPerMeterOfHeight * Math.abs(heightMeters);
+        }
+    }
+
+    /** Kind of connector */
+    private final Type type;
+
+    /** End of the connector on one floor */
+    private final Point from;
+
+    /** End of the connector on the other floor */
+    private final Point to;
+
+    /**
+     * Creates a connector.
+     *
+     * @param type kind of connector
+     * @param from end of the connector on one floor
+     * @param to end of the connector on the other floor
+     */
+    public VerticalConnector(Type type, Point from, Point to) {
+        this.type = type;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Returns the kind of connector.
+     *
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the end of the connector on one floor.
+     *
+     * @return the first end
+     */
+    public Point getFrom() {
+        return from;
+    }
+
+    /**
+     * Returns the end of the connector on the other floor.
+     *
+     * @return the second end
+     */
+    public Point getTo() {
+        return to;
+    }
+
+    /**
+     * Returns the connector as a plain value for a {@link DataStore}.
+     *
+     * @return map with the type and both ends
+     */
+    public Map<String, Object> toValue() {
+        Map<String, Object> value = new TreeMap<>();
+        value.put("type", type.name());
+        value.put("from", from.toValue());
+        value.put("to", to.toValue());
+        return value;
+    }
+
+    /**
+     * Reads a connector from a plain {@link DataStore} value.
+     *
+     * @param value the stored value
+     * @return the connector, or null if the value is not a valid connector
+     */
+    public static VerticalConnector fromValue(Object value) {
+        if (!(value instanceof Map)) {
+            return null;
+        }
+        Map<?, ?> map = (Map<?, ?>) value;
+        Point from = Point.fromValue(map.get("from"));
+        Point to = Point.fromValue(map.get("to"));
+        if (from == null || to == null || !(map.get("type") instanceof String)) {
+            return null;
+        }
+        try {
+            return new VerticalConnector(Type.valueOf((String) map.get("type")), from, to);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.mallmate40;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link AppendLog}: records are replayed in order, a record cut short is truncated
+ * away so records appended afterwards are read in step, and files of another format are refused.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class AppendLogTest {
+
+    /** Format value of the logs written by the tests */
+    private static final int MAGIC = 0x54455354; // "TEST"
+
+    /** Directory holding the log files, deleted after every test */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Appended and rewritten records are replayed in order.
+     */
+    @Test
+    public void replaysRecords() throws IOException {
+        File file = new File(folder.getRoot(), "log.bin");
+        AppendLog log = new AppendLog(file, MAGIC);
+        log.rewrite(out -> out.writeInt(1));
+        log.append(out -> {
+            out.writeInt(2);
+            out.writeInt(3);
+        });
+        log.close();
+
+        assertEquals(Arrays.asList(1, 2, 3), replayInts(new AppendLog(file, MAGIC), 3));
+    }
+
+    /**
+     * A record cut short is dropped, and a record appended after replay is read in step.
+     */
+    @Test
+    public void truncatesTornTail() throws IOException {
+        File file = new File(folder.getRoot(), "log.bin");
+        AppendLog log = new AppendLog(file, MAGIC);
+        log.rewrite(out -> {
+            out.writeInt(1);
+            out.writeInt(2);
+        });
+        log.close();
+        long complete = file.length();
+        // Half of a third record, as left by a process killed while appending
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0, 0});
+        }
+
+        AppendLog reopened = new AppendLog(file, MAGIC);
+        assertEquals(Arrays.asList(1, 2), replayInts(reopened, 2));
+        assertEquals(complete, file.length());
+
+        reopened.openForAppend();
+        reopened.append(out -> out.writeInt(4));
+        reopened.close();
+        assertEquals(Arrays.asList(1, 2, 4), replayInts(new AppendLog(file, MAGIC), 3));
+    }
+
+    /**
+     * A record the reader does not understand ends the replay and is truncated away.
+     */
+    @Test
+    public void truncatesUnknownRecord() throws IOException {
+        File file = new File(folder.getRoot(), "log.bin");
+        AppendLog log = new AppendLog(file, MAGIC);
+        log.rewrite(out -> {
+            out.writeInt(1);
+            out.writeInt(-1);
+            out.writeInt(2);
+        });
+        log.close();
+
+        List<Integer> values = new ArrayList<>();
+        int records = new AppendLog(file, MAGIC).replay(in -> {
+            int value = in.readInt();
+            if (value < 0) return false;
+            values.add(value);
+            return true;
+        });
+        assertEquals(1, records);
+        assertEquals(Arrays.asList(1), values);
+        assertEquals(8, file.length());
+    }
+
+    /**
+     * Missing files and files of another format are not replayed.
+     */
+    @Test
+    public void refusesMissingAndForeignFiles() throws IOException {
+        File file = new File(folder.getRoot(), "log.bin");
+        assertEquals(-1, new AppendLog(file, MAGIC).replay(in -> true));
+
+        AppendLog other = new AppendLog(file, MAGIC + 1);
+        other.rewrite(out -> out.writeInt(1));
+        other.close();
+        assertEquals(-1, new AppendLog(file, MAGIC).replay(in -> true));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(2);
+        }
+        assertEquals(-1, new AppendLog(file, MAGIC).replay(in -> true));
+    }
+
+    /**
+     * A deleted log is closed and gone.
+     */
+    @Test
+    public void deletes() throws IOException {
+        File file = new File(folder.getRoot(), "log.bin");
+        AppendLog log = new AppendLog(file, MAGIC);
+        log.rewrite(out -> out.writeInt(1));
+        assertTrue(log.isOpen());
+        assertTrue(log.delete());
+        assertFalse(log.isOpen());
+        assertFalse(file.exists());
+    }
+
+    /**
+     * Replays a log of integer records.
+     *
+     * @param log the log
+     * @param expectedRecords number of records the replay should report
+     * @return the replayed values
+     */
+    private static List<Integer> replayInts(AppendLog log, int expectedRecords) {
+        List<Integer> values = new ArrayList<>();
+        assertEquals(expectedRecords, log.replay(in -> {
+            values.add(in.readInt());
+            return true;
+        }));
+        return values;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.mallmate40;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link GeoHash}: positions encode to the standard geohash, a hash covers the
+ * positions encoded to it, and the tiles around a position are its own tile and its neighbours.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class GeoHashTest {
+
+    /**
+     * Known positions encode to their published geohashes.
+     */
+    @Test
+    public void encodesKnownPositions() {
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals("ezs42", GeoHash.encode(42.605, -5.603, 5));
+    }
+
+    /**
+     * The bounds of a hash contain every position encoded to it, and shorter hashes are prefixes.
+     */
+    @Test
+    public void boundsContainPosition() {
+        double lat = 32.0853;
+        double lng = 34.7818;
+        for (int precision = 1; precision <= 9; precision++) {
+            String hash = GeoHash.encode(lat, lng, precision);
+            double[] bounds = GeoHash.bounds(hash);
+            assertTrue(bounds[0] <= lat && lat <= bounds[2]);
+            assertTrue(bounds[1] <= lng && lng <= bounds[3]);
+            assertTrue(GeoHash.encode(lat, lng, 9).startsWith(hash));
+        }
+        assertThrows(IllegalArgumentException.class, () -> GeoHash.bounds("sv8a"));
+    }
+
+    /**
+     * A position sees its own tile first and its eight distinct neighbours, which touch it.
+     */
+    @Test
+    public void tilesAroundAreNeighbours() {
+        double lat = 32.0853;
+        double lng = 34.7818;
+        Set<String> tiles = GeoHash.tilesAround(lat, lng, GeoHash.TILE_PRECISION);
+        assertEquals(9, tiles.size());
+        assertEquals(GeoHash.tileOf(lat, lng), tiles.iterator().next());
+
+        double[] own = GeoHash.bounds(GeoHash.tileOf(lat, lng));
+        for (String tile : tiles) {
+            double[] bounds = GeoHash.bounds(tile);
+            assertTrue(bounds[0] <= own[2] + 1e-9 && bounds[2] >= own[0] - 1e-9);
+            assertTrue(bounds[1] <= own[3] + 1e-9 && bounds[3] >= own[1] - 1e-9);
+        }
+    }
+
+    /**
+     * Tiles at the antimeridian wrap around, and tiles at the poles have no neighbours beyond them.
+     */
+    @Test
+    public void tilesAroundEdges() {
+        Set<String> antimeridian = GeoHash.tilesAround(0.01, 179.999, GeoHash.TILE_PRECISION);
+        assertEquals(9, antimeridian.size());
+        Set<String> hemispheres = new HashSet<>();
+        for (String tile : antimeridian) {
+            hemispheres.add(GeoHash.bounds(tile)[1] < 0 ? "west" : "east");
+        }
+        assertEquals(2, hemispheres.size());
+
+        assertEquals(6, GeoHash.tilesAround(89.999, 0.01, GeoHash.TILE_PRECISION).size());
+    }
+}
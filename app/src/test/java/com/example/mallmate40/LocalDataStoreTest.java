@@ -0,0 +1,152 @@
+package com.example.mallmate40;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Unit tests of the log of {@link LocalDataStore}: values survive a record round trip, replay
+ * rebuilds the tree, and torn or corrupt records end the replay without losing the records
+ * before them.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class LocalDataStoreTest {
+
+    /** Format value of the logs written by the tests */
+    private static final int MAGIC = 0x54455354; // "TEST"
+
+    /** Type tag of string values in the log encoding */
+    private static final byte TYPE_STRING = 1;
+
+    /** Directory holding the log files, deleted after every test */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Every supported value type is read back as written, integers as longs.
+     */
+    @Test
+    public void recordRoundTrip() throws IOException {
+        Map<String, Object> nested = new TreeMap<>();
+        nested.put("flag", true);
+        nested.put("name", "שלום");
+        Map<String, Object> updates = new LinkedHashMap<>();
+        updates.put("paths/a/count", 7);
+        updates.put("paths/a/length", 12.5);
+        updates.put("paths/a/meta", nested);
+        updates.put("paths/b", null);
+
+        Map<String, Object> read = LocalDataStore.readRecord(
+                new DataInputStream(new ByteArrayInputStream(encode(updates))));
+
+        assertEquals(Arrays.asList("paths/a/count", "paths/a/length", "paths/a/meta", "paths/b"),
+                Arrays.asList(read.keySet().toArray()));
+        assertEquals(7L, read.get("paths/a/count"));
+        assertEquals(12.5, read.get("paths/a/length"));
+        assertEquals(nested, read.get("paths/a/meta"));
+        assertNull(read.get("paths/b"));
+    }
+
+    /**
+     * A record cut short is dropped, and records appended after replay are read in step.
+     */
+    @Test
+    public void replayTruncatesTornTail() throws IOException {
+        File file = new File(folder.getRoot(), "local.bin");
+        AppendLog log = new AppendLog(file, MAGIC);
+        log.rewrite(out -> {
+            LocalDataStore.writeRecord(out, update("paths/a/0", "first"));
+            LocalDataStore.writeRecord(out, update("paths/a/1", "second"));
+        });
+        log.close();
+        byte[] torn = encode(update("paths/a/2", "third"));
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(torn, 0, torn.length - 3);
+        }
+
+        Map<String, Object> tree = new TreeMap<>();
+        AppendLog reopened = new AppendLog(file, MAGIC);
+        assertEquals(2, LocalDataStore.replay(reopened, tree));
+        assertEquals("second", LocalDataStore.getNode(tree, "paths/a/1"));
+        assertNull(LocalDataStore.getNode(tree, "paths/a/2"));
+
+        reopened.openForAppend();
+        reopened.append(out -> LocalDataStore.writeRecord(out, update("paths/a/3", "fourth")));
+        reopened.close();
+        tree.clear();
+        assertEquals(3, LocalDataStore.replay(new AppendLog(file, MAGIC), tree));
+        assertEquals("first", LocalDataStore.getNode(tree, "paths/a/0"));
+        assertEquals("fourth", LocalDataStore.getNode(tree, "paths/a/3"));
+    }
+
+    /**
+     * Negative or oversized lengths are treated as corruption instead of being allocated.
+     */
+    @Test
+    public void replayStopsAtCorruptLength() throws IOException {
+        for (int length : new int[]{-1, Integer.MAX_VALUE}) {
+            File file = new File(folder.getRoot(), "local" + length + ".bin");
+            AppendLog log = new AppendLog(file, MAGIC);
+            log.rewrite(out -> {
+                LocalDataStore.writeRecord(out, update("poi/a", "kept"));
+                out.writeInt(1);
+                out.writeUTF("poi/b");
+                out.writeByte(TYPE_STRING);
+                out.writeInt(length);
+            });
+            log.close();
+
+            Map<String, Object> tree = new TreeMap<>();
+            assertEquals(1, LocalDataStore.replay(new AppendLog(file, MAGIC), tree));
+            assertEquals("kept", LocalDataStore.getNode(tree, "poi/a"));
+        }
+
+        byte[] negativeCount = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+        assertThrows(IOException.class, () -> LocalDataStore.readRecord(
+                new DataInputStream(new ByteArrayInputStream(negativeCount))));
+    }
+
+    /**
+     * Returns a single value keyed by its path.
+     *
+     * @param path the path
+     * @param value the value
+     * @return the update
+     */
+    private static Map<String, Object> update(String path, Object value) {
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put(path, value);
+        return update;
+    }
+
+    /**
+     * Encodes a record.
+     *
+     * @param updates values keyed by their path
+     * @return the bytes of the record
+     */
+    private static byte[] encode(Map<String, Object> updates) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LocalDataStore.writeRecord(new DataOutputStream(bytes), updates);
+        return bytes.toByteArray();
+    }
+}
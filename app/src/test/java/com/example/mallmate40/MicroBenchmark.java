@@ -0,0 +1,176 @@
+package com.example.mallmate40;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Minimal microbenchmark harness for the local JVM, with no device or extra dependency needed.
+ * Every benchmark is warmed up, then measured over several timed rounds, and the median round
+ * is reported in nanoseconds and allocated bytes per operation.
+ *
+ * <p>Operations return a value that is folded into a sink, so the JIT cannot remove the work
+ * being measured. Allocations are read from the per-thread counter of the HotSpot JVM and are
+ * reported as -1 where it is not available.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+final class MicroBenchmark {
+
+    /** Time spent warming up each benchmark, in nanoseconds */
+    private static final long WARMUP_NANOS = 300_000_000L;
+
+    /** Target duration of one measured round, in nanoseconds */
+    private static final long ROUND_NANOS = 100_000_000L;
+
+    /** Number of measured rounds, the median of which is reported */
+    private static final int ROUNDS = 5;
+
+    /** Directory the result files are written to, relative to the module */
+    private static final String REPORT_DIR = "build/reports/benchmarks";
+
+    /**
+     * A single operation to measure.
+     */
+    interface Operation {
+        /**
+         * Runs the operation once.
+         *
+         * @param iteration number of the call, to vary the input between calls
+         * @return any value derived from the result, kept so the work is not optimized away
+         */
+        long run(int iteration);
+    }
+
+    /** Name of the suite, used for the result file */
+    private final String suite;
+
+    /** Result lines in the order they were measured */
+    private final List<String> results = new ArrayList<>();
+
+    /** Thread bean used to read allocated bytes */
+    private final com.sun.management.ThreadMXBean allocationBean;
+
+    /** Sum of every operation result, read at the end so no result is dead */
+    private long sink = 0;
+
+    /**
+     * Creates a harness for a suite of benchmarks.
+     *
+     * @param suite name of the suite
+     */
+    MicroBenchmark(String suite) {
+        this.suite = suite;
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocation = null;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            allocation = (com.sun.management.ThreadMXBean) bean;
+            if (!allocation.isThreadAllocatedMemorySupported()) {
+                allocation = null;
+            } else {
+                allocation.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        this.allocationBean = allocation;
+    }
+
+    /**
+     * Measures an operation and records the result.
+     *
+     * @param name name of the benchmark, such as "graph.findRoute"
+     * @param dataset description of the input, such as "paths=1000"
+     * @param operation the operation to measure
+     */
+    void measure(String name, String dataset, Operation operation) {
+        // Warm up and find how many calls fill a round
+        int calls = 1;
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        long elapsed;
+        do {
+            long start = System.nanoTime();
+            runCalls(operation, calls);
+            elapsed = System.nanoTime() - start;
+            if (elapsed < ROUND_NANOS / 10 && calls < Integer.MAX_VALUE / 2) {
+                calls *= 2;
+            }
+        } while (System.nanoTime() < warmupEnd);
+        calls = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (long) calls * ROUND_NANOS / Math.max(1, elapsed)));
+
+        double[] nanosPerOp = new double[ROUNDS];
+        double[] bytesPerOp = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            runCalls(operation, calls);
+            long nanos = System.nanoTime() - start;
+            long bytesAfter = allocatedBytes();
+            nanosPerOp[round] = (double) nanos / calls;
+            bytesPerOp[round] = bytesBefore < 0 ? -1 : (double) (bytesAfter - bytesBefore) / calls;
+        }
+        Arrays.sort(nanosPerOp);
+        Arrays.sort(bytesPerOp);
+
+        String line = String.format(Locale.US, "%-34s %-14s %14.1f ns/op %12.1f B/op",
+                name, dataset, nanosPerOp[ROUNDS / 2], bytesPerOp[ROUNDS / 2]);
+        System.out.println(suite + ": " + line);
+        results.add(String.format(Locale.US, "%s,%s,%.1f,%.1f",
+                name, dataset, nanosPerOp[ROUNDS / 2], bytesPerOp[ROUNDS / 2]));
+    }
+
+    /**
+     * Writes the recorded results to {@code build/reports/benchmarks/<suite>.csv},
+     * so runs before and after a change can be compared.
+     */
+    void writeReport() {
+        File dir = new File(REPORT_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("Cannot create " + dir.getAbsolutePath());
+            return;
+        }
+        File file = new File(dir, suite + ".csv");
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            out.println("benchmark,dataset,ns_per_op,bytes_per_op");
+            for (String line : results) {
+                out.println(line);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write " + file + ": " + e.getMessage());
+        }
+        System.out.println(suite + ": results written to " + file.getAbsolutePath() + " (sink " + sink + ")");
+    }
+
+    /**
+     * Runs an operation a number of times, folding the results into the sink.
+     *
+     * @param operation the operation to run
+     * @param calls number of calls
+     */
+    private void runCalls(Operation operation, int calls) {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += operation.run(i);
+        }
+        sink += sum;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread.
+     *
+     * @return allocated bytes, or -1 if the JVM cannot report them
+     */
+    private long allocatedBytes() {
+        if (allocationBean == null) {
+            return -1;
+        }
+        return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.mallmate40;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Microbenchmarks of the geometry and matching routines on the navigation path, run on the local
+ * JVM over synthetic malls of growing size. Each routine is reported in ns/op and B/op next to
+ * the linear scan the app used before the spatial index and navigation graph, so a regression in
+ * navigation latency shows up as a change in the report.
+ *
+ * <p>The dataset sizes come from the {@code benchmark.sizes} system property, a comma separated
+ * list of path counts. The Gradle build leaves the benchmarks out of the unit test run unless
+ * the property is given, e.g.
+ * {@code ./gradlew testDebugUnitTest --tests '*NavigationBenchmark' -Pbenchmark.sizes=10,100,1000,10000,100000}.
+ * Run from the IDE without the property, the default sizes are used.
+ * Results are printed and written to {@code app/build/reports/benchmarks/NavigationBenchmark.csv}.</p>
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class NavigationBenchmark {
+
+    /** Path counts benchmarked when no sizes are given */
+    private static final String DEFAULT_SIZES = "10,100,1000";
+
+    /** Search radius used by the app when matching a point to a path, in meters */
+    private static final double MATCH_RADIUS_METERS = 5.0;
+
+    /** Number of query points, cycled through so results do not depend on one lucky point */
+    private static final int QUERY_COUNT = 256;
+
+    /** Largest number of distinct paths decoded by the per-path benchmarks */
+    private static final int DECODE_SAMPLE = 1000;
+
+    /** Number of destinations in the route table */
+    private static final int ROUTE_TABLE_DESTINATIONS = 20;
+
+    /** Shared harness collecting the results of every test */
+    private static MicroBenchmark benchmark;
+
+    /**
+     * Creates the harness before the first benchmark.
+     */
+    @BeforeClass
+    public static void setUp() {
+        benchmark = new MicroBenchmark("NavigationBenchmark");
+    }
+
+    /**
+     * Writes the report after the last benchmark.
+     */
+    @AfterClass
+    public static void tearDown() {
+        benchmark.writeReport();
+    }
+
+    /**
+     * Measures the exact haversine distance against the squared distance in a local frame
+     * used by the hot loops.
+     */
+    @Test
+    public void distanceKernels() {
+        Point[] queries = createQueries(1);
+        LocalFrame frame = new LocalFrame(SyntheticMall.ORIGIN_LAT, SyntheticMall.ORIGIN_LNG);
+        double[] easts = new double[QUERY_COUNT];
+        double[] norths = new double[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            easts[i] = frame.toEast(queries[i].y);
+            norths[i] = frame.toNorth(queries[i].x);
+        }
+        benchmark.measure("GeoMath.haversineDistanceMeters", "-", i -> {
+            Point a = queries[i & (QUERY_COUNT - 1)];
+            Point b = queries[(i + 1) & (QUERY_COUNT - 1)];
+            return (long) GeoMath.haversineDistanceMeters(a.x, a.y, b.x, b.y);
+        });
+        benchmark.measure("LocalFrame.distanceSquared", "-", i -> {
+            int a = i & (QUERY_COUNT - 1);
+            int b = (i + 1) & (QUERY_COUNT - 1);
+            return (long) LocalFrame.distanceSquared(easts[a], norths[a], easts[b], norths[b]);
+        });
+    }
+
+    /**
+     * Measures matching a point to a recorded path, through the spatial index of {@link Path}
+     * and through the linear scan it replaced, on a recording holding every point of the mall.
+     */
+    @Test
+    public void findClosestPointIndex() {
+        for (int size : getSizes()) {
+            SyntheticMall mall = new SyntheticMall(size, size);
+            List<Point> points = new ArrayList<>(mall.pointCount);
+            Path path = new Path("benchmark", null);
+            for (int p = 0; p < mall.size(); p++) {
+                for (int i = 0; i < mall.lats[p].length; i++) {
+                    points.add(new Point(mall.lats[p][i], mall.lngs[p][i], mall.alts[p][i]));
+                    path.addPoint(mall.lats[p][i], mall.lngs[p][i], mall.alts[p][i]);
+                }
+            }
+            Point[] queries = createQueries(size);
+
+            // The index must find the point a full scan of the same floor finds
+            for (Point query : queries) {
+                assertEquals(scanSameFloor(points, query, MATCH_RADIUS_METERS),
+                        path.findClosestPointIndex(query, MATCH_RADIUS_METERS));
+            }
+
+            String dataset = "points=" + mall.pointCount;
+            benchmark.measure("Path.findClosestPointIndex", dataset,
+                    i -> path.findClosestPointIndex(queries[i & (QUERY_COUNT - 1)], MATCH_RADIUS_METERS));
+            benchmark.measure("legacy.findClosestPointIndex", dataset,
+                    i -> legacyFindClosestPointIndex(points, queries[i & (QUERY_COUNT - 1)], MATCH_RADIUS_METERS));
+        }
+    }
+
+    /**
+     * Measures finding where a start and a destination lie on the recorded paths: the linear
+     * scan over every path used before, against a lookup in the merged navigation graph.
+     */
+    @Test
+    public void findPointIndices() {
+        for (int size : getSizes()) {
+            SyntheticMall mall = new SyntheticMall(size, size);
+            List<List<Point>> paths = new ArrayList<>(mall.size());
+            NavigationGraph graph = new NavigationGraph();
+            for (int p = 0; p < mall.size(); p++) {
+                List<Point> points = mall.getPath(p);
+                paths.add(points);
+                graph.addPath(points);
+            }
+            Point[] queries = createQueries(size);
+
+            String dataset = "paths=" + size;
+            benchmark.measure("graph.findNearestNode x2", dataset, i -> {
+                Point start = queries[i & (QUERY_COUNT - 1)];
+                Point end = queries[(i + 1) & (QUERY_COUNT - 1)];
+                return graph.findNearestNode(start, MATCH_RADIUS_METERS)
+                        + graph.findNearestNode(end, MATCH_RADIUS_METERS);
+            });
+            benchmark.measure("legacy.findPointIndices", dataset, i -> {
+                Point start = queries[i & (QUERY_COUNT - 1)];
+                Point end = queries[(i + 1) & (QUERY_COUNT - 1)];
+                for (List<Point> points : paths) {
+                    int[] indices = legacyFindPointIndices(points, start, end);
+                    if (indices != null) {
+                        return indices[0] + indices[1];
+                    }
+                }
+                return -1;
+            });
+        }
+    }
+
+    /**
+     * Measures building the navigation graph and routing over it, by A* and by the route table.
+     */
+    @Test
+    public void routing() {
+        for (int size : getSizes()) {
+            SyntheticMall mall = new SyntheticMall(size, size);
+            List<List<Point>> paths = new ArrayList<>(mall.size());
+            for (int p = 0; p < mall.size(); p++) {
+                paths.add(mall.getPath(p));
+            }
+            Point[] queries = createQueries(size);
+
+            String dataset = "paths=" + size;
+            List<VerticalConnector> connectors = new ArrayList<>();
+            benchmark.measure("graph.build", dataset,
+                    i -> NavigationGraph.build(paths, connectors).getNodeCount());
+
+            NavigationGraph graph = NavigationGraph.build(paths, connectors);
+
+            // Streaming the compact form must give the graph of its decoded points
+            List<EncodedPath> encodedPaths = new ArrayList<>(paths.size());
+            List<List<Point>> decodedPaths = new ArrayList<>(paths.size());
+            for (List<Point> points : paths) {
+                EncodedPath encodedPath = EncodedPath.fromPoints(points);
+                encodedPaths.add(encodedPath);
+                decodedPaths.add(encodedPath.getPoints());
+            }
+            assertEquals(NavigationGraph.build(decodedPaths, connectors).getEdgeCount(),
+                    NavigationGraph.buildFromEncoded(encodedPaths, connectors).getEdgeCount());
+            benchmark.measure("graph.buildFromEncoded", dataset,
+                    i -> NavigationGraph.buildFromEncoded(encodedPaths, connectors).getNodeCount());
+
+            benchmark.measure("graph.findRoute", dataset, i -> {
+                List<Point> route = graph.findRoute(queries[i & (QUERY_COUNT - 1)],
+                        queries[(i + 1) & (QUERY_COUNT - 1)], MATCH_RADIUS_METERS);
+                return route == null ? -1 : route.size();
+            });
+
+            List<PointOfInterest> destinations = new ArrayList<>();
+            for (int d = 0; d < ROUTE_TABLE_DESTINATIONS; d++) {
+                destinations.add(new PointOfInterest("poi" + d, queries[d]));
+            }
+            RouteTable table = new RouteTable(graph, destinations, MATCH_RADIUS_METERS);
+            benchmark.measure("RouteTable.findRoute", dataset, i -> {
+                List<Point> route = table.findRoute(queries[i & (QUERY_COUNT - 1)],
+                        destinations.get(i % ROUTE_TABLE_DESTINATIONS), MATCH_RADIUS_METERS);
+                return route == null ? -1 : route.size();
+            });
+        }
+    }
+
+    /**
+     * Measures reading a recorded path from the data store, in the legacy point-per-key layout
+     * and in the compact encoding of {@link PathCodec}, and rejecting paths far from an area by
+     * their bounding box without decoding them.
+     */
+    @Test
+    public void decodePaths() {
+        for (int size : getSizes()) {
+            SyntheticMall mall = new SyntheticMall(size, size);
+            int sample = Math.min(size, DECODE_SAMPLE);
+            List<Map<String, Object>> legacyValues = new ArrayList<>(sample);
+            List<byte[]> encoded = new ArrayList<>(sample);
+            for (int p = 0; p < sample; p++) {
+                legacyValues.add(mall.getLegacyPathValue(p));
+                encoded.add(PathCodec.encode(mall.getPath(p)));
+            }
+
+            String dataset = "paths=" + size;
+            benchmark.measure("PathStore.extractOrderedPoints", dataset,
+                    i -> PathStore.extractOrderedPoints(legacyValues.get(i % sample)).size());
+            benchmark.measure("PathCodec.decode", dataset,
+                    i -> PathCodec.decode(encoded.get(i % sample)).size());
+
+            List<EncodedPath> encodedPaths = new ArrayList<>(size);
+            for (int p = 0; p < size; p++) {
+                encodedPaths.add(EncodedPath.fromPoints(mall.getPath(p)));
+            }
+            List<double[]> areas = new ArrayList<>();
+            areas.add(GeoHash.bounds(GeoHash.tileOf(SyntheticMall.ORIGIN_LAT, SyntheticMall.ORIGIN_LNG)));
+            benchmark.measure("PathStore.selectCandidates", dataset,
+                    i -> PathStore.selectCandidates(encodedPaths, areas).size());
+        }
+    }
+
+    /**
+     * Returns the dataset sizes to benchmark.
+     *
+     * @return path counts, smallest first as given
+     */
+    private static int[] getSizes() {
+        String[] parts = System.getProperty("benchmark.sizes", DEFAULT_SIZES).split(",");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i].trim());
+        }
+        return sizes;
+    }
+
+    /**
+     * Creates reproducible query points on the corridors of the mall.
+     *
+     * @param seed seed of the random generator
+     * @return {@link #QUERY_COUNT} points
+     */
+    private static Point[] createQueries(long seed) {
+        Random random = new Random(seed * 31 + 7);
+        Point[] queries = new Point[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = SyntheticMall.randomCorridorPoint(random);
+        }
+        return queries;
+    }
+
+    /**
+     * Finds the closest point on the same floor by scanning every point, the reference result
+     * for the spatial index.
+     *
+     * @param pathPoints list of route points
+     * @param target target point
+     * @param thresholdMeters search radius in meters
+     * @return index of the closest point or -1 if not found within radius
+     */
+    private static int scanSameFloor(List<Point> pathPoints, Point target, double thresholdMeters) {
+        int closestIndex = -1;
+        double minDistance = thresholdMeters;
+        for (int i = 0; i < pathPoints.size(); i++) {
+            Point p = pathPoints.get(i);
+            if (Math.abs(p.z - target.z) > FloorModel.SAME_FLOOR_TOLERANCE_METERS) continue;
+            double dist = GeoMath.haversineDistanceMeters(p.x, p.y, target.x, target.y);
+            if (dist <= minDistance) {
+                minDistance = dist;
+                closestIndex = i;
+            }
+        }
+        return closestIndex;
+    }
+
+    /**
+     * Finds the indices of the closest points in a route, as the app did before the navigation graph.
+     *
+     * @param pathPoints route points
+     * @param point1 first point to search for
+     * @param point2 second point to search for
+     * @return array of two indices or null if no close points found
+     */
+    private static int[] legacyFindPointIndices(List<Point> pathPoints, Point point1, Point point2) {
+        int index1 = legacyFindClosestPointIndex(pathPoints, point1, MATCH_RADIUS_METERS);
+        int index2 = legacyFindClosestPointIndex(pathPoints, point2, MATCH_RADIUS_METERS);
+        return (index1 != -1 && index2 != -1) ? new int[]{index1, index2} : null;
+    }
+
+    /**
+     * Finds the closest point in a route by scanning every point, as the app did before the spatial index.
+     *
+     * @param pathPoints list of route points
+     * @param target target point
+     * @param thresholdMeters search radius in meters
+     * @return index of the closest point or -1 if not found within radius
+     */
+    private static int legacyFindClosestPointIndex(List<Point> pathPoints, Point target, double thresholdMeters) {
+        int closestIndex = -1;
+        double minDistance = Double.MAX_VALUE;
+        for (int i = 0; i < pathPoints.size(); i++) {
+            Point p = pathPoints.get(i);
+            double dist = GeoMath.haversineDistanceMeters(p.x, p.y, target.x, target.y);
+            if (dist < minDistance) {
+                minDistance = dist;
+                closestIndex = i;
+            }
+        }
+        // Only accept if within threshold
+        if (minDistance > thresholdMeters) return -1;
+        return closestIndex;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.mallmate40;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Unit tests of the log of {@link OutboundQueue}: replay restores the writes still waiting in
+ * write order and in their groups, and a torn or unknown record ends the replay without losing
+ * the writes before it.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class OutboundQueueTest {
+
+    /** Format value of the logs written by the tests */
+    private static final int MAGIC = 0x54455354; // "TEST"
+
+    /** Directory holding the log files, deleted after every test */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Confirmed writes are removed, and a write above queued paths absorbs them.
+     */
+    @Test
+    public void replayRestoresPendingWrites() throws IOException {
+        File file = new File(folder.getRoot(), "queue.bin");
+        AppendLog log = new AppendLog(file, MAGIC);
+        log.rewrite(out -> {
+            writeRecord(out, OutboundQueue.RECORD_QUEUED, update("paths/a/c0", "chunk0"));
+            writeRecord(out, OutboundQueue.RECORD_QUEUED, update("poi/shop", "location"));
+            writeRecord(out, OutboundQueue.RECORD_SENT, update("poi/shop", null));
+            writeRecord(out, OutboundQueue.RECORD_QUEUED, update("paths/a/c1", "chunk1"));
+            writeRecord(out, OutboundQueue.RECORD_QUEUED, update("paths/b", "path"));
+        });
+        log.close();
+
+        Map<String, Object> queue = new LinkedHashMap<>();
+        assertEquals(5, OutboundQueue.replay(new AppendLog(file, MAGIC), queue, new HashMap<>()));
+        assertEquals(Arrays.asList("paths/a/c0", "paths/a/c1", "paths/b"), Arrays.asList(queue.keySet().toArray()));
+        assertEquals("chunk1", queue.get("paths/a/c1"));
+    }
+
+    /**
+     * A record cut short is dropped, and records appended after replay are read in step.
+     */
+    @Test
+    public void replayTruncatesTornTail() throws IOException {
+        File file = new File(folder.getRoot(), "queue.bin");
+        AppendLog log = new AppendLog(file, MAGIC);
+        log.rewrite(out -> writeRecord(out, OutboundQueue.RECORD_QUEUED, update("paths/a/c0", "chunk0")));
+        log.close();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            // Record type and half of the record size
+            out.write(new byte[]{OutboundQueue.RECORD_QUEUED, 0, 0});
+        }
+
+        Map<String, Object> queue = new LinkedHashMap<>();
+        AppendLog reopened = new AppendLog(file, MAGIC);
+        assertEquals(1, OutboundQueue.replay(reopened, queue, new HashMap<>()));
+
+        reopened.openForAppend();
+        reopened.append(out -> writeRecord(out, OutboundQueue.RECORD_QUEUED, update("paths/a/c1", "chunk1")));
+        reopened.close();
+        queue.clear();
+        assertEquals(2, OutboundQueue.replay(new AppendLog(file, MAGIC), queue, new HashMap<>()));
+        assertEquals(Arrays.asList("paths/a/c0", "paths/a/c1"), Arrays.asList(queue.keySet().toArray()));
+    }
+
+    /**
+     * A record of an unknown type ends the replay and is truncated away.
+     */
+    @Test
+    public void replayStopsAtUnknownRecord() throws IOException {
+        File file = new File(folder.getRoot(), "queue.bin");
+        AppendLog log = new AppendLog(file, MAGIC);
+        log.rewrite(out -> {
+            writeRecord(out, OutboundQueue.RECORD_QUEUED, update("paths/a", "kept"));
+            writeRecord(out, (byte) 'X', update("paths/b", "dropped"));
+        });
+        log.close();
+
+        Map<String, Object> queue = new LinkedHashMap<>();
+        assertEquals(1, OutboundQueue.replay(new AppendLog(file, MAGIC), queue, new HashMap<>()));
+        assertEquals(update("paths/a", "kept"), queue);
+
+        queue.clear();
+        assertEquals(1, OutboundQueue.replay(new AppendLog(file, MAGIC), queue, new HashMap<>()));
+    }
+
+    /**
+     * Every queued record is a group, and a record rewriting a path of an earlier group joins it.
+     */
+    @Test
+    public void replayJoinsOverlappingGroups() throws IOException {
+        File file = new File(folder.getRoot(), "queue.bin");
+        Map<String, Object> first = update("paths/a/chunks/00000", "chunk0");
+        first.put("path_tiles/sv8w/a", true);
+        first.put("path_summaries/a/count", 60L);
+        Map<String, Object> last = update("paths/a/chunks/00001", "chunk1");
+        last.put("path_summaries/a/count", 120L);
+        last.put("path_tiles/sv8x/a", true);
+        AppendLog log = new AppendLog(file, MAGIC);
+        log.rewrite(out -> {
+            writeRecord(out, OutboundQueue.RECORD_QUEUED, first);
+            writeRecord(out, OutboundQueue.RECORD_QUEUED, update("paths/b/chunks/00000", "chunk0"));
+            writeRecord(out, OutboundQueue.RECORD_QUEUED, last);
+        });
+        log.close();
+
+        Map<String, Object> queue = new LinkedHashMap<>();
+        Map<String, Long> groups = new HashMap<>();
+        assertEquals(3, OutboundQueue.replay(new AppendLog(file, MAGIC), queue, groups));
+        assertEquals(120L, queue.get("path_summaries/a/count"));
+        assertEquals(groups.get("paths/a/chunks/00000"), groups.get("paths/a/chunks/00001"));
+        assertEquals(groups.get("paths/a/chunks/00000"), groups.get("path_tiles/sv8w/a"));
+        assertEquals(groups.get("paths/a/chunks/00000"), groups.get("path_summaries/a/count"));
+        assertEquals(groups.get("paths/a/chunks/00000"), groups.get("path_tiles/sv8x/a"));
+        assertNotEquals(groups.get("paths/a/chunks/00000"), groups.get("paths/b/chunks/00000"));
+    }
+
+    /**
+     * Writes a record of the queue log.
+     *
+     * @param out the stream to write to
+     * @param type the record type
+     * @param record values keyed by their path
+     * @throws IOException if writing fails
+     */
+    private static void writeRecord(DataOutputStream out, byte type, Map<String, Object> record)
+            throws IOException {
+        out.writeByte(type);
+        LocalDataStore.writeRecord(out, record);
+    }
+
+    /**
+     * Returns a single value keyed by its path.
+     *
+     * @param path the path
+     * @param value the value
+     * @return the update
+     */
+    private static Map<String, Object> update(String path, Object value) {
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put(path, value);
+        return update;
+    }
+}
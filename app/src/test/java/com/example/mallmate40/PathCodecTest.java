@@ -0,0 +1,127 @@
+package com.example.mallmate40;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link PathCodec}: encoded paths decode to the same points within the fixed-point
+ * precision, unknown altitudes survive the round trip, and paths written in the first format
+ * version are still read.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class PathCodecTest {
+
+    /** Largest error in degrees of a decoded latitude or longitude */
+    private static final double DEGREE_TOLERANCE = 1e-7;
+
+    /** Largest error in meters of a decoded altitude */
+    private static final double ALTITUDE_TOLERANCE = 0.01;
+
+    /**
+     * A path with positive and negative deltas decodes to its points.
+     */
+    @Test
+    public void roundTrip() {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            points.add(new Point(32.0853 + Math.sin(i) * 1e-4, 34.7818 - i * 1e-5, 10.5 + (i % 7) * 0.37));
+        }
+        assertPointsEqual(points, PathCodec.decode(PathCodec.encode(points)));
+    }
+
+    /**
+     * An empty path decodes to no points.
+     */
+    @Test
+    public void emptyPath() {
+        assertEquals(0, PathCodec.decode(PathCodec.encode(new ArrayList<>())).size());
+    }
+
+    /**
+     * Points without an altitude decode as NaN, and the altitudes around them keep their values.
+     */
+    @Test
+    public void unknownAltitudes() {
+        List<Point> points = Arrays.asList(
+                new Point(32.0, 34.0, Double.NaN),
+                new Point(32.0001, 34.0, 12.0),
+                new Point(32.0002, 34.0, Double.NaN),
+                new Point(32.0003, 34.0, 11.5),
+                new Point(32.0004, 34.0, 0.0));
+        List<Point> decoded = PathCodec.decode(PathCodec.encode(points));
+        assertPointsEqual(points, decoded);
+        assertTrue(Double.isNaN(decoded.get(0).z));
+        assertTrue(Double.isNaN(decoded.get(2).z));
+        assertEquals(0.0, decoded.get(4).z, 0.0);
+    }
+
+    /**
+     * A range of coordinate columns encodes only the points in the range.
+     */
+    @Test
+    public void encodeRange() {
+        double[] xs = {1.0, 2.0, 3.0, 4.0};
+        double[] ys = {5.0, 6.0, 7.0, 8.0};
+        double[] zs = {9.0, Double.NaN, 11.0, 12.0};
+        List<Point> decoded = PathCodec.decode(PathCodec.encode(xs, ys, zs, 1, 3));
+        assertPointsEqual(Arrays.asList(new Point(2.0, 6.0, Double.NaN), new Point(3.0, 7.0, 11.0)), decoded);
+    }
+
+    /**
+     * Paths written in format version 1, with plain altitude deltas, are still decoded.
+     */
+    @Test
+    public void decodesVersionOne() {
+        byte[] data = {
+                1, 2,
+                // Latitude +1e-7, longitude -1e-7, altitude +1 m
+                2, 1, (byte) 0xC8, 0x01,
+                // Same position, altitude -1 m
+                0, 0, (byte) 0xC7, 0x01};
+        List<Point> decoded = PathCodec.decode(data);
+        assertPointsEqual(Arrays.asList(new Point(1e-7, -1e-7, 1.0), new Point(1e-7, -1e-7, 0.0)), decoded);
+    }
+
+    /**
+     * Truncated data and unknown format versions are rejected.
+     */
+    @Test
+    public void rejectsCorruptData() {
+        byte[] data = PathCodec.encode(Arrays.asList(new Point(32.0, 34.0, 10.0), new Point(32.1, 34.1, 11.0)));
+        byte[] truncated = Arrays.copyOf(data, data.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> PathCodec.decode(truncated));
+
+        byte[] unknownVersion = data.clone();
+        unknownVersion[0] = 99;
+        assertThrows(IllegalArgumentException.class, () -> PathCodec.decode(unknownVersion));
+    }
+
+    /**
+     * Checks that two paths hold the same points within the encoding precision.
+     *
+     * @param expected the expected points
+     * @param actual the decoded points
+     */
+    private static void assertPointsEqual(List<Point> expected, List<Point> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).x, actual.get(i).x, DEGREE_TOLERANCE);
+            assertEquals(expected.get(i).y, actual.get(i).y, DEGREE_TOLERANCE);
+            if (Double.isNaN(expected.get(i).z)) {
+                assertTrue(Double.isNaN(actual.get(i).z));
+            } else {
+                assertEquals(expected.get(i).z, actual.get(i).z, ALTITUDE_TOLERANCE);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.mallmate40;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link PointOfInterestIndex}: prefix and typo-tolerant matching, normalization of
+ * case, accents and Hebrew letters, and the ranking of the results.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class PointOfInterestIndexTest {
+
+    /** Names indexed by the tests, in name order */
+    private static final String[] NAMES = {
+            "Café Aroma", "Castro", "Fox Home", "Zara", "Zara Home", "חנות הספרים", "שלום בית"};
+
+    /** The index over {@link #NAMES} */
+    private final PointOfInterestIndex index = new PointOfInterestIndex(pointsOfInterest(NAMES));
+
+    /**
+     * A prefix finds every name with a word starting with it, exact words ranked first.
+     */
+    @Test
+    public void matchesPrefixes() {
+        assertEquals(Arrays.asList("Zara", "Zara Home"), names(index.search("zara", 10)));
+        assertEquals(Arrays.asList("Fox Home", "Zara Home"), names(index.search("hom", 10)));
+        assertEquals(Arrays.asList("Zara Home"), names(index.search("home za", 10)));
+    }
+
+    /**
+     * Case, accents, vowel marks and final letter forms do not affect matching.
+     */
+    @Test
+    public void normalizesText() {
+        assertEquals(Arrays.asList("Café Aroma"), names(index.search("CAFE", 10)));
+        assertEquals(Arrays.asList("שלום בית"), names(index.search("שָׁלוֹם", 10)));
+        // Typed halfway, the final mem is still a regular mem
+        assertEquals(Arrays.asList("שלום בית"), names(index.search("שלומ", 10)));
+        assertEquals("cafe aroma", PointOfInterestIndex.normalize("Café-Aroma!"));
+    }
+
+    /**
+     * Longer query words tolerate typos, short ones do not.
+     */
+    @Test
+    public void toleratesTypos() {
+        assertEquals(Arrays.asList("Castro"), names(index.search("cstro", 10)));
+        assertEquals(Arrays.asList("חנות הספרים"), names(index.search("הספירים", 10)));
+        assertTrue(index.search("zx", 10).isEmpty());
+        assertEquals(1, PointOfInterestIndex.prefixEditDistance("cstro", "castro", 2));
+        assertEquals(3, PointOfInterestIndex.prefixEditDistance("abcdef", "uvwxyz", 2));
+    }
+
+    /**
+     * An empty query lists every point of interest in name order, up to the limit.
+     */
+    @Test
+    public void emptyQueryListsAll() {
+        assertEquals(Arrays.asList(NAMES).subList(0, 3), names(index.search("  ", 3)));
+        assertEquals(NAMES.length, index.size());
+    }
+
+    /**
+     * Creates points of interest with the given names.
+     *
+     * @param names the names
+     * @return the points of interest
+     */
+    private static List<PointOfInterest> pointsOfInterest(String... names) {
+        List<PointOfInterest> pointsOfInterest = new ArrayList<>();
+        for (String name : names) {
+            pointsOfInterest.add(new PointOfInterest(name, new Point(32.0, 34.0, 0.0)));
+        }
+        return pointsOfInterest;
+    }
+
+    /**
+     * Returns the names of points of interest.
+     *
+     * @param pointsOfInterest the points of interest
+     * @return their names, in the same order
+     */
+    private static List<String> names(List<PointOfInterest> pointsOfInterest) {
+        List<String> names = new ArrayList<>();
+        for (PointOfInterest pointOfInterest : pointsOfInterest) {
+            names.add(pointOfInterest.getName());
+        }
+        return names;
+    }
+}
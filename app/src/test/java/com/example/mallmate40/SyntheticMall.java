@@ -0,0 +1,214 @@
+package com.example.mallmate40;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Generates reproducible synthetic mall datasets for benchmarks. The mall is a grid of corridors
+ * over three floors, and every recorded path is a walk along the corridors with about one point
+ * per meter and a little location noise, like a real tracking session at walking speed.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+final class SyntheticMall {
+
+    /** Latitude of the south-west corner of the mall */
+    static final double ORIGIN_LAT = 32.0853;
+
+    /** Longitude of the south-west corner of the mall */
+    static final double ORIGIN_LNG = 34.7818;
+
+    /** Width of the mall from west to east, in meters */
+    static final double WIDTH_METERS = 200.0;
+
+    /** Depth of the mall from south to north, in meters */
+    static final double DEPTH_METERS = 120.0;
+
+    /** Distance between parallel corridors, in meters */
+    private static final double CORRIDOR_SPACING_METERS = 20.0;
+
+    /** Height of one floor, in meters */
+    private static final double FLOOR_HEIGHT_METERS = 5.0;
+
+    /** Number of floors */
+    private static final int FLOORS = 3;
+
+    /** Shortest recorded path, in points */
+    private static final int MIN_PATH_POINTS = 30;
+
+    /** Longest recorded path, in points */
+    private static final int MAX_PATH_POINTS = 60;
+
+    /** Maximum location noise added to every point, in meters */
+    private static final double NOISE_METERS = 1.0;
+
+    /** Meters per degree of latitude */
+    private static final double METERS_PER_DEGREE = GeoMath.METERS_PER_DEGREE;
+
+    /** Latitude of every point, one array per path */
+    final double[][] lats;
+
+    /** Longitude of every point, one array per path */
+    final double[][] lngs;
+
+    /** Altitude of every point, one array per path */
+    final double[][] alts;
+
+    /** Total number of points over all paths */
+    final int pointCount;
+
+    /**
+     * Generates a dataset.
+     *
+     * @param pathCount number of recorded paths
+     * @param seed seed of the random generator, so runs are comparable
+     */
+    SyntheticMall(int pathCount, long seed) {
+        Random random = new Random(seed);
+        lats = new double[pathCount][];
+        lngs = new double[pathCount][];
+        alts = new double[pathCount][];
+        int total = 0;
+        for (int i = 0; i < pathCount; i++) {
+            generatePath(i, random);
+            total += lats[i].length;
+        }
+        pointCount = total;
+    }
+
+    /**
+     * Returns the number of paths.
+     *
+     * @return the path count
+     */
+    int size() {
+        return lats.length;
+    }
+
+    /**
+     * Returns the points of a path as a list.
+     *
+     * @param path index of the path
+     * @return the points of the path
+     */
+    List<Point> getPath(int path) {
+        List<Point> points = new ArrayList<>(lats[path].length);
+        for (int i = 0; i < lats[path].length; i++) {
+            points.add(new Point(lats[path][i], lngs[path][i], alts[path][i]));
+        }
+        return points;
+    }
+
+    /**
+     * Returns a path laid out like the oldest database format, with one point object per index key.
+     *
+     * @param path index of the path
+     * @return the path value as read from the data store
+     */
+    Map<String, Object> getLegacyPathValue(int path) {
+        Map<String, Object> value = new TreeMap<>();
+        for (int i = 0; i < lats[path].length; i++) {
+            value.put(String.valueOf(i), new Point(lats[path][i], lngs[path][i], alts[path][i]).toValue());
+        }
+        return value;
+    }
+
+    /**
+     * Returns a random point on a corridor of the ground floor.
+     *
+     * @param random the random generator
+     * @return a point on a corridor
+     */
+    static Point randomCorridorPoint(Random random) {
+        double east;
+        double north;
+        if (random.nextBoolean()) {
+            east = random.nextDouble() * WIDTH_METERS;
+            north = random.nextInt((int) (DEPTH_METERS / CORRIDOR_SPACING_METERS) + 1) * CORRIDOR_SPACING_METERS;
+        } else {
+            east = random.nextInt((int) (WIDTH_METERS / CORRIDOR_SPACING_METERS) + 1) * CORRIDOR_SPACING_METERS;
+            north = random.nextDouble() * DEPTH_METERS;
+        }
+        return new Point(toLat(north), toLng(east), 0.0);
+    }
+
+    /**
+     * Walks along the corridors from a random crossing, turning at random crossings.
+     *
+     * @param path index of the path to fill
+     * @param random the random generator
+     */
+    private void generatePath(int path, Random random) {
+        int count = MIN_PATH_POINTS + random.nextInt(MAX_PATH_POINTS - MIN_PATH_POINTS + 1);
+        double altitude = random.nextInt(FLOORS) * FLOOR_HEIGHT_METERS;
+        int columns = (int) (WIDTH_METERS / CORRIDOR_SPACING_METERS);
+        int rows = (int) (DEPTH_METERS / CORRIDOR_SPACING_METERS);
+        double east = random.nextInt(columns + 1) * CORRIDOR_SPACING_METERS;
+        double north = random.nextInt(rows + 1) * CORRIDOR_SPACING_METERS;
+        int direction = random.nextInt(4);
+
+        lats[path] = new double[count];
+        lngs[path] = new double[count];
+        alts[path] = new double[count];
+        for (int i = 0; i < count; i++) {
+            double noiseEast = (random.nextDouble() * 2 - 1) * NOISE_METERS;
+            double noiseNorth = (random.nextDouble() * 2 - 1) * NOISE_METERS;
+            lats[path][i] = toLat(north + noiseNorth);
+            lngs[path][i] = toLng(east + noiseEast);
+            alts[path][i] = altitude;
+
+            // Turn at crossings, and always turn back at the walls
+            boolean atCrossing = east % CORRIDOR_SPACING_METERS == 0 && north % CORRIDOR_SPACING_METERS == 0;
+            if (atCrossing && random.nextInt(3) == 0) {
+                direction = random.nextInt(4);
+            }
+            for (int attempt = 0; attempt < 4 && !canMove(east, north, direction); attempt++) {
+                direction = (direction + 1) % 4;
+            }
+            east += direction == 0 ? 1 : direction == 2 ? -1 : 0;
+            north += direction == 1 ? 1 : direction == 3 ? -1 : 0;
+        }
+    }
+
+    /**
+     * Checks whether a step in a direction stays on a corridor inside the mall.
+     *
+     * @param east current distance from the west wall
+     * @param north current distance from the south wall
+     * @param direction 0 east, 1 north, 2 west, 3 south
+     * @return true if the step is allowed
+     */
+    private static boolean canMove(double east, double north, int direction) {
+        boolean horizontal = direction == 0 || direction == 2;
+        if (horizontal && north % CORRIDOR_SPACING_METERS != 0) return false;
+        if (!horizontal && east % CORRIDOR_SPACING_METERS != 0) return false;
+        double nextEast = east + (direction == 0 ? 1 : direction == 2 ? -1 : 0);
+        double nextNorth = north + (direction == 1 ? 1 : direction == 3 ? -1 : 0);
+        return nextEast >= 0 && nextEast <= WIDTH_METERS && nextNorth >= 0 && nextNorth <= DEPTH_METERS;
+    }
+
+    /**
+     * Converts a distance north of the origin to a latitude.
+     *
+     * @param northMeters distance north of the origin
+     * @return the latitude
+     */
+    private static double toLat(double northMeters) {
+        return ORIGIN_LAT + northMeters / METERS_PER_DEGREE;
+    }
+
+    /**
+     * Converts a distance east of the origin to a longitude.
+     *
+     * @param eastMeters distance east of the origin
+     * @return the longitude
+     */
+    private static double toLng(double eastMeters) {
+        return ORIGIN_LNG + eastMeters / (METERS_PER_DEGREE * Math.cos(Math.toRadians(ORIGIN_LAT)));
+    }
+}
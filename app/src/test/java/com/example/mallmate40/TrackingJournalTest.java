@@ -0,0 +1,112 @@
+package com.example.mallmate40;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests of {@link TrackingJournal}: an interrupted session is recovered with its points and
+ * upload progress, a point cut short by the process dying is dropped, a resumed session
+ * keeps appending readable records, and a journal left too long is not resumed.
+ *
+ * @author Shon Aronov
+ * @version 1.0
+ * @since 1.0
+ */
+public class TrackingJournalTest {
+
+    /** Name of the journal file written by {@link TrackingJournal} */
+    private static final String FILE_NAME = "tracking_journal.bin";
+
+    /** Directory holding the journal, deleted after every test */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A session is recovered with its key, points and uploaded count.
+     */
+    @Test
+    public void recoversSession() {
+        TrackingJournal journal = new TrackingJournal(folder.getRoot());
+        Path path = new Path(PathId.generate("test-device"), null);
+        journal.start(path);
+        journal.appendPoint(32.0, 34.0, 10.0);
+        journal.appendPoint(32.1, 34.1, Double.NaN);
+        journal.appendChunk(2);
+        journal.appendPoint(32.2, 34.2, 11.0);
+
+        Path recovered = new TrackingJournal(folder.getRoot()).recover(null);
+        assertNotNull(recovered);
+        assertEquals(path.getPathId(), recovered.getPathId());
+        assertEquals(3, recovered.size());
+        assertEquals(2, recovered.getFlushedCount());
+        assertTrue(Double.isNaN(recovered.getPoints().getZ(1)));
+        assertEquals(11.0, recovered.getPoints().getZ(2), 0.0);
+    }
+
+    /**
+     * A point cut short is dropped, and points appended after resuming are recovered next time.
+     */
+    @Test
+    public void resumesAfterTornTail() throws IOException {
+        TrackingJournal journal = new TrackingJournal(folder.getRoot());
+        journal.start(new Path(PathId.generate("test-device"), null));
+        journal.appendPoint(32.0, 34.0, 10.0);
+        journal.appendPoint(32.1, 34.1, 10.5);
+        try (FileOutputStream out = new FileOutputStream(new File(folder.getRoot(), FILE_NAME), true)) {
+            // Record type and half of the latitude
+            out.write(new byte[]{'P', 0x40, 0x40, 0x00, 0x00});
+        }
+
+        TrackingJournal resumed = new TrackingJournal(folder.getRoot());
+        Path recovered = resumed.recover(null);
+        assertNotNull(recovered);
+        assertEquals(2, recovered.size());
+        resumed.resume();
+        resumed.appendPoint(32.2, 34.2, 11.0);
+
+        Path recoveredAgain = new TrackingJournal(folder.getRoot()).recover(null);
+        assertNotNull(recoveredAgain);
+        assertEquals(3, recoveredAgain.size());
+        assertEquals(32.2, recoveredAgain.getPoints().getX(2), 0.0);
+    }
+
+    /**
+     * A finished session leaves nothing to recover.
+     */
+    @Test
+    public void finishDeletesJournal() {
+        TrackingJournal journal = new TrackingJournal(folder.getRoot());
+        journal.start(new Path(PathId.generate("test-device"), null));
+        journal.appendPoint(32.0, 34.0, 10.0);
+        journal.finish();
+
+        assertNull(new TrackingJournal(folder.getRoot()).recover(null));
+    }
+
+    /**
+     * A journal last written long ago is reported too old to resume, a fresh one is not.
+     */
+    @Test
+    public void reportsStaleJournal() {
+        TrackingJournal journal = new TrackingJournal(folder.getRoot());
+        assertFalse(journal.isStale());
+        journal.start(new Path(PathId.generate("test-device"), null));
+        journal.appendPoint(32.0, 34.0, 10.0);
+        assertFalse(new TrackingJournal(folder.getRoot()).isStale());
+
+        File file = new File(folder.getRoot(), FILE_NAME);
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 60 * 60 * 1000));
+        assertTrue(new TrackingJournal(folder.getRoot()).isStale());
+    }
+}